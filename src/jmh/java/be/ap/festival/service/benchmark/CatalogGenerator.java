@@ -0,0 +1,109 @@
+package be.ap.festival.service.benchmark;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Writes a synthetic catalog in the festivals.json format. The same arguments always produce the same file,
+ * so benchmark results can be compared across machines without shipping large fixtures.
+ * <p>
+ * Artist popularity is skewed (a few headliners play many festivals) to give deleteArtist and the lineup
+ * index realistic fan-out. Usage: {@code CatalogGenerator <file> <festivals> [artists] [lineupSize] [seed]}.
+ */
+public final class CatalogGenerator {
+
+    private static final String[] PLACES = {"Boom", "Antwerpen", "Gent", "Brussel", "Leuven", "Hasselt", "Brugge",
+            "Kortrijk", "Mechelen", "Dessel", "Werchter", "Dour", "Luik", "Namen", "Oostende", "Genk", "Aalst",
+            "Lokeren", "Torhout", "Landgraaf"};
+    private static final String[] GENRES = {"EDM", "Pop", "Rock", "Metal", "Hip-Hop", "Techno", "House", "Jazz",
+            "Indie", "Folk", "R&B", "Punk", "Drum & Bass", "Reggae", "Klassiek"};
+    private static final String BUCKET = "https://festival-demo-bucket.s3.eu-central-1.amazonaws.com/";
+    private static final LocalDate FIRST_DATE = LocalDate.of(2026, 1, 1);
+
+    private final int festivals;
+    private final int artists;
+    private final int lineupSize;
+    private final long seed;
+
+    public CatalogGenerator(int festivals, int artists, int lineupSize, long seed) {
+        this.festivals = festivals;
+        this.artists = artists;
+        this.lineupSize = Math.min(lineupSize, artists);
+        this.seed = seed;
+    }
+
+    // Scaled defaults: one artist per ten festivals (at least 50) and lineups of up to 12
+    public static CatalogGenerator ofSize(int festivals) {
+        return new CatalogGenerator(festivals, Math.max(50, festivals / 10), 12, 42L);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CatalogGenerator <file> <festivals> [artists] [lineupSize] [seed]");
+            System.exit(2);
+        }
+        int festivals = Integer.parseInt(args[1]);
+        CatalogGenerator defaults = ofSize(festivals);
+        CatalogGenerator generator = new CatalogGenerator(festivals,
+                args.length > 2 ? Integer.parseInt(args[2]) : defaults.artists,
+                args.length > 3 ? Integer.parseInt(args[3]) : defaults.lineupSize,
+                args.length > 4 ? Long.parseLong(args[4]) : defaults.seed);
+        generator.write(Path.of(args[0]));
+    }
+
+    public void write(Path target) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        try (JsonGenerator gen = new JsonFactory().createGenerator(Files.newOutputStream(target), JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("festivals");
+            for (int id = 1; id <= festivals; id++) {
+                gen.writeStartObject();
+                gen.writeNumberField("id", id);
+                gen.writeStringField("name", "Festival " + id);
+                gen.writeStringField("place", PLACES[random.nextInt(PLACES.length)]);
+                gen.writeStringField("date", FIRST_DATE.plusDays(random.nextInt(730)).toString());
+                gen.writeNumberField("price", BigDecimal.valueOf(2_000 + random.nextInt(30_000), 2));
+                gen.writeArrayFieldStart("photos");
+                int photos = random.nextInt(4);
+                for (int p = 1; p <= photos; p++) gen.writeString(BUCKET + "festival-" + id + "-" + p + ".jpg");
+                gen.writeEndArray();
+                gen.writeArrayFieldStart("lineup");
+                for (int artist : lineup(random)) writeArtist(gen, artist);
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    private Set<Integer> lineup(SplittableRandom random) {
+        int size = 1 + random.nextInt(lineupSize);
+        Set<Integer> lineup = new LinkedHashSet<>();
+        while (lineup.size() < size) {
+            // Squaring a uniform draw favours low ids: artist 1 is the most booked headliner
+            double u = random.nextDouble();
+            lineup.add(1 + (int) (u * u * artists));
+        }
+        return lineup;
+    }
+
+    private static void writeArtist(JsonGenerator gen, int id) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", id);
+        gen.writeStringField("name", "Artist " + id);
+        gen.writeStringField("photoUrl", BUCKET + "artist-" + id + ".jpg");
+        gen.writeStringField("genre", GENRES[id % GENRES.length]);
+        gen.writeEndObject();
+    }
+}
@@ -0,0 +1,87 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.StorePersistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+/**
+ * Generated catalogs shared by the benchmarks. Files are cached under target/catalogs and regenerated only
+ * when missing; they are deterministic, so a cached file is as good as a fresh one.
+ */
+final class Catalogs {
+
+    private static final Path DIRECTORY = Path.of("target", "catalogs");
+
+    private Catalogs() {
+    }
+
+    static Path json(int festivals) {
+        return json("catalog-" + festivals + ".json", CatalogGenerator.ofSize(festivals));
+    }
+
+    static Path json(int festivals, int artists, int lineupSize, long seed) {
+        return json("catalog-" + festivals + "-" + artists + "-" + lineupSize + "-" + seed + ".json",
+                new CatalogGenerator(festivals, artists, lineupSize, seed));
+    }
+
+    private static Path json(String name, CatalogGenerator generator) {
+        Path file = DIRECTORY.resolve(name);
+        try {
+            if (!Files.exists(file)) {
+                Files.createDirectories(DIRECTORY);
+                Path tmp = Files.createTempFile(DIRECTORY, "catalog-", ".tmp");
+                generator.write(tmp);
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The same catalog as a binary snapshot, produced the way the service does it: load, then shut down
+    static Path binary(int festivals) {
+        Path file = DIRECTORY.resolve("catalog-" + festivals + ".bin");
+        try {
+            if (!Files.exists(file)) {
+                Path work = Files.createTempDirectory(DIRECTORY.toAbsolutePath().getParent(), "snapshot-");
+                FestivalDataStore store = new FestivalDataStore();
+                StorePersistence persistence = new StorePersistence(store, work, StorePersistence.SyncMode.ASYNC,
+                        Integer.MAX_VALUE, StorePersistence.SnapshotFormat.BINARY, 1000);
+                persistence.start();
+                store.load(json(festivals));
+                persistence.stop();
+                try (Stream<Path> files = Files.list(work)) {
+                    Path snapshot = files.filter(p -> p.toString().endsWith(".bin")).findFirst().orElseThrow();
+                    Files.move(snapshot, file, StandardCopyOption.ATOMIC_MOVE);
+                }
+                try (Stream<Path> files = Files.list(work)) {
+                    for (Path leftover : files.toList()) Files.delete(leftover);
+                }
+                Files.delete(work);
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static FestivalDataStore loaded(int festivals) {
+        FestivalDataStore store = new FestivalDataStore();
+        try {
+            store.load(json(festivals));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,54 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.data.FestivalDataStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * deleteArtist cascades into every lineup that books the artist; fanOut is the number of those festivals.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeleteArtistBenchmark {
+
+    private static final int FESTIVALS = 10_000;
+
+    @Param({"10", "100", "1000"})
+    int fanOut;
+
+    private FestivalDataStore store;
+    private Long artistId;
+
+    @Setup(Level.Trial)
+    public void load() {
+        store = Catalogs.loaded(FESTIVALS);
+    }
+
+    @Setup(Level.Invocation)
+    public void book() {
+        artistId = store.createArtist(new Artist("Headliner", null, "Pop")).getId();
+        for (long festivalId = 1; festivalId <= fanOut; festivalId++) store.addArtistToFestival(festivalId, artistId);
+    }
+
+    @Benchmark
+    public void deleteArtist() {
+        store.deleteArtist(artistId);
+    }
+}
@@ -0,0 +1,59 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.data.FestivalDataStore;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.file.Path;
+
+/**
+ * Retained heap of a fully loaded catalog: live heap after a full GC with the store loaded, minus the live heap
+ * before. Lazily loaded binary snapshots are materialized first, so both formats measure the same entities.
+ * JMH measures time, not footprint, hence a plain main method.
+ * <p>
+ * Usage: {@code HeapFootprint [festivals] [json|binary]}, for example
+ * {@code ./mvnw -Pjmh test-compile exec:exec -Djmh.main=be.ap.festival.service.benchmark.HeapFootprint -Djmh.args="100000 json"}.
+ */
+public final class HeapFootprint {
+
+    private HeapFootprint() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int festivals = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        String format = args.length > 1 ? args[1] : "json";
+        Path catalog = "binary".equals(format) ? Catalogs.binary(festivals) : Catalogs.json(festivals);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = liveHeap(memory);
+        FestivalDataStore store = new FestivalDataStore();
+        store.load(catalog);
+        long photos = 0;
+        long lineups = 0;
+        for (Festival f : store.getFestivals()) {
+            photos += f.getPhotos().size();
+            lineups += f.getLineup().size();
+        }
+        for (Artist a : store.getArtists()) a.getName();
+        long after = liveHeap(memory);
+        Reference.reachabilityFence(store);
+
+        long retained = after - before;
+        System.out.printf("%d festivals (%s), %d artists, %d photos, %d lineup entries%n", store.getFestivals().size(),
+                format, store.getArtists().size(), photos, lineups);
+        System.out.printf("retained heap: %.1f MB, %d bytes per festival%n", retained / 1048576.0,
+                retained / Math.max(1, store.getFestivals().size()));
+    }
+
+    private static long liveHeap(MemoryMXBean memory) throws InterruptedException {
+        // A few rounds, so objects with pending finalization or reference processing are gone too
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
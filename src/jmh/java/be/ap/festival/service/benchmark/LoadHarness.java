@@ -0,0 +1,385 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.FestivalService;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of the HTTP API. The service is started in-process on a synthetic catalog generated
+ * by {@link CatalogGenerator}, and {@code clients} clients send the requests of a workload file at it, first
+ * for a warm-up and then for the measured run. Latencies go into HdrHistograms per request type, and the
+ * report (throughput, p50/p99/p99.9/max) is printed and written to target/load-result.json. Nothing leaves
+ * the machine, so runs are comparable across builds.
+ * <p>
+ * The workload file (see src/jmh/workloads) is JSON:
+ * <pre>
+ * {"catalog": {"festivals": 10000, "artists": 1000, "lineupSize": 12, "seed": 42},
+ *  "clients": 32, "warmupSeconds": 5, "seconds": 20, "rate": 0,
+ *  "properties": {"festival.admission.enabled": "false"},
+ *  "requests": [{"name": "get festival", "weight": 50, "method": "GET", "path": "/api/festivals/{festival}"},
+ *               {"weight": 5, "method": "POST", "path": "/api/festivals/{festival}/photos",
+ *                "body": "https://example.com/load-{n}.jpg", "contentType": "text/plain"}]}
+ * </pre>
+ * Requests are drawn by weight, from a fixed seed per client. Paths and bodies may use {festival} and
+ * {artist} (a random id from the catalog) and {n} (a number unique to the run). Instead of {@code requests},
+ * {@code replay} names a file of recorded requests, one JSON object per line with method, path and optionally
+ * route and payload, as the access log writes them; the lines are sent in order, over and over.
+ * <p>
+ * With {@code rate} above 0 the clients together send that many requests per second on a fixed schedule, and
+ * latency is measured from when a request was due rather than when it was sent, so a stalled server is not
+ * hidden by clients that stop sending (coordinated omission). With rate 0 each client sends as soon as its
+ * previous request is answered.
+ * <p>
+ * Given a baseline (an earlier load-result.json), request types whose throughput fell or whose p99 rose by more
+ * than {@code tolerancePercent} (default 10) are listed and the exit code is 1, so a release can be gated on it.
+ * Usage: {@code LoadHarness <workload.json> [baseline.json] [tolerancePercent]}, for example
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.main=be.ap.festival.service.benchmark.LoadHarness -Djmh.args="src/jmh/workloads/mixed.json"}.
+ */
+public final class LoadHarness {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+    private static final Path RESULT = Path.of("target", "load-result.json");
+    // Latencies are recorded in microseconds, up to a minute, to three significant digits
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+    // Request types with fewer samples are too noisy to gate on
+    private static final long MIN_COMPARED_REQUESTS = 100;
+
+    record Catalog(int festivals, int artists, int lineupSize, long seed) {
+    }
+
+    record Step(String name, int weight, String method, String path, String body, String contentType) {
+    }
+
+    record Workload(Catalog catalog, int clients, int warmupSeconds, int seconds, double rate,
+                    Map<String, String> properties, List<Step> requests, String replay) {
+    }
+
+    record Stats(String name, long requests, double throughput, long clientErrors, long errors,
+                 double p50Ms, double p99Ms, double p999Ms, double maxMs) {
+    }
+
+    record Result(String workload, double seconds, Stats total, List<Stats> requests) {
+    }
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: LoadHarness <workload.json> [baseline.json] [tolerancePercent]");
+            System.exit(2);
+        }
+        // Devtools would otherwise restart this main method in a new class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Path workloadFile = Path.of(args[0]);
+        Workload workload = withDefaults(MAPPER.readValue(workloadFile.toFile(), Workload.class));
+        boolean replay = workload.replay() != null;
+        List<Step> steps = replay ? recorded(workloadFile.resolveSibling(workload.replay())) : named(workload.requests());
+        if (steps.isEmpty()) throw new IllegalArgumentException("The workload has no requests");
+
+        Catalog c = workload.catalog();
+        Path catalog = Catalogs.json(c.festivals(), c.artists(), c.lineupSize(), c.seed()).toAbsolutePath();
+        List<String> arguments = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--festival.catalog.location=" + catalog,
+                "--festival.access-log.enabled=false",
+                "--festival.tracing.enabled=false",
+                "--management.tracing.sampling.probability=0.0",
+                "--logging.level.root=WARN"));
+        // Command-line arguments, so they take precedence over application.yaml
+        workload.properties().forEach((key, value) -> arguments.add("--" + key + "=" + value));
+
+        Result result;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FestivalService.class)
+                .run(arguments.toArray(String[]::new))) {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            Driver driver = new Driver(URI.create("http://localhost:" + port), workload, steps, replay);
+            driver.run(workload.warmupSeconds(), null);
+            Histogram[] histograms = new Histogram[steps.size()];
+            long[][] statuses = new long[steps.size()][2];
+            long started = System.nanoTime();
+            driver.run(workload.seconds(), new Recording(histograms, statuses));
+            double seconds = (System.nanoTime() - started) / 1e9;
+            result = result(workloadFile.toString(), seconds, steps, histograms, statuses);
+        }
+
+        print(workload, catalog, result);
+        Files.createDirectories(RESULT.getParent());
+        MAPPER.writeValue(RESULT.toFile(), result);
+        System.out.println("Written to " + RESULT);
+
+        if (args.length > 1) {
+            double tolerance = (args.length > 2 ? Double.parseDouble(args[2]) : 10) / 100;
+            Result baseline = MAPPER.readValue(Path.of(args[1]).toFile(), Result.class);
+            if (!compare(baseline, result, tolerance)) System.exit(1);
+        }
+    }
+
+    private static Workload withDefaults(Workload w) {
+        Catalog c = w.catalog() != null ? w.catalog() : new Catalog(0, 0, 0, 0);
+        int festivals = c.festivals() > 0 ? c.festivals() : 10_000;
+        // The defaults of CatalogGenerator.ofSize
+        Catalog catalog = new Catalog(festivals,
+                c.artists() > 0 ? c.artists() : Math.max(50, festivals / 10),
+                c.lineupSize() > 0 ? c.lineupSize() : 12,
+                c.seed() != 0 ? c.seed() : 42L);
+        return new Workload(catalog,
+                w.clients() > 0 ? w.clients() : 32,
+                Math.max(0, w.warmupSeconds()),
+                w.seconds() > 0 ? w.seconds() : 20,
+                Math.max(0, w.rate()),
+                w.properties() != null ? w.properties() : Map.of(),
+                w.requests() != null ? w.requests() : List.of(),
+                w.replay());
+    }
+
+    private static List<Step> named(List<Step> requests) {
+        List<Step> steps = new ArrayList<>();
+        for (Step s : requests) {
+            String method = s.method() != null ? s.method() : "GET";
+            steps.add(new Step(s.name() != null ? s.name() : method + " " + s.path(), Math.max(1, s.weight()), method,
+                    s.path(), s.body(), s.contentType()));
+        }
+        return steps;
+    }
+
+    // Access log lines, or anything with the same fields; requests of one route share a histogram
+    private static List<Step> recorded(Path file) throws IOException {
+        List<Step> steps = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                JsonNode node = MAPPER.readTree(line);
+                String method = node.path("method").asText("GET");
+                String path = node.path("path").asText();
+                String route = node.path("route").asText("unmatched");
+                if (route.equals("unmatched")) route = path.replaceAll("/\\d+(?=/|$)", "/{id}");
+                String body = node.hasNonNull("payload") ? node.get("payload").asText() : null;
+                String contentType = body == null ? null : body.startsWith("{") || body.startsWith("[") ? "application/json" : "text/plain";
+                steps.add(new Step(method + " " + route, 1, method, path, body, contentType));
+            }
+        }
+        return steps;
+    }
+
+    /**
+     * Per request type: its latency histogram and counts of 4xx answers and of errors (5xx or no answer). Each
+     * client fills its own, which are added up once the run is over.
+     */
+    private record Recording(Histogram[] histograms, long[][] statuses) {
+
+        void add(Histogram[] clientHistograms, long[][] clientStatuses) {
+            synchronized (this) {
+                for (int i = 0; i < histograms.length; i++) {
+                    if (histograms[i] == null) histograms[i] = new Histogram(HIGHEST_MICROS, 3);
+                    histograms[i].add(clientHistograms[i]);
+                    statuses[i][0] += clientStatuses[i][0];
+                    statuses[i][1] += clientStatuses[i][1];
+                }
+            }
+        }
+    }
+
+    private static final class Driver {
+
+        private final URI base;
+        private final Workload workload;
+        private final List<Step> steps;
+        private final boolean replay;
+        private final int[] cumulativeWeights;
+        private final HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        private final AtomicLong unique = new AtomicLong();
+        private final AtomicLong cursor = new AtomicLong();
+        private int runs;
+
+        Driver(URI base, Workload workload, List<Step> steps, boolean replay) {
+            this.base = base;
+            this.workload = workload;
+            this.steps = steps;
+            this.replay = replay;
+            this.cumulativeWeights = new int[steps.size()];
+            int total = 0;
+            for (int i = 0; i < steps.size(); i++) {
+                total += steps.get(i).weight();
+                cumulativeWeights[i] = total;
+            }
+        }
+
+        void run(int seconds, Recording recording) throws InterruptedException {
+            if (seconds <= 0) return;
+            int run = runs++;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            int clients = workload.clients();
+            // Each client's share of the rate, as the nanoseconds between its requests
+            long interval = workload.rate() > 0 ? (long) (1e9 * clients / workload.rate()) : 0;
+            Thread[] threads = new Thread[clients];
+            for (int c = 0; c < clients; c++) {
+                long seed = workload.catalog().seed() * 31 + c * 1_000_003L + run;
+                threads[c] = new Thread(() -> client(new SplittableRandom(seed), deadline, interval, recording),
+                        "load-client-" + c);
+                threads[c].start();
+            }
+            for (Thread thread : threads) thread.join();
+        }
+
+        private void client(SplittableRandom random, long deadline, long interval, Recording recording) {
+            Histogram[] histograms = new Histogram[steps.size()];
+            for (int i = 0; i < histograms.length; i++) histograms[i] = new Histogram(HIGHEST_MICROS, 3);
+            long[][] statuses = new long[steps.size()][2];
+            // Spread the clients' schedules over one interval
+            long due = System.nanoTime() + (interval > 0 ? random.nextLong(interval) : 0);
+            while (true) {
+                long now = System.nanoTime();
+                // Requests still due when the run ends are not sent, so an overloaded server cannot stretch it
+                if (now >= deadline || (interval > 0 && due >= deadline)) break;
+                if (interval == 0) due = now;
+                else if (due > now) LockSupport.parkNanos(due - now);
+                int index = replay ? (int) (cursor.getAndIncrement() % steps.size()) : pick(random);
+                int status = send(request(steps.get(index), random));
+                histograms[index].recordValue(Math.min(HIGHEST_MICROS, (System.nanoTime() - due) / 1_000));
+                if (status >= 400 && status < 500) statuses[index][0]++;
+                if (status < 0 || status >= 500) statuses[index][1]++;
+                if (Thread.currentThread().isInterrupted()) break;
+                due += interval;
+            }
+            if (recording != null) recording.add(histograms, statuses);
+        }
+
+        private int pick(SplittableRandom random) {
+            int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (draw < cumulativeWeights[i]) return i;
+            }
+            return cumulativeWeights.length - 1;
+        }
+
+        private HttpRequest request(Step step, SplittableRandom random) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(base.resolve(fill(step.path(), random)))
+                    .timeout(Duration.ofSeconds(30));
+            if (step.body() == null) return builder.method(step.method(), HttpRequest.BodyPublishers.noBody()).build();
+            return builder.method(step.method(), HttpRequest.BodyPublishers.ofString(fill(step.body(), random)))
+                    .header("Content-Type", step.contentType() != null ? step.contentType() : "application/json")
+                    .build();
+        }
+
+        private String fill(String template, SplittableRandom random) {
+            if (template.indexOf('{') < 0) return template;
+            Catalog catalog = workload.catalog();
+            return template
+                    .replace("{festival}", Integer.toString(1 + random.nextInt(catalog.festivals())))
+                    .replace("{artist}", Integer.toString(1 + random.nextInt(catalog.artists())))
+                    .replace("{n}", Long.toString(unique.incrementAndGet()));
+        }
+
+        // The status code, or -1 when no answer came
+        private int send(HttpRequest request) {
+            try {
+                return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                return -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+    }
+
+    private static Result result(String workload, double seconds, List<Step> steps, Histogram[] histograms,
+                                 long[][] statuses) {
+        Histogram all = new Histogram(HIGHEST_MICROS, 3);
+        long clientErrors = 0;
+        long errors = 0;
+        // Replayed requests of one route share a name; their histograms are added up
+        Map<String, Histogram> byName = new LinkedHashMap<>();
+        Map<String, long[]> statusesByName = new LinkedHashMap<>();
+        for (int i = 0; i < steps.size(); i++) {
+            if (histograms[i] == null) continue;
+            all.add(histograms[i]);
+            clientErrors += statuses[i][0];
+            errors += statuses[i][1];
+            byName.computeIfAbsent(steps.get(i).name(), k -> new Histogram(HIGHEST_MICROS, 3)).add(histograms[i]);
+            long[] s = statusesByName.computeIfAbsent(steps.get(i).name(), k -> new long[2]);
+            s[0] += statuses[i][0];
+            s[1] += statuses[i][1];
+        }
+        List<Stats> requests = new ArrayList<>();
+        byName.forEach((name, h) -> requests.add(stats(name, h, seconds, statusesByName.get(name))));
+        return new Result(workload, seconds, stats("total", all, seconds, new long[]{clientErrors, errors}), requests);
+    }
+
+    private static Stats stats(String name, Histogram h, double seconds, long[] statuses) {
+        return new Stats(name, h.getTotalCount(), h.getTotalCount() / seconds, statuses[0], statuses[1],
+                h.getValueAtPercentile(50) / 1e3, h.getValueAtPercentile(99) / 1e3,
+                h.getValueAtPercentile(99.9) / 1e3, h.getMaxValue() / 1e3);
+    }
+
+    private static void print(Workload workload, Path catalog, Result result) {
+        Catalog c = workload.catalog();
+        System.out.printf("%n%s: %d festivals, %d artists, lineups up to %d (%s)%n", result.workload(), c.festivals(),
+                c.artists(), c.lineupSize(), catalog.getFileName());
+        System.out.printf("%d clients, %s, %.1f s measured%n", workload.clients(),
+                workload.rate() > 0 ? String.format("%.0f req/s scheduled", workload.rate()) : "closed loop", result.seconds());
+        System.out.printf("%-52s %10s %10s %7s %7s %9s %9s %9s %9s%n", "request", "count", "req/s", "4xx", "errors",
+                "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Stats s : result.requests()) printRow(s);
+        printRow(result.total());
+    }
+
+    private static void printRow(Stats s) {
+        System.out.printf("%-52s %10d %10.1f %7d %7d %9.2f %9.2f %9.2f %9.2f%n", s.name(), s.requests(), s.throughput(),
+                s.clientErrors(), s.errors(), s.p50Ms(), s.p99Ms(), s.p999Ms(), s.maxMs());
+    }
+
+    private static boolean compare(Result baseline, Result current, double tolerance) {
+        Map<String, Stats> before = new LinkedHashMap<>();
+        before.put(baseline.total().name(), baseline.total());
+        baseline.requests().forEach(s -> before.put(s.name(), s));
+        List<Stats> now = new ArrayList<>(current.requests());
+        now.add(current.total());
+
+        boolean passed = true;
+        for (Stats s : now) {
+            Stats b = before.get(s.name());
+            if (b == null || b.requests() < MIN_COMPARED_REQUESTS || s.requests() < MIN_COMPARED_REQUESTS) continue;
+            if (s.throughput() < b.throughput() * (1 - tolerance)) {
+                System.out.printf("REGRESSION %s: %.1f req/s, was %.1f%n", s.name(), s.throughput(), b.throughput());
+                passed = false;
+            }
+            if (s.p99Ms() > b.p99Ms() * (1 + tolerance)) {
+                System.out.printf("REGRESSION %s: p99 %.2f ms, was %.2f%n", s.name(), s.p99Ms(), b.p99Ms());
+                passed = false;
+            }
+        }
+        System.out.println(passed ? "No regressions beyond " + Math.round(tolerance * 100) + "%" : "Regressions found");
+        return passed;
+    }
+}
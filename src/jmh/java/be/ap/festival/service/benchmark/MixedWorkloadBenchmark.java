@@ -0,0 +1,65 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.FestivalQuery;
+import be.ap.festival.service.data.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Three readers and one writer against one store: reads must not slow down while snapshots are being published.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class MixedWorkloadBenchmark {
+
+    private static final int FESTIVALS = 10_000;
+    private static final String PHOTO = "https://example.com/benchmark.jpg";
+
+    private FestivalDataStore store;
+
+    @Setup
+    public void load() {
+        store = Catalogs.loaded(FESTIVALS);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Object read() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(10) == 0) {
+            return store.findFestivals(new FestivalQuery((long) random.nextInt(FESTIVALS), 50, null, null, null, null, null, null));
+        }
+        return store.getFestival(1L + random.nextInt(FESTIVALS));
+    }
+
+    // Adds and removes the same photo, so the catalog does not grow during the run
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Optional<Festival> write() {
+        long id = 1L + ThreadLocalRandom.current().nextInt(FESTIVALS);
+        Optional<Festival> added = store.addPhoto(id, PHOTO);
+        return added.isPresent() ? store.removePhoto(id, PHOTO) : added;
+    }
+}
@@ -0,0 +1,50 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.Page;
+import be.ap.festival.service.data.SearchHit;
+import be.ap.festival.service.data.SearchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type-ahead queries against /api/search, one page of 10 hits each. Generated names are "Festival n" and
+ * "Artist n", so "f" and "festival" match every festival: the worst case, where ranking has to see every hit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({"100000"})
+    int festivals;
+
+    @Param({"f", "festival", "gent", "rock", "festival 4217", "nothing"})
+    String text;
+
+    private FestivalDataStore store;
+
+    @Setup
+    public void load() {
+        store = Catalogs.loaded(festivals);
+    }
+
+    @Benchmark
+    public Page<SearchHit> search() {
+        return store.search(new SearchQuery(text, null, null, 10));
+    }
+}
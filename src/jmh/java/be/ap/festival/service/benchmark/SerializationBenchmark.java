@@ -0,0 +1,51 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.FestivalQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON rendering of festival lists with the Jackson 3 mapper Spring MVC uses for responses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"1000", "10000"})
+    int festivals;
+
+    private final JsonMapper mapper = JsonMapper.builder().build();
+    private FestivalDataStore store;
+
+    @Setup
+    public void load() {
+        store = Catalogs.loaded(festivals);
+    }
+
+    @Benchmark
+    public byte[] fullList() {
+        return mapper.writeValueAsBytes(store.getFestivals());
+    }
+
+    @Benchmark
+    public byte[] page() {
+        return mapper.writeValueAsBytes(store.findFestivals(new FestivalQuery(null, 100, null, null, null, null, null, null)).items());
+    }
+}
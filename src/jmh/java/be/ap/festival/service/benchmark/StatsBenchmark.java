@@ -0,0 +1,54 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.StoreStats;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * /api/stats reads, and what keeping the aggregates current adds to a lineup write.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatsBenchmark {
+
+    @Param({"100000"})
+    int festivals;
+
+    private FestivalDataStore store;
+
+    @Setup
+    public void load() {
+        store = Catalogs.loaded(festivals);
+        store.stats(1);
+    }
+
+    @Benchmark
+    public StoreStats stats() {
+        return store.stats(10);
+    }
+
+    @Benchmark
+    public Optional<?> addAndRemoveLineupArtist() {
+        long festival = ThreadLocalRandom.current().nextLong(1, festivals + 1);
+        store.addArtistToFestival(festival, 1L);
+        return store.removeArtistFromFestival(festival, 1L);
+    }
+}
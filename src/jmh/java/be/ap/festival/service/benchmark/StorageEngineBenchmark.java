@@ -0,0 +1,109 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.FestivalQuery;
+import be.ap.festival.service.data.Page;
+import be.ap.festival.service.festival.repo.H2StorageEngine;
+import be.ap.festival.service.festival.repo.StorageEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The same repository calls against each storage engine: point reads, filtered pages and single writes. The
+ * H2 engine runs in file mode under target/, so its numbers include the page store but not an fsync per write.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageEngineBenchmark {
+
+    private static final Path DIRECTORY = Path.of("target", "engines");
+
+    @Param({"memory", "h2"})
+    String engine;
+
+    @Param({"10000"})
+    int festivals;
+
+    private StorageEngine storage;
+
+    @Setup
+    public void load() throws IOException {
+        if (engine.equals("h2")) {
+            Path dir = DIRECTORY.resolve("h2-" + festivals);
+            clear(dir);
+            storage = new H2StorageEngine("jdbc:h2:file:" + dir.resolve("festival").toAbsolutePath());
+        } else {
+            storage = new FestivalDataStore();
+        }
+        storage.load(Catalogs.json(festivals));
+    }
+
+    @TearDown
+    public void close() {
+        if (storage instanceof H2StorageEngine h2) h2.close();
+    }
+
+    @Benchmark
+    public Optional<Festival> getFestival() {
+        return storage.getFestival(ThreadLocalRandom.current().nextLong(1, festivals + 1));
+    }
+
+    @Benchmark
+    public Page<Festival> placeAndGenrePage() {
+        return storage.findFestivals(new FestivalQuery(null, 100, "gent", null, null, null, null, "techno"));
+    }
+
+    @Benchmark
+    public Page<Festival> priceRangePage() {
+        return storage.findFestivals(new FestivalQuery(null, 100, null, null, null, new BigDecimal("50"), new BigDecimal("60"), null));
+    }
+
+    @Benchmark
+    public Optional<Festival> createAndDeleteFestival() {
+        Festival created = storage.createFestival(new Festival("Bench", "Gent", LocalDate.of(2026, 8, 1), BigDecimal.TEN));
+        storage.deleteFestival(created.getId());
+        return Optional.of(created);
+    }
+
+    @Benchmark
+    public Optional<Festival> addAndRemoveLineupArtist() {
+        long festival = ThreadLocalRandom.current().nextLong(1, festivals + 1);
+        storage.addArtistToFestival(festival, 1L);
+        return storage.removeArtistFromFestival(festival, 1L);
+    }
+
+    private static void clear(Path dir) throws IOException {
+        if (Files.exists(dir)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path p : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+            }
+        }
+        Files.createDirectories(dir);
+    }
+}
@@ -0,0 +1,50 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.data.FestivalDataStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost: reading a whole catalog into an empty store, from festivals.json or from a binary snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StoreLoadBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int festivals;
+
+    @Param({"json", "binary"})
+    String format;
+
+    private Path catalog;
+
+    @Setup
+    public void generate() {
+        catalog = "binary".equals(format) ? Catalogs.binary(festivals) : Catalogs.json(festivals);
+    }
+
+    @Benchmark
+    public FestivalDataStore load() throws IOException {
+        FestivalDataStore store = new FestivalDataStore();
+        store.load(catalog);
+        return store;
+    }
+}
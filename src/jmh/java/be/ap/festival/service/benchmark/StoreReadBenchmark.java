@@ -0,0 +1,63 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.FestivalQuery;
+import be.ap.festival.service.data.Page;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read paths the controllers use: full listings (walked completely, as serialization would) and single pages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StoreReadBenchmark {
+
+    @Param({"10000", "100000"})
+    int festivals;
+
+    private FestivalDataStore store;
+
+    @Setup
+    public void load() {
+        store = Catalogs.loaded(festivals);
+    }
+
+    @Benchmark
+    public void getFestivals(Blackhole bh) {
+        for (Festival f : store.getFestivals()) bh.consume(f.getName());
+    }
+
+    @Benchmark
+    public void getArtists(Blackhole bh) {
+        for (Artist a : store.getArtists()) bh.consume(a.getName());
+    }
+
+    @Benchmark
+    public Page<Festival> firstPage() {
+        return store.findFestivals(new FestivalQuery(null, 100, null, null, null, null, null, null));
+    }
+
+    @Benchmark
+    public Page<Festival> placeAndGenrePage() {
+        return store.findFestivals(new FestivalQuery(null, 100, "gent", null, null, null, null, "techno"));
+    }
+}
@@ -0,0 +1,62 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.data.FestivalDataStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one write against the catalog size: with chunked tables and indexes it should grow with the chunk
+ * directory, far slower than the catalog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StoreWriteBenchmark {
+
+    private static final String PHOTO = "https://example.com/benchmark.jpg";
+
+    @Param({"1000", "10000", "100000"})
+    int festivals;
+
+    private FestivalDataStore store;
+
+    @Setup
+    public void load() {
+        store = Catalogs.loaded(festivals);
+    }
+
+    // Replaces one festival in place; adds and removes the same photo, so the catalog does not grow
+    @Benchmark
+    public Optional<Festival> photo() {
+        long id = 1L + ThreadLocalRandom.current().nextInt(festivals);
+        Optional<Festival> added = store.addPhoto(id, PHOTO);
+        return added.isPresent() ? store.removePhoto(id, PHOTO) : added;
+    }
+
+    // Inserts a row into the table and every index, then removes it again
+    @Benchmark
+    public Festival createAndDelete() {
+        Festival created = store.createFestival(new Festival("Benchmark", "Gent", LocalDate.of(2027, 7, 1), new BigDecimal("99.00")));
+        store.deleteFestival(created.getId());
+        return created;
+    }
+}
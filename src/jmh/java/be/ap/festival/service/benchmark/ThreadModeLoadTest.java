@@ -0,0 +1,153 @@
+package be.ap.festival.service.benchmark;
+
+import be.ap.festival.service.FestivalService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the platform-thread and the virtual-thread execution mode of the web tier. For each mode the
+ * service is started in-process with group-commit persistence, so every write blocks its request thread on an
+ * fsync, and {@code clients} closed-loop clients send a mix of festival reads and photo writes for a fixed time.
+ * The virtual-thread run is skipped on runtimes older than Java 21.
+ * <p>
+ * Usage: {@code ThreadModeLoadTest [clients] [seconds] [writePercent] [festivals]}, for example
+ * {@code ./mvnw -Pjmh,java21 test-compile exec:exec -Djmh.main=be.ap.festival.service.benchmark.ThreadModeLoadTest -Djmh.args="800 20 10"}.
+ */
+public final class ThreadModeLoadTest {
+
+    private record Result(String mode, long requests, long errors, double seconds, long[] latencies) {
+
+        double throughput() { return requests / seconds; }
+
+        double percentileMs(double p) {
+            if (latencies.length == 0) return 0;
+            int idx = (int) Math.min(latencies.length - 1, Math.ceil(p * latencies.length) - 1);
+            return latencies[Math.max(0, idx)] / 1e6;
+        }
+    }
+
+    private ThreadModeLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Devtools would otherwise restart this main method in a new class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 800;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int writePercent = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int festivals = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        Path catalog = Catalogs.json(festivals).toAbsolutePath();
+
+        List<Result> results = new ArrayList<>();
+        results.add(run(false, catalog, festivals, clients, seconds, writePercent));
+        if (Runtime.version().feature() >= 21) {
+            results.add(run(true, catalog, festivals, clients, seconds, writePercent));
+        } else {
+            System.out.println("Java " + Runtime.version().feature() + ": skipping the virtual-thread run (build with -Pjava21)");
+        }
+
+        System.out.printf("%n%d clients, %d%% writes, %d s per mode, %d festivals%n", clients, writePercent, seconds, festivals);
+        System.out.printf("%-10s %12s %8s %10s %10s %10s %10s%n", "mode", "req/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Result r : results) {
+            System.out.printf("%-10s %12.0f %8d %10.2f %10.2f %10.2f %10.2f%n", r.mode(), r.throughput(), r.errors(),
+                    r.percentileMs(0.50), r.percentileMs(0.99), r.percentileMs(0.999), r.percentileMs(1.0));
+        }
+    }
+
+    private static Result run(boolean virtual, Path catalog, int festivals, int clients, int seconds, int writePercent)
+            throws Exception {
+        String mode = virtual ? "virtual" : "platform";
+        Path data = Files.createTempDirectory("load-" + mode + "-");
+        // Command-line arguments, so they take precedence over application.yaml
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FestivalService.class).run(
+                "--server.port=0",
+                "--spring.threads.virtual.enabled=" + virtual,
+                "--festival.catalog.location=" + catalog,
+                "--festival.persistence.enabled=true",
+                "--festival.persistence.directory=" + data,
+                "--festival.persistence.sync=group",
+                "--festival.access-log.enabled=false",
+                "--management.tracing.sampling.probability=0.0",
+                "--logging.level.root=WARN");
+        try {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            URI base = URI.create("http://localhost:" + port + "/api/festivals/");
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+            // Warm up connections and the JIT at a fraction of the measured time
+            drive(client, base, festivals, clients, Math.max(2, seconds / 4), writePercent, new AtomicLong(), null);
+            AtomicLong errors = new AtomicLong();
+            List<long[]> samples = new ArrayList<>();
+            long started = System.nanoTime();
+            long requests = drive(client, base, festivals, clients, seconds, writePercent, errors, samples);
+            double elapsed = (System.nanoTime() - started) / 1e9;
+
+            long[] latencies = samples.stream().flatMapToLong(Arrays::stream).toArray();
+            Arrays.sort(latencies);
+            return new Result(mode, requests, errors.get(), elapsed, latencies);
+        } finally {
+            context.close();
+            try (var files = Files.list(data)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(data);
+        }
+    }
+
+    // Closed loop: each client sends its next request as soon as the previous one is answered
+    private static long drive(HttpClient client, URI base, int festivals, int clients, int seconds, int writePercent,
+                              AtomicLong errors, List<long[]> samples) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong requests = new AtomicLong();
+        Thread[] threads = new Thread[clients];
+        long[][] perClient = new long[clients][];
+        for (int c = 0; c < clients; c++) {
+            int slot = c;
+            threads[c] = new Thread(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    long id = 1 + random.nextInt(festivals);
+                    HttpRequest request = random.nextInt(100) < writePercent
+                            ? HttpRequest.newBuilder(base.resolve(id + "/photos"))
+                                    .POST(HttpRequest.BodyPublishers.ofString("https://example.com/load-" + random.nextInt(1000) + ".jpg"))
+                                    .header("Content-Type", "text/plain")
+                                    .build()
+                            : HttpRequest.newBuilder(base.resolve(Long.toString(id))).GET().build();
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 400) errors.incrementAndGet();
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                    latencies[count++] = System.nanoTime() - sent;
+                }
+                perClient[slot] = Arrays.copyOf(latencies, count);
+                requests.addAndGet(count);
+            }, "load-client-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads) thread.join();
+        if (samples != null) samples.addAll(Arrays.asList(perClient));
+        return requests.get();
+    }
+}
@@ -1,5 +1,7 @@
 package be.ap.festival.service;
 
+import java.util.Objects;
+
 public class Artist {
     private Long id;
 
@@ -49,4 +51,16 @@ public class Artist {
     public void setGenre(String genre) {
         this.genre = genre;
     }
-}
\ No newline at end of file
+
+    // Artists are entities: two instances with the same id are the same artist, whatever else they carry
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o instanceof Artist other && id != null && id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+}
@@ -3,9 +3,8 @@ package be.ap.festival.service;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 
 public class Festival {
     private Long id;
@@ -20,7 +19,7 @@ public class Festival {
 
     private List<String> photos = new ArrayList<>();
 
-    private Set<Artist> lineup = new HashSet<>();
+    private Lineup lineup = Lineup.empty();
 
     public Festival() {
     }
@@ -80,11 +79,12 @@ public class Festival {
         this.photos = photos;
     }
 
-    public Set<Artist> getLineup() {
+    public Lineup getLineup() {
         return lineup;
     }
 
-    public void setLineup(Set<Artist> lineup) {
-        this.lineup = lineup;
+    // Kept sorted by artist id and without duplicates, however the artists were supplied
+    public void setLineup(Collection<? extends Artist> lineup) {
+        this.lineup = Lineup.of(lineup);
     }
 }
\ No newline at end of file
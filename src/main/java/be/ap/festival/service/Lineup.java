@@ -0,0 +1,122 @@
+package be.ap.festival.service;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable festival lineup: a sorted, duplicate-free array of artist ids plus, in a parallel array, the
+ * artist each id resolves to. Membership is a binary search over the ids and an artist can only appear once,
+ * whatever instance it was read as. Every "modification" returns a new lineup.
+ * <p>
+ * The artists are kept next to their ids, rather than looked up in the store's artist table when a lineup is
+ * read, because festivals are shared between store snapshots: resolving through a table would either show
+ * artists of a later snapshot or keep every superseded artist table reachable.
+ */
+public final class Lineup extends AbstractSet<Artist> {
+
+    private static final Lineup EMPTY = new Lineup(new long[0], new Artist[0]);
+
+    private final long[] ids;
+    private final Artist[] artists;
+
+    private Lineup(long[] ids, Artist[] artists) {
+        this.ids = ids;
+        this.artists = artists;
+    }
+
+    public static Lineup empty() { return EMPTY; }
+
+    // Artists without an id cannot be referenced and are dropped; of several with the same id the last one wins
+    public static Lineup of(Collection<? extends Artist> source) {
+        if (source instanceof Lineup lineup) return lineup;
+        if (source == null || source.isEmpty()) return EMPTY;
+        Artist[] sorted = source.stream()
+                .filter(a -> a != null && a.getId() != null)
+                .toArray(Artist[]::new);
+        // Stable, so duplicates keep their encounter order and the last one is the one kept below
+        Arrays.sort(sorted, (a, b) -> Long.compare(a.getId(), b.getId()));
+        long[] ids = new long[sorted.length];
+        Artist[] artists = new Artist[sorted.length];
+        int n = 0;
+        for (Artist a : sorted) {
+            if (n > 0 && ids[n - 1] == a.getId()) n--;
+            ids[n] = a.getId();
+            artists[n++] = a;
+        }
+        return n == 0 ? EMPTY : new Lineup(Arrays.copyOf(ids, n), Arrays.copyOf(artists, n));
+    }
+
+    @Override
+    public int size() { return ids.length; }
+
+    public long idAt(int index) { return ids[index]; }
+
+    public Artist artistAt(int index) { return artists[index]; }
+
+    public boolean containsId(long artistId) {
+        return Arrays.binarySearch(ids, artistId) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Artist a && a.getId() != null && containsId(a.getId());
+    }
+
+    public boolean sameIds(Lineup other) {
+        return this == other || Arrays.equals(ids, other.ids);
+    }
+
+    // Adds the artist, or replaces the entry with the same id
+    public Lineup with(Artist artist) {
+        long id = artist.getId();
+        int idx = Arrays.binarySearch(ids, id);
+        if (idx >= 0) {
+            if (artists[idx] == artist) return this;
+            Artist[] newArtists = artists.clone();
+            newArtists[idx] = artist;
+            return new Lineup(ids, newArtists);
+        }
+        int insertAt = -idx - 1;
+        long[] newIds = new long[ids.length + 1];
+        Artist[] newArtists = new Artist[artists.length + 1];
+        System.arraycopy(ids, 0, newIds, 0, insertAt);
+        System.arraycopy(artists, 0, newArtists, 0, insertAt);
+        newIds[insertAt] = id;
+        newArtists[insertAt] = artist;
+        System.arraycopy(ids, insertAt, newIds, insertAt + 1, ids.length - insertAt);
+        System.arraycopy(artists, insertAt, newArtists, insertAt + 1, artists.length - insertAt);
+        return new Lineup(newIds, newArtists);
+    }
+
+    public Lineup without(long artistId) {
+        int idx = Arrays.binarySearch(ids, artistId);
+        if (idx < 0) return this;
+        if (ids.length == 1) return EMPTY;
+        long[] newIds = new long[ids.length - 1];
+        Artist[] newArtists = new Artist[artists.length - 1];
+        System.arraycopy(ids, 0, newIds, 0, idx);
+        System.arraycopy(artists, 0, newArtists, 0, idx);
+        System.arraycopy(ids, idx + 1, newIds, idx, ids.length - idx - 1);
+        System.arraycopy(artists, idx + 1, newArtists, idx, artists.length - idx - 1);
+        return new Lineup(newIds, newArtists);
+    }
+
+    @Override
+    public Iterator<Artist> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() { return next < artists.length; }
+
+            @Override
+            public Artist next() {
+                if (next >= artists.length) throw new NoSuchElementException();
+                return artists[next++];
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+package be.ap.festival.service;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable, prefix-compressed list of photo URLs. Catalog photos mostly live in a handful of buckets, so each
+ * URL is split after its last '/': the prefix is shared through a dictionary and only the file name is kept
+ * per photo. URLs are put back together on access, which is serialization; the response cache keeps the
+ * rendered JSON, so that is not once per request.
+ */
+public final class Photos extends AbstractList<String> implements RandomAccess {
+
+    private static final Photos EMPTY = new Photos(new String[0], new String[0]);
+
+    // A null prefix means the name is the whole URL
+    private final String[] prefixes;
+    private final String[] names;
+
+    private Photos(String[] prefixes, String[] names) {
+        this.prefixes = prefixes;
+        this.names = names;
+    }
+
+    public static Photos empty() { return EMPTY; }
+
+    // The dictionary maps a prefix to its shared instance
+    public static Photos of(List<String> urls, UnaryOperator<String> dictionary) {
+        if (urls instanceof Photos photos) return photos;
+        if (urls == null || urls.isEmpty()) return EMPTY;
+        String[] prefixes = new String[urls.size()];
+        String[] names = new String[urls.size()];
+        for (int i = 0; i < names.length; i++) {
+            String url = urls.get(i);
+            int split = url == null ? -1 : url.lastIndexOf('/') + 1;
+            if (split > 0 && split < url.length()) {
+                prefixes[i] = dictionary.apply(url.substring(0, split));
+                names[i] = url.substring(split);
+            } else {
+                names[i] = url;
+            }
+        }
+        return new Photos(prefixes, names);
+    }
+
+    @Override
+    public String get(int index) {
+        String prefix = prefixes[index];
+        return prefix == null ? names[index] : prefix.concat(names[index]);
+    }
+
+    @Override
+    public int size() { return names.length; }
+}
@@ -0,0 +1,111 @@
+package be.ap.festival.service.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous access log. Request threads only drop an immutable {@link Entry} into a fixed-size ring
+ * buffer; a single background thread formats entries as one JSON object per line and hands them to the
+ * {@code access} logger. When the buffer is full the entry is dropped and counted instead of blocking the
+ * request.
+ */
+public class AccessLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessLog.class);
+    static final Logger ACCESS = LoggerFactory.getLogger("access");
+    private static final JsonFactory JSON = new JsonFactory();
+
+    public record Entry(long timestamp, String method, String route, String path, int status, long latencyMicros,
+                        long bytes, String traceId, String payload) {
+    }
+
+    private final BlockingQueue<Entry> ring;
+    private final Consumer<String> sink;
+    private final Counter dropped;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public AccessLog(int capacity, Consumer<String> sink, MeterRegistry meters) {
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        this.sink = sink;
+        this.dropped = Counter.builder("festival.access.log.dropped")
+                .description("Access log entries dropped because the buffer was full")
+                .register(meters);
+        this.writer = new Thread(this::run, "access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void offer(Entry entry) {
+        if (closed || !ring.offer(entry)) dropped.increment();
+    }
+
+    // Writes out what is still buffered
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        writer.interrupt();
+        writer.join();
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(ring.take());
+            } catch (InterruptedException e) {
+                if (closed) break;
+                continue;
+            }
+            ring.drainTo(batch);
+            write(batch);
+        }
+        ring.drainTo(batch);
+        write(batch);
+    }
+
+    private void write(List<Entry> batch) {
+        for (Entry entry : batch) {
+            try {
+                sink.accept(format(entry));
+            } catch (RuntimeException e) {
+                log.warn("Could not write access log entry for {}", entry.path(), e);
+            }
+        }
+        batch.clear();
+    }
+
+    static String format(Entry e) {
+        StringWriter out = new StringWriter(256);
+        try (JsonGenerator gen = JSON.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("time", Instant.ofEpochMilli(e.timestamp()).toString());
+            gen.writeStringField("method", e.method());
+            gen.writeStringField("route", e.route());
+            gen.writeStringField("path", e.path());
+            gen.writeNumberField("status", e.status());
+            gen.writeNumberField("latencyMs", e.latencyMicros() / 1000.0);
+            gen.writeNumberField("bytes", e.bytes());
+            if (e.traceId() != null) gen.writeStringField("traceId", e.traceId());
+            if (e.payload() != null) gen.writeStringField("payload", e.payload());
+            gen.writeEndObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package be.ap.festival.service.config;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Measures each request and hands one {@link AccessLog.Entry} to the {@link AccessLog}. Successful requests
+ * are sampled, errors (status 400 and up) are always logged. Request bodies are only kept, up to
+ * {@code maxPayload} bytes, for requests that carry one and only logged for errors or for opted-in routes.
+ * Async requests, such as the change feed, are logged once they complete, with the status, latency and bytes
+ * of the whole response rather than of its setup.
+ */
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    public enum PayloadCapture {
+        NONE,
+        ON_ERROR
+    }
+
+    private final AccessLog accessLog;
+    private final double sampleRate;
+    private final Set<String> disabledRoutes;
+    private final Set<String> payloadRoutes;
+    private final PayloadCapture payloadCapture;
+    private final int maxPayload;
+
+    public AccessLogFilter(AccessLog accessLog, double sampleRate, Set<String> disabledRoutes,
+                           Set<String> payloadRoutes, PayloadCapture payloadCapture, int maxPayload) {
+        this.accessLog = accessLog;
+        this.sampleRate = sampleRate;
+        this.disabledRoutes = disabledRoutes;
+        this.payloadRoutes = payloadRoutes;
+        this.payloadCapture = payloadCapture;
+        this.maxPayload = maxPayload;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long started = System.nanoTime();
+        boolean capture = (payloadCapture != PayloadCapture.NONE || !payloadRoutes.isEmpty()) && hasBody(request);
+        HttpServletRequest req = capture ? new ContentCachingRequestWrapper(request, maxPayload) : request;
+        CountingResponseWrapper res = new CountingResponseWrapper(response);
+        boolean failed = true;
+        boolean async = false;
+        try {
+            chain.doFilter(req, res);
+            failed = false;
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new RecordOnCompletion(req, res, started, MDC.get("traceId")));
+                async = true;
+            }
+        } finally {
+            if (!async) record(req, res, failed, started, MDC.get("traceId"));
+        }
+    }
+
+    private void record(HttpServletRequest request, CountingResponseWrapper response, boolean failed, long started,
+                        String traceId) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String route = pattern != null ? pattern.toString() : "unmatched";
+        if (disabledRoutes.contains(route)) return;
+        // An exception that escaped the chain becomes a 500 once the container handles it
+        int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+        boolean error = status >= 400;
+        if (!error && sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) return;
+
+        String payload = null;
+        if (request instanceof ContentCachingRequestWrapper cached
+                && ((error && payloadCapture == PayloadCapture.ON_ERROR) || payloadRoutes.contains(route))) {
+            payload = new String(cached.getContentAsByteArray(), charset(request));
+        }
+        accessLog.offer(new AccessLog.Entry(System.currentTimeMillis(), request.getMethod(), route, request.getRequestURI(),
+                status, (System.nanoTime() - started) / 1_000, response.bytesWritten(), traceId, payload));
+    }
+
+    // Completion follows timeouts and errors too, so the entry is written there, once; the trace id is taken on
+    // the request thread, as the completing thread has none in its MDC
+    private final class RecordOnCompletion implements AsyncListener {
+        private final HttpServletRequest request;
+        private final CountingResponseWrapper response;
+        private final long started;
+        private final String traceId;
+        private volatile boolean failed;
+
+        RecordOnCompletion(HttpServletRequest request, CountingResponseWrapper response, long started, String traceId) {
+            this.request = request;
+            this.response = response;
+            this.started = started;
+            this.traceId = traceId;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(request, response, failed && response.getStatus() < 400, started, traceId);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // A new async cycle drops the listeners of the last one
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    private static boolean hasBody(HttpServletRequest request) {
+        return request.getContentLengthLong() > 0 || request.getHeader("Transfer-Encoding") != null;
+    }
+
+    private static Charset charset(HttpServletRequest request) {
+        String encoding = request.getCharacterEncoding();
+        return encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+    }
+}
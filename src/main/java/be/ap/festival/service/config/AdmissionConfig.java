@@ -0,0 +1,49 @@
+package be.ap.festival.service.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+@Configuration
+@ConditionalOnProperty(name = "festival.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionConfig {
+
+    @Bean
+    public AdmissionControl admissionControl(@Value("${festival.admission.initial-limit:64}") int initialLimit,
+                                             @Value("${festival.admission.min-limit:4}") int minLimit,
+                                             @Value("${festival.admission.max-limit:1000}") int maxLimit,
+                                             @Value("${festival.admission.tolerance:2.0}") double tolerance,
+                                             @Value("${festival.admission.heavy-share:0.75}") double heavyShare,
+                                             @Value("${festival.admission.write-share:0.5}") double writeShare,
+                                             @Value("${festival.admission.route-limits:}") Set<String> routeLimits,
+                                             MeterRegistry meters) {
+        return new AdmissionControl(initialLimit, minLimit, maxLimit, tolerance, heavyShare, writeShare,
+                routeLimits(routeLimits), meters);
+    }
+
+    @Bean
+    public AdmissionControlFilter admissionControlFilter(AdmissionControl admissionControl,
+                                                         @Value("${festival.admission.exempt-paths:}") Set<String> exemptPaths,
+                                                         @Value("${festival.admission.cheap-reads:/api/festivals/{id},/api/festivals/{id}/lineup,/api/artists/{id}}") Set<String> cheapReads,
+                                                         @Value("${festival.admission.retry-after:1s}") Duration retryAfter) {
+        return new AdmissionControlFilter(admissionControl, exemptPaths, cheapReads, Math.max(1, retryAfter.toSeconds()));
+    }
+
+    // Entries of the form "GET /api/export=4"
+    static Map<String, Integer> routeLimits(Set<String> entries) {
+        Map<String, Integer> limits = new HashMap<>();
+        for (String entry : entries) {
+            int split = entry.lastIndexOf('=');
+            if (split < 0) throw new IllegalArgumentException("festival.admission.route-limits entry without '=': " + entry);
+            limits.put(entry.substring(0, split).trim(), Integer.parseInt(entry.substring(split + 1).trim()));
+        }
+        return limits;
+    }
+}
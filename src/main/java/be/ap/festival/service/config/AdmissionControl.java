@@ -0,0 +1,192 @@
+package be.ap.festival.service.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides which API requests may run. All of them share one concurrency limit that adapts to latency: each
+ * route keeps a long-term and a short-term average of its latency, and whenever the short one runs more than
+ * {@code tolerance} times above the long one the limit shrinks (by at most half at a time), otherwise it grows
+ * by about its square root. Requests beyond the limit are refused at once instead of queueing.
+ * <p>
+ * Priorities reserve room under the limit: cheap reads may fill all of it, heavy reads only {@code heavyShare}
+ * of it and writes {@code writeShare}, so under load writes are shed first and single-entity reads last.
+ * Routes may also have a fixed concurrency limit of their own.
+ */
+public class AdmissionControl {
+
+    public enum Priority {
+        // Reads of one entity, such as GET /api/festivals/{id}
+        CHEAP_READ,
+        // Listings (also those under one entity), exports, searches, statistics and photos
+        HEAVY_READ,
+        WRITE
+    }
+
+    public enum Outcome {
+        ADMITTED,
+        // Over the adaptive limit for the request's priority
+        SHED,
+        // Over the route's own limit
+        ROUTE_LIMITED
+    }
+
+    /**
+     * A running request; hand it back to {@link #release} when it is done.
+     */
+    public record Permit(Route route, long started) {
+    }
+
+    // Routes beyond this many share one entry, so odd paths cannot grow the table without bound
+    static final int MAX_ROUTES = 512;
+    private static final String OTHER_ROUTE = "other";
+    // Latency averages over about this many requests
+    private static final int LONG_WINDOW = 500;
+    private static final int SHORT_WINDOW = 10;
+    private static final int OVERLOAD_WINDOW = 10_000;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final Map<Priority, Double> shares = new EnumMap<>(Priority.class);
+    private final Map<String, Integer> routeLimits;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile double limit;
+    private final Map<Priority, Map<Outcome, Counter>> requests = new EnumMap<>(Priority.class);
+    private final LongSupplier nanoTime;
+
+    public AdmissionControl(int initialLimit, int minLimit, int maxLimit, double tolerance, double heavyShare,
+                            double writeShare, Map<String, Integer> routeLimits, MeterRegistry meters) {
+        this(initialLimit, minLimit, maxLimit, tolerance, heavyShare, writeShare, routeLimits, meters, System::nanoTime);
+    }
+
+    // Takes the clock latencies are measured with, so tests can run it on simulated time
+    AdmissionControl(int initialLimit, int minLimit, int maxLimit, double tolerance, double heavyShare,
+                     double writeShare, Map<String, Integer> routeLimits, MeterRegistry meters, LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.routeLimits = Map.copyOf(routeLimits);
+        shares.put(Priority.CHEAP_READ, 1.0);
+        shares.put(Priority.HEAVY_READ, heavyShare);
+        shares.put(Priority.WRITE, writeShare);
+        for (Priority priority : Priority.values()) {
+            Map<Outcome, Counter> counters = new EnumMap<>(Outcome.class);
+            for (Outcome outcome : Outcome.values()) {
+                counters.put(outcome, Counter.builder("festival.admission.requests")
+                        .description("API requests admitted or refused by admission control")
+                        .tag("priority", priority.name().toLowerCase(Locale.ROOT))
+                        .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                        .register(meters));
+            }
+            requests.put(priority, counters);
+        }
+        Gauge.builder("festival.admission.limit", this, AdmissionControl::limit)
+                .description("Current adaptive concurrency limit")
+                .register(meters);
+        Gauge.builder("festival.admission.in.flight", inFlight, AtomicInteger::get).register(meters);
+    }
+
+    public int limit() { return (int) limit; }
+
+    public int inFlight() { return inFlight.get(); }
+
+    // Route keys are "METHOD /path" with numeric path segments written as {id}, e.g. "GET /api/festivals/{id}"
+    public Optional<Permit> tryAcquire(String routeKey, Priority priority) {
+        Route route = route(routeKey, priority);
+        int allowed = Math.max(1, (int) (limit * shares.get(priority)));
+        if (!increment(inFlight, allowed)) return refuse(priority, Outcome.SHED);
+        if (route.limit > 0 && !increment(route.inFlight, route.limit)) {
+            inFlight.decrementAndGet();
+            return refuse(priority, Outcome.ROUTE_LIMITED);
+        }
+        requests.get(priority).get(Outcome.ADMITTED).increment();
+        return Optional.of(new Permit(route, nanoTime.getAsLong()));
+    }
+
+    public void release(Permit permit) {
+        long latency = nanoTime.getAsLong() - permit.started();
+        int running = inFlight.getAndDecrement();
+        Route route = permit.route();
+        if (route.limit > 0) route.inFlight.decrementAndGet();
+        lock.lock();
+        try {
+            update(route, latency, running);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private void update(Route route, long latency, int running) {
+        if (route.longLatency == 0) {
+            route.longLatency = latency;
+            route.shortLatency = latency;
+            return;
+        }
+        // Latency under overload only slowly becomes the new normal, else a long spike would be learned away
+        int window = latency > tolerance * route.longLatency ? OVERLOAD_WINDOW : LONG_WINDOW;
+        route.longLatency += (latency - route.longLatency) * 2.0 / (window + 1);
+        route.shortLatency += (latency - route.shortLatency) * 2.0 / (SHORT_WINDOW + 1);
+        // Once load is gone the long average catches up faster than its window would let it
+        if (route.longLatency > 2 * route.shortLatency) route.longLatency *= 0.95;
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * route.longLatency / route.shortLatency));
+        // With fewer than half the permits in use, low latency says nothing about a higher limit
+        if (gradient >= 1.0 && running < limit / 2) return;
+        double next = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + next * SMOOTHING));
+    }
+
+    private Route route(String key, Priority priority) {
+        Route route = routes.get(key);
+        if (route != null) return route;
+        if (routes.size() >= MAX_ROUTES) {
+            return routes.computeIfAbsent(OTHER_ROUTE + " " + priority, k -> new Route(0));
+        }
+        return routes.computeIfAbsent(key, k -> new Route(routeLimits.getOrDefault(k, 0)));
+    }
+
+    private Optional<Permit> refuse(Priority priority, Outcome outcome) {
+        requests.get(priority).get(outcome).increment();
+        return Optional.empty();
+    }
+
+    private static boolean increment(AtomicInteger counter, int max) {
+        while (true) {
+            int current = counter.get();
+            if (current >= max) return false;
+            if (counter.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * Per-route state: its own concurrency limit (0 for none) and latency averages in nanoseconds, the
+     * latter guarded by the lock of the {@link AdmissionControl}.
+     */
+    static final class Route {
+        final int limit;
+        final AtomicInteger inFlight = new AtomicInteger();
+        double longLatency;
+        double shortLatency;
+
+        Route(int limit) {
+            this.limit = limit;
+        }
+    }
+}
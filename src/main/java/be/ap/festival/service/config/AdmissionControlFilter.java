@@ -0,0 +1,105 @@
+package be.ap.festival.service.config;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Runs every API request past {@link AdmissionControl} before anything else is spent on it, and answers
+ * refused ones with 503 and a Retry-After. Reads of the configured cheap routes, single entities such as
+ * GET /api/festivals/{id}, are cheap; other reads are heavy, including those with an id in the path such as
+ * /api/artists/{id}/festivals or photos fetched from the origin; everything else is a write. Exempt paths, the
+ * long-lived streams, are passed through untouched. A request that goes async holds its permit until the
+ * async work completes, not just until the request thread returns.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Pattern ID_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+    private static final Set<String> READS = Set.of("GET", "HEAD");
+
+    private final AdmissionControl admission;
+    private final Set<String> exemptPaths;
+    private final Set<String> cheapReads;
+    private final long retryAfterSeconds;
+
+    // Cheap reads are routes as in route keys, without the method, e.g. "/api/festivals/{id}"
+    public AdmissionControlFilter(AdmissionControl admission, Set<String> exemptPaths, Set<String> cheapReads,
+                                  long retryAfterSeconds) {
+        this.admission = admission;
+        this.exemptPaths = exemptPaths;
+        this.cheapReads = cheapReads;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        if (!uri.startsWith("/api/")) return true;
+        for (String exempt : exemptPaths) {
+            if (uri.startsWith(exempt)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = ID_SEGMENT.matcher(request.getRequestURI()).replaceAll("/{id}");
+        AdmissionControl.Priority priority = !READS.contains(request.getMethod()) ? AdmissionControl.Priority.WRITE
+                : cheapReads.contains(path) ? AdmissionControl.Priority.CHEAP_READ : AdmissionControl.Priority.HEAVY_READ;
+        Optional<AdmissionControl.Permit> permit = admission.tryAcquire(request.getMethod() + " " + path, priority);
+        if (permit.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+            return;
+        }
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new Release(permit.get()));
+                async = true;
+            }
+        } finally {
+            if (!async) admission.release(permit.get());
+        }
+    }
+
+    // Completion follows timeouts and errors as well, so releasing there alone releases exactly once
+    private final class Release implements AsyncListener {
+        private final AdmissionControl.Permit permit;
+
+        Release(AdmissionControl.Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            admission.release(permit);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // A new async cycle drops the listeners of the last one
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
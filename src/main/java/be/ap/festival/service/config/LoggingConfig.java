@@ -1,20 +1,29 @@
 package be.ap.festival.service.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.filter.CommonsRequestLoggingFilter;
+
+import java.util.Set;
 
 @Configuration
+@ConditionalOnProperty(name = "festival.access-log.enabled", havingValue = "true", matchIfMissing = true)
 public class LoggingConfig {
 
+    @Bean(destroyMethod = "close")
+    public AccessLog accessLog(@Value("${festival.access-log.buffer-size:8192}") int bufferSize, MeterRegistry meters) {
+        return new AccessLog(bufferSize, AccessLog.ACCESS::info, meters);
+    }
+
     @Bean
-    public CommonsRequestLoggingFilter logFilter() {
-        CommonsRequestLoggingFilter filter = new CommonsRequestLoggingFilter();
-        filter.setIncludeQueryString(true);
-        filter.setIncludePayload(true);
-        filter.setMaxPayloadLength(10000);
-        filter.setIncludeHeaders(false);
-        filter.setAfterMessagePrefix("REQUEST DATA: ");
-        return filter;
+    public AccessLogFilter accessLogFilter(AccessLog accessLog,
+                                           @Value("${festival.access-log.sample-rate:1.0}") double sampleRate,
+                                           @Value("${festival.access-log.disabled-routes:}") Set<String> disabledRoutes,
+                                           @Value("${festival.access-log.payload-routes:}") Set<String> payloadRoutes,
+                                           @Value("${festival.access-log.payload:on-error}") AccessLogFilter.PayloadCapture payload,
+                                           @Value("${festival.access-log.max-payload:2048}") int maxPayload) {
+        return new AccessLogFilter(accessLog, sampleRate, disabledRoutes, payloadRoutes, payload, maxPayload);
     }
 }
@@ -0,0 +1,52 @@
+package be.ap.festival.service.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Set;
+
+/**
+ * On a replication follower, sends API writes to the leader with a 307, which keeps the method and body.
+ * Reads are served locally and may trail the leader by the replication lag.
+ */
+@Component
+@ConditionalOnProperty(name = "festival.replication.role", havingValue = "follower")
+@Profile("!h2")
+public class ReplicaWriteFilter extends OncePerRequestFilter {
+
+    private static final Set<String> READS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final URI leader;
+
+    public ReplicaWriteFilter(@Value("${festival.replication.leader-url}") URI leader) {
+        this.leader = leader;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return READS.contains(request.getMethod()) || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String location = UriComponentsBuilder.fromUri(leader)
+                .path(request.getRequestURI())
+                .query(request.getQueryString())
+                .build(true)
+                .toUriString();
+        response.setStatus(HttpServletResponse.SC_TEMPORARY_REDIRECT);
+        response.setHeader(HttpHeaders.LOCATION, location);
+    }
+}
@@ -0,0 +1,48 @@
+package be.ap.festival.service.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Records the body size of successful API reads as festival.http.response.size, per route and encoding,
+ * so list payload growth (and the effect of paging, projections and gzip) is visible next to latency.
+ */
+@Component
+public class ResponseSizeFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry registry;
+
+    public ResponseSizeFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod()) || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        CountingResponseWrapper counting = new CountingResponseWrapper(response);
+        chain.doFilter(request, counting);
+        if (counting.getStatus() != HttpServletResponse.SC_OK) return;
+        Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String encoding = counting.getHeader("Content-Encoding");
+        DistributionSummary.builder("festival.http.response.size")
+                .baseUnit("bytes")
+                .tag("uri", route != null ? route.toString() : "UNKNOWN")
+                .tag("encoding", encoding != null ? encoding : "identity")
+                .register(registry)
+                .record(counting.bytesWritten());
+    }
+}
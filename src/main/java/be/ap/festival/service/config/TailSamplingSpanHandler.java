@@ -0,0 +1,153 @@
+package be.ap.festival.service.config;
+
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tail sampling of the traces the head sampler recorded. The spans of a trace are held back until its local
+ * root (normally the server span of the request) ends, and are then reported or dropped together: traces with
+ * an error (an exception or a 5xx status) or slower than {@code slowThreshold} are always kept, the rest at
+ * {@code keepRate}. Kept spans go on to the span handlers after this one, which must therefore come first.
+ * <p>
+ * At most {@code maxPending} traces are held back; beyond that the oldest is dropped unreported. Every trace
+ * is counted once in {@code festival.tracing.traces}, by decision and reason.
+ */
+public class TailSamplingSpanHandler extends SpanHandler {
+
+    private record Held(TraceContext context, MutableSpan span) {
+    }
+
+    private final ObjectProvider<SpanHandler> handlers;
+    private final double keepRate;
+    private final long slowMicros;
+    private final Counter keptError;
+    private final Counter keptSlow;
+    private final Counter keptSampled;
+    private final Counter dropped;
+    private final Counter overflow;
+    private final Object lock = new Object();
+    // Spans of unfinished traces by local root id, and the decisions on recent traces for spans that end late
+    private final Map<Long, List<Held>> pending;
+    private final Map<Long, Boolean> decided;
+    private volatile List<SpanHandler> next;
+
+    public TailSamplingSpanHandler(ObjectProvider<SpanHandler> handlers, double keepRate, Duration slowThreshold,
+                                   int maxPending, MeterRegistry meters) {
+        this.handlers = handlers;
+        this.keepRate = keepRate;
+        this.slowMicros = slowThreshold.toNanos() / 1_000;
+        this.keptError = counter(meters, "kept", "error");
+        this.keptSlow = counter(meters, "kept", "slow");
+        this.keptSampled = counter(meters, "kept", "sampled");
+        this.dropped = counter(meters, "dropped", "sampled");
+        this.overflow = counter(meters, "dropped", "overflow");
+        this.decided = bounded(maxPending);
+        this.pending = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<Held>> eldest) {
+                if (size() <= maxPending) return false;
+                decided.put(eldest.getKey(), false);
+                overflow.increment();
+                return true;
+            }
+        };
+    }
+
+    static Counter counter(MeterRegistry meters, String decision, String reason) {
+        return Counter.builder("festival.tracing.traces")
+                .description("Traces kept or dropped by trace sampling")
+                .tag("decision", decision)
+                .tag("reason", reason)
+                .register(meters);
+    }
+
+    @Override
+    public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+        long root = context.localRootId();
+        if (root == 0) return true;
+        List<Held> held;
+        synchronized (lock) {
+            Boolean decision = decided.get(root);
+            if (decision != null) return decision;
+            if (!context.isLocalRoot()) {
+                pending.computeIfAbsent(root, k -> new ArrayList<>()).add(new Held(context, span));
+                return false;
+            }
+            held = pending.remove(root);
+        }
+        boolean keep = decide(span, held);
+        synchronized (lock) {
+            decided.put(root, keep);
+        }
+        if (keep && held != null) {
+            for (Held h : held) forward(h);
+        }
+        return keep;
+    }
+
+    private boolean decide(MutableSpan root, List<Held> held) {
+        boolean error = failed(root);
+        for (int i = 0; held != null && i < held.size() && !error; i++) error = failed(held.get(i).span());
+        if (error) {
+            keptError.increment();
+            return true;
+        }
+        if (root.finishTimestamp() - root.startTimestamp() >= slowMicros) {
+            keptSlow.increment();
+            return true;
+        }
+        if (keepRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < keepRate) {
+            keptSampled.increment();
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    // Micrometer's HTTP observations tag the span with the exception (or "none"), the outcome and the status
+    private static boolean failed(MutableSpan span) {
+        if (span.error() != null || span.tag("error") != null) return true;
+        String exception = span.tag("exception");
+        if (exception != null && !exception.equals("none")) return true;
+        if ("SERVER_ERROR".equals(span.tag("outcome"))) return true;
+        String status = span.tag("http.status_code");
+        if (status == null) status = span.tag("status");
+        return status != null && status.length() == 3 && status.charAt(0) == '5';
+    }
+
+    // Hands a held span to the handlers after this one, stopping where one of them drops it as Brave would
+    private void forward(Held held) {
+        for (SpanHandler handler : next()) {
+            if (!handler.end(held.context(), held.span(), Cause.FINISHED)) return;
+        }
+    }
+
+    private List<SpanHandler> next() {
+        List<SpanHandler> list = next;
+        if (list == null) {
+            list = handlers.orderedStream().filter(h -> h != this).toList();
+            next = list;
+        }
+        return list;
+    }
+
+    private static Map<Long, Boolean> bounded(int capacity) {
+        return new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+}
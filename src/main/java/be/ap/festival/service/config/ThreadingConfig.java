@@ -0,0 +1,34 @@
+package be.ap.festival.service.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.thread.Threading;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+
+/**
+ * Reports the execution mode of the web tier. With {@code spring.threads.virtual.enabled} Tomcat runs every
+ * request on its own virtual thread; that needs Java 21, on older runtimes the flag is ignored and the
+ * platform-thread pool stays in use. The store only blocks on {@code ReentrantLock}s and {@code Condition}s,
+ * never inside {@code synchronized}, so waiting requests do not pin their carrier thread.
+ */
+@Configuration
+public class ThreadingConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadingConfig.class);
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reportMode(ApplicationReadyEvent event) {
+        Environment environment = event.getApplicationContext().getEnvironment();
+        if (Threading.VIRTUAL.isActive(environment)) {
+            log.info("Serving requests on virtual threads");
+        } else if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            log.warn("spring.threads.virtual.enabled is set, but Java {} has no virtual threads; serving requests "
+                    + "on the platform thread pool", Runtime.version().feature());
+        } else {
+            log.info("Serving requests on the platform thread pool");
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package be.ap.festival.service.config;
+
+import brave.handler.SpanHandler;
+import brave.sampler.RateLimitingSampler;
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import java.time.Duration;
+
+/**
+ * Trace sampling in two steps: a rate-limited head sampler decides which new traces are recorded at all, in
+ * place of Boot's fixed probability, and {@link TailSamplingSpanHandler} decides which recorded traces are
+ * reported once they end. Traces the head sampler skips still get ids for the log lines, but no spans.
+ */
+@Configuration
+@ConditionalOnProperty(name = "festival.tracing.enabled", havingValue = "true", matchIfMissing = true)
+public class TracingConfig {
+
+    @Bean
+    public Sampler headSampler(@Value("${festival.tracing.traces-per-second:100}") int tracesPerSecond,
+                               MeterRegistry meters) {
+        Sampler limit = RateLimitingSampler.create(tracesPerSecond);
+        Counter limited = TailSamplingSpanHandler.counter(meters, "dropped", "rate-limited");
+        return new Sampler() {
+            @Override
+            public boolean isSampled(long traceId) {
+                if (limit.isSampled(traceId)) return true;
+                limited.increment();
+                return false;
+            }
+        };
+    }
+
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public TailSamplingSpanHandler tailSamplingSpanHandler(ObjectProvider<SpanHandler> handlers,
+                                                           @Value("${festival.tracing.keep-rate:0.1}") double keepRate,
+                                                           @Value("${festival.tracing.slow-threshold:500ms}") Duration slowThreshold,
+                                                           @Value("${festival.tracing.max-pending:10000}") int maxPending,
+                                                           MeterRegistry meters) {
+        return new TailSamplingSpanHandler(handlers, keepRate, slowThreshold, maxPending, meters);
+    }
+}
@@ -0,0 +1,19 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+
+import java.util.function.Predicate;
+
+// Keyset page request plus optional genre (case-insensitive) and exact name filters
+public record ArtistQuery(Long after, int limit, String genre, String name) implements Predicate<Artist> {
+
+    public ArtistQuery {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+    }
+
+    @Override
+    public boolean test(Artist a) {
+        return (genre == null || genre.equalsIgnoreCase(a.getGenre()))
+                && (name == null || name.equals(a.getName()));
+    }
+}
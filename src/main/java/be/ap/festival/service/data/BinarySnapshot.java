@@ -0,0 +1,308 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.Photos;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot that is memory-mapped instead of parsed. Layout, all big-endian:
+ * <pre>
+ * header     magic, format, version, nextFestivalId, nextArtistId, and the five counts below
+ * strings    count + 1 offsets into the string data; every distinct string is stored once
+ * artists    fixed 20-byte records: id, name, photoUrl, genre (string ids, -1 for null)
+ * festivals  fixed 44-byte records: id, name, place, epoch day, price, first photo, photos, first lineup, lineup size
+ * lineups    artist ids, one run per festival (adjacency array)
+ * photos     string ids, one run per festival
+ * data       UTF-8 bytes of the string table
+ * </pre>
+ * Opening a snapshot only reads the id columns and the indexed fields; {@link Festival} and {@link Artist}
+ * instances are built from the mapping the first time they are touched. The file is mapped as one buffer,
+ * so a snapshot must stay below 2 GB.
+ */
+final class BinarySnapshot {
+
+    static final int MAGIC = 0x46534E50; // "FSNP"
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 52;
+    private static final int ARTIST_BYTES = 20;
+    private static final int FESTIVAL_BYTES = 44;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    record Contents(long version, long nextFestivalId, long nextArtistId, EntityTable<Festival> festivals,
+                    EntityTable<Artist> artists, StoreIndexes indexes) {
+    }
+
+    private BinarySnapshot() {
+    }
+
+    static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // a regular file delivers the first bytes in one read
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    static void write(StoreSnapshot snap, long nextFestivalId, long nextArtistId, OutputStream out) throws IOException {
+        Map<String, Integer> stringIds = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        ByteArrayOutputStream artistBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream festivalBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream lineupBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream photoBytes = new ByteArrayOutputStream();
+        DataOutputStream artistOut = new DataOutputStream(artistBytes);
+        DataOutputStream festivalOut = new DataOutputStream(festivalBytes);
+        DataOutputStream lineupOut = new DataOutputStream(lineupBytes);
+        DataOutputStream photoOut = new DataOutputStream(photoBytes);
+
+        EntityTable<Artist> artists = snap.artists();
+        for (int i = 0; i < artists.size(); i++) {
+            Artist a = artists.peekAt(i);
+            artistOut.writeLong(a.getId());
+            artistOut.writeInt(intern(a.getName(), stringIds, strings));
+            artistOut.writeInt(intern(a.getPhotoUrl(), stringIds, strings));
+            artistOut.writeInt(intern(a.getGenre(), stringIds, strings));
+        }
+        // One pass over the festivals fills all three of their sections, so lazy rows are built only once
+        EntityTable<Festival> festivals = snap.festivals();
+        int photos = 0;
+        int lineups = 0;
+        for (int i = 0; i < festivals.size(); i++) {
+            Festival f = festivals.peekAt(i);
+            festivalOut.writeLong(f.getId());
+            festivalOut.writeInt(intern(f.getName(), stringIds, strings));
+            festivalOut.writeInt(intern(f.getPlace(), stringIds, strings));
+            festivalOut.writeLong(f.getDate() == null ? NO_DATE : f.getDate().toEpochDay());
+            festivalOut.writeInt(intern(f.getPrice() == null ? null : f.getPrice().toString(), stringIds, strings));
+            festivalOut.writeInt(photos);
+            festivalOut.writeInt(f.getPhotos().size());
+            festivalOut.writeInt(lineups);
+            festivalOut.writeInt(f.getLineup().size());
+            for (String photo : f.getPhotos()) photoOut.writeInt(intern(photo, stringIds, strings));
+            for (int j = 0; j < f.getLineup().size(); j++) lineupOut.writeLong(f.getLineup().idAt(j));
+            photos += f.getPhotos().size();
+            lineups += f.getLineup().size();
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT);
+        data.writeLong(snap.version());
+        data.writeLong(nextFestivalId);
+        data.writeLong(nextArtistId);
+        data.writeInt(strings.size());
+        data.writeInt(artists.size());
+        data.writeInt(festivals.size());
+        data.writeInt(lineups);
+        data.writeInt(photos);
+        int end = 0;
+        data.writeInt(0);
+        for (byte[] s : strings) {
+            end += s.length;
+            data.writeInt(end);
+        }
+        artistBytes.writeTo(data);
+        festivalBytes.writeTo(data);
+        lineupBytes.writeTo(data);
+        photoBytes.writeTo(data);
+        for (byte[] s : strings) data.write(s);
+        data.flush();
+    }
+
+    // Places, genres and photo URL prefixes are shared through the store's dictionary
+    static Contents open(Path path, StringDictionary dictionary) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return new Reader(buffer, path, dictionary).contents();
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<byte[]> strings) {
+        if (value == null) return -1;
+        return ids.computeIfAbsent(value, v -> {
+            strings.add(v.getBytes(StandardCharsets.UTF_8));
+            return strings.size() - 1;
+        });
+    }
+
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private final long version;
+        private final long nextFestivalId;
+        private final long nextArtistId;
+        private final int artistCount;
+        private final int festivalCount;
+        private final int stringsAt;
+        private final int artistsAt;
+        private final int festivalsAt;
+        private final int lineupsAt;
+        private final int photosAt;
+        private final int dataAt;
+        // Decoded strings are shared by every entity that uses them; racing decodes are harmless
+        private final String[] decoded;
+        private final StringDictionary dictionary;
+
+        Reader(ByteBuffer buffer, Path path, StringDictionary dictionary) throws IOException {
+            this.buffer = buffer;
+            this.dictionary = dictionary;
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT) {
+                throw new IOException("Not a supported binary snapshot: " + path);
+            }
+            version = buffer.getLong(8);
+            nextFestivalId = buffer.getLong(16);
+            nextArtistId = buffer.getLong(24);
+            int stringCount = buffer.getInt(32);
+            artistCount = buffer.getInt(36);
+            festivalCount = buffer.getInt(40);
+            int lineupCount = buffer.getInt(44);
+            int photoCount = buffer.getInt(48);
+            stringsAt = HEADER_BYTES;
+            artistsAt = stringsAt + (stringCount + 1) * 4;
+            festivalsAt = artistsAt + artistCount * ARTIST_BYTES;
+            lineupsAt = festivalsAt + festivalCount * FESTIVAL_BYTES;
+            photosAt = lineupsAt + lineupCount * 8;
+            dataAt = photosAt + photoCount * 4;
+            if (dataAt > buffer.limit() || dataAt + buffer.getInt(artistsAt - 4) != buffer.limit()) {
+                throw new IOException("Truncated binary snapshot: " + path);
+            }
+            decoded = new String[stringCount];
+        }
+
+        Contents contents() {
+            long[] artistIds = new long[artistCount];
+            for (int row = 0; row < artistCount; row++) artistIds[row] = buffer.getLong(artistsAt + row * ARTIST_BYTES);
+            long[] festivalIds = new long[festivalCount];
+            for (int row = 0; row < festivalCount; row++) festivalIds[row] = buffer.getLong(festivalsAt + row * FESTIVAL_BYTES);
+            EntityTable<Artist> artists = EntityTable.lazy(artistIds, this::artist);
+            EntityTable<Festival> festivals = EntityTable.lazy(festivalIds, row -> festival(row, artists));
+            return new Contents(version, nextFestivalId, nextArtistId, festivals, artists, indexes(festivalIds, artistIds));
+        }
+
+        // Built straight from the mapped columns, without materializing a single entity
+        private StoreIndexes indexes(long[] festivalIds, long[] artistIds) {
+            Map<Integer, String> folded = new HashMap<>();
+            Map<Long, LocalDate> dates = new HashMap<>();
+            Map<Integer, BigDecimal> prices = new HashMap<>();
+            Map<Integer, List<String>> tokens = new HashMap<>();
+            List<KeyIndex.Entry<LocalDate>> byDate = new ArrayList<>(festivalCount);
+            List<KeyIndex.Entry<BigDecimal>> byPrice = new ArrayList<>(festivalCount);
+            List<KeyIndex.Entry<String>> byPlace = new ArrayList<>(festivalCount);
+            List<KeyIndex.Entry<Long>> byArtist = new ArrayList<>();
+            List<KeyIndex.Entry<String>> festivalTokens = new ArrayList<>();
+            for (int row = 0; row < festivalCount; row++) {
+                int at = festivalsAt + row * FESTIVAL_BYTES;
+                long id = festivalIds[row];
+                long epochDay = buffer.getLong(at + 16);
+                if (epochDay != NO_DATE) byDate.add(new KeyIndex.Entry<>(dates.computeIfAbsent(epochDay, LocalDate::ofEpochDay), id));
+                int price = buffer.getInt(at + 24);
+                if (price >= 0) {
+                    byPrice.add(new KeyIndex.Entry<>(prices.computeIfAbsent(price, p -> StoreIndexes.priceKey(new BigDecimal(string(p)))), id));
+                }
+                byPlace.add(new KeyIndex.Entry<>(fold(buffer.getInt(at + 12), folded), id));
+                int first = buffer.getInt(at + 36);
+                int size = buffer.getInt(at + 40);
+                for (int i = 0; i < size; i++) byArtist.add(new KeyIndex.Entry<>(buffer.getLong(lineupsAt + (first + i) * 8), id));
+                addTokens(festivalTokens, id, buffer.getInt(at + 8), buffer.getInt(at + 12), tokens);
+            }
+            List<KeyIndex.Entry<String>> byGenre = new ArrayList<>(artistCount);
+            List<KeyIndex.Entry<String>> byName = new ArrayList<>(artistCount);
+            List<KeyIndex.Entry<String>> artistTokens = new ArrayList<>();
+            for (int row = 0; row < artistCount; row++) {
+                int at = artistsAt + row * ARTIST_BYTES;
+                byName.add(new KeyIndex.Entry<>(string(buffer.getInt(at + 8)), artistIds[row]));
+                byGenre.add(new KeyIndex.Entry<>(fold(buffer.getInt(at + 16), folded), artistIds[row]));
+                addTokens(artistTokens, artistIds[row], buffer.getInt(at + 8), buffer.getInt(at + 16), tokens);
+            }
+            return new StoreIndexes(KeyIndex.of(byDate), KeyIndex.of(byPrice), KeyIndex.of(byPlace),
+                    KeyIndex.of(byArtist), KeyIndex.of(byGenre), KeyIndex.of(byName),
+                    KeyIndex.of(festivalTokens), KeyIndex.of(artistTokens));
+        }
+
+        // Names are mostly unique and are decoded without the string cache; places and genres repeat across
+        // many rows, so their tokens are computed once per string id
+        private void addTokens(List<KeyIndex.Entry<String>> entries, long id, int name, int detail, Map<Integer, List<String>> tokens) {
+            if (name >= 0) {
+                for (String token : SearchText.tokens(decode(name))) {
+                    entries.add(new KeyIndex.Entry<>(SearchText.key(token, SearchText.NAME), id));
+                }
+            }
+            if (detail >= 0) {
+                for (String token : tokens.computeIfAbsent(detail, i -> SearchText.tokens(string(i)))) {
+                    entries.add(new KeyIndex.Entry<>(SearchText.key(token, SearchText.DETAIL), id));
+                }
+            }
+        }
+
+        private Artist artist(int row) {
+            int at = artistsAt + row * ARTIST_BYTES;
+            Artist a = new Artist(string(buffer.getInt(at + 8)), string(buffer.getInt(at + 12)),
+                    dictionary.canonical(string(buffer.getInt(at + 16))));
+            a.setId(buffer.getLong(at));
+            return a;
+        }
+
+        private Festival festival(int row, EntityTable<Artist> artists) {
+            int at = festivalsAt + row * FESTIVAL_BYTES;
+            long epochDay = buffer.getLong(at + 16);
+            int price = buffer.getInt(at + 24);
+            Festival f = new Festival(string(buffer.getInt(at + 8)), dictionary.canonical(string(buffer.getInt(at + 12))),
+                    epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay),
+                    price < 0 ? null : new BigDecimal(string(price)));
+            f.setId(buffer.getLong(at));
+            int firstPhoto = buffer.getInt(at + 28);
+            List<String> photos = new ArrayList<>(buffer.getInt(at + 32));
+            // Not through the string cache: only the compressed form is kept
+            for (int i = 0; i < buffer.getInt(at + 32); i++) photos.add(decode(buffer.getInt(photosAt + (firstPhoto + i) * 4)));
+            f.setPhotos(Photos.of(photos, dictionary::canonical));
+            int firstArtist = buffer.getInt(at + 36);
+            List<Artist> lineup = new ArrayList<>(buffer.getInt(at + 40));
+            for (int i = 0; i < buffer.getInt(at + 40); i++) lineup.add(artists.get(buffer.getLong(lineupsAt + (firstArtist + i) * 8)));
+            f.setLineup(lineup);
+            return f;
+        }
+
+        private String fold(int id, Map<Integer, String> folded) {
+            return id < 0 ? null : folded.computeIfAbsent(id, i -> StoreIndexes.fold(string(i)));
+        }
+
+        private String string(int id) {
+            if (id < 0) return null;
+            String s = decoded[id];
+            if (s == null) {
+                s = decode(id);
+                decoded[id] = s;
+            }
+            return s;
+        }
+
+        private String decode(int id) {
+            if (id < 0) return null;
+            int start = buffer.getInt(stringsAt + id * 4);
+            int end = buffer.getInt(stringsAt + (id + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            buffer.get(dataAt + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
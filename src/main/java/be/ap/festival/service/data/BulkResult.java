@@ -0,0 +1,26 @@
+package be.ap.festival.service.data;
+
+import java.util.List;
+
+/**
+ * Outcome of {@link FestivalDataStore#bulk}: the store version the whole batch was published as, and one
+ * item per requested mutation, in request order.
+ */
+public record BulkResult(long version, List<Item> items) {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        INVALID
+    }
+
+    // entity is the created or updated festival/artist; error explains an INVALID item
+    public record Item(Status status, Object entity, String error) {
+
+        static Item of(Status status, Object entity) { return new Item(status, entity, null); }
+
+        static Item invalid(String error) { return new Item(Status.INVALID, null, error); }
+    }
+}
@@ -0,0 +1,168 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.Photos;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams a festivals.json catalog with Jackson's token-level parser. Only one festival record is bound at a
+ * time; it is turned into a {@link Festival} straight away and its lineup is deduplicated against the artists
+ * seen so far, so no intermediate document tree is ever held in memory.
+ * <p>
+ * Store snapshots ({@link CatalogWriter}) use the same format plus an optional top-level "artists" array,
+ * written before "festivals" so lineups can reference artists by id only, and the store's version and next
+ * ids.
+ */
+class CatalogLoader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .findAndRegisterModules();
+
+    @FunctionalInterface
+    interface Progress {
+        void loaded(long festivals, long artists);
+    }
+
+    // version and the next ids are 0 when the document does not carry them (plain festivals.json)
+    record Catalog(Map<Long, Festival> festivals, Map<Long, Artist> artists, long version,
+                   long nextFestivalId, long nextArtistId) {
+    }
+
+    private final StringDictionary dictionary;
+    private final Map<Long, Artist> artistsById = new LinkedHashMap<>();
+    // Artists with an id by name, and the ones without an id, which are only matched up in finish()
+    private final Map<String, Artist> artistsByName = new HashMap<>();
+    private final Map<String, Artist> artistsWithoutId = new LinkedHashMap<>();
+    private final List<Festival> festivals = new ArrayList<>();
+    // Parallel to festivals; lineups are only built once every artist has its id
+    private final List<List<Artist>> lineups = new ArrayList<>();
+    private long maxFestivalId;
+    private long maxArtistId;
+    private long version;
+    private long nextFestivalId;
+    private long nextArtistId;
+
+    private CatalogLoader(StringDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    // Places, genres and photo URL prefixes are shared through the given dictionary
+    static Catalog read(InputStream in, StringDictionary dictionary, int progressInterval, Progress progress) throws IOException {
+        return new CatalogLoader(dictionary).parse(in, progressInterval, progress);
+    }
+
+    private Catalog parse(InputStream in, int progressInterval, Progress progress) throws IOException {
+        try (JsonParser parser = MAPPER.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return finish();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("festivals".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        add(MAPPER.readValue(parser, FestivalDto.class));
+                        if (progressInterval > 0 && festivals.size() % progressInterval == 0) {
+                            progress.loaded(festivals.size(), artistsById.size() + artistsWithoutId.size());
+                        }
+                    }
+                } else if ("artists".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        resolve(MAPPER.readValue(parser, Artist.class));
+                    }
+                } else if ("version".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    version = parser.getLongValue();
+                } else if ("nextFestivalId".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    nextFestivalId = parser.getLongValue();
+                } else if ("nextArtistId".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    nextArtistId = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return finish();
+    }
+
+    private void add(FestivalDto dto) {
+        Festival f = new Festival(dto.name, dictionary.canonical(dto.place), dto.date, dto.price);
+        if (dto.id != null) {
+            f.setId(dto.id);
+            maxFestivalId = Math.max(maxFestivalId, dto.id);
+        }
+        f.setPhotos(Photos.of(dto.photos, dictionary::canonical));
+        List<Artist> lineup = new ArrayList<>(dto.lineup != null ? dto.lineup.size() : 0);
+        if (dto.lineup != null) {
+            for (Artist a : dto.lineup) lineup.add(resolve(a));
+        }
+        festivals.add(f);
+        lineups.add(lineup);
+    }
+
+    // Shared artists map to one instance: by id when the record has one, otherwise by name. A record without an
+    // id may name an artist whose record with an id is still ahead in the stream, so those stay provisional.
+    private Artist resolve(Artist a) {
+        if (a.getId() != null) {
+            Artist known = artistsById.get(a.getId());
+            if (known != null) return known;
+            Artist created = new Artist(a.getName(), a.getPhotoUrl(), dictionary.canonical(a.getGenre()));
+            created.setId(a.getId());
+            maxArtistId = Math.max(maxArtistId, a.getId());
+            artistsById.put(a.getId(), created);
+            artistsByName.putIfAbsent(a.getName(), created);
+            return created;
+        }
+        Artist known = artistsByName.get(a.getName());
+        if (known != null) return known;
+        return artistsWithoutId.computeIfAbsent(a.getName(),
+                name -> new Artist(a.getName(), a.getPhotoUrl(), dictionary.canonical(a.getGenre())));
+    }
+
+    // Records without an id are the artist of the same name that has one, wherever it came in the stream; the
+    // rest get an id after the stream ends, above every explicit id, so they never collide
+    private Catalog finish() {
+        long artistId = maxArtistId + 1;
+        for (Artist a : artistsWithoutId.values()) {
+            if (artistsByName.containsKey(a.getName())) continue;
+            a.setId(artistId++);
+            artistsById.put(a.getId(), a);
+        }
+        long festivalId = maxFestivalId + 1;
+        Map<Long, Festival> byId = new LinkedHashMap<>();
+        for (int i = 0; i < festivals.size(); i++) {
+            Festival f = festivals.get(i);
+            if (f.getId() == null) f.setId(festivalId++);
+            List<Artist> lineup = lineups.get(i);
+            // Only the provisional artists that turned out to have an id are still without one
+            lineup.replaceAll(a -> a.getId() != null ? a : artistsByName.get(a.getName()));
+            f.setLineup(lineup);
+            byId.put(f.getId(), f);
+        }
+        return new Catalog(byId, artistsById, version, nextFestivalId, nextArtistId);
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class FestivalDto {
+        public Long id;
+        public String name;
+        public String place;
+        public LocalDate date;
+        public BigDecimal price;
+        public List<String> photos;
+        public List<Artist> lineup;
+    }
+}
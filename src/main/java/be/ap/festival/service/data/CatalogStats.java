@@ -0,0 +1,206 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.Lineup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Running aggregates behind {@link StoreStats}. The store hands every published write's replaced and
+ * replacing entities to {@link #update}, which takes the old ones out and puts the new ones in, so the cost
+ * follows the size of the write (a deleteArtist cascade is one festival per lineup it was in), never the size
+ * of the catalog. After a catalog load the aggregates are rebuilt once, when they are next read.
+ * <p>
+ * Busiest artists come from a linked list of buckets, one per distinct booking count that some artist has, in
+ * count order. A booking moves its artist to the neighbouring bucket (creating it if needed), and reading the
+ * top n walks down from the highest bucket, never through counts nobody has.
+ * <p>
+ * Not thread-safe; the store guards it together with the snapshot swap.
+ */
+final class CatalogStats {
+
+    // Inclusive upper bounds of the price histogram buckets; a last bucket holds everything above
+    static final BigDecimal[] PRICE_BOUNDS = {
+            new BigDecimal("50"), new BigDecimal("100"), new BigDecimal("150"), new BigDecimal("200"),
+            new BigDecimal("300"), new BigDecimal("500")
+    };
+
+    private final Map<String, Integer> places = new HashMap<>();
+    private final Map<String, Integer> genres = new HashMap<>();
+    private long priced;
+    private BigDecimal priceSum = BigDecimal.ZERO;
+    private final long[] priceBuckets = new long[PRICE_BOUNDS.length + 1];
+    private long bookings;
+    private final Map<Long, Bucket> bucketOfArtist = new HashMap<>();
+    private Bucket lowest;
+    private Bucket highest;
+    private boolean stale = true;
+
+    boolean stale() { return stale; }
+
+    void invalidate() { stale = true; }
+
+    void rebuild(StoreSnapshot snap) {
+        places.clear();
+        genres.clear();
+        priced = 0;
+        priceSum = BigDecimal.ZERO;
+        Arrays.fill(priceBuckets, 0);
+        bookings = 0;
+        bucketOfArtist.clear();
+        lowest = null;
+        highest = null;
+        stale = false;
+        update(List.of(), snap.festivals().asList(), List.of(), snap.artists().asList());
+    }
+
+    // Previous versions of the changed entities and their replacements; created ones only have the latter,
+    // deleted ones only the former
+    void update(Collection<Festival> oldFestivals, Collection<Festival> newFestivals,
+                Collection<Artist> oldArtists, Collection<Artist> newArtists) {
+        if (stale) return;
+        // A festival whose artist ids stay the same keeps its bookings; most updates leave the lineup alone
+        Map<Long, Lineup> lineups = new HashMap<>();
+        for (Festival f : oldFestivals) lineups.put(f.getId(), f.getLineup());
+        Set<Long> unchanged = new HashSet<>();
+        for (Festival f : newFestivals) {
+            Lineup before = lineups.get(f.getId());
+            if (before != null && before.sameIds(f.getLineup())) unchanged.add(f.getId());
+        }
+        for (Festival f : oldFestivals) count(f, -1, !unchanged.contains(f.getId()));
+        for (Festival f : newFestivals) count(f, 1, !unchanged.contains(f.getId()));
+        for (Artist a : oldArtists) count(genres, a.getGenre(), -1);
+        for (Artist a : newArtists) count(genres, a.getGenre(), 1);
+    }
+
+    StoreStats view(StoreSnapshot snap, int top) {
+        BigDecimal min = plain(snap.indexes().festivalsByPrice().firstKey());
+        BigDecimal max = plain(snap.indexes().festivalsByPrice().lastKey());
+        BigDecimal avg = priced == 0 ? null : priceSum.divide(BigDecimal.valueOf(priced), 2, RoundingMode.HALF_UP);
+        List<StoreStats.Bucket> histogram = new ArrayList<>(priceBuckets.length);
+        for (int i = 0; i < priceBuckets.length; i++) {
+            histogram.add(new StoreStats.Bucket(i == 0 ? null : PRICE_BOUNDS[i - 1],
+                    i < PRICE_BOUNDS.length ? PRICE_BOUNDS[i] : null, priceBuckets[i]));
+        }
+        return new StoreStats(snap.version(), snap.festivals().size(), snap.artists().size(), bookings,
+                byCount(places), byCount(genres), new StoreStats.Prices(priced, min, max, avg, histogram),
+                busiest(snap, top));
+    }
+
+    private void count(Festival f, int delta, boolean book) {
+        count(places, f.getPlace(), delta);
+        BigDecimal price = f.getPrice();
+        if (price != null) {
+            priced += delta;
+            priceSum = delta > 0 ? priceSum.add(price) : priceSum.subtract(price);
+            priceBuckets[bucketOf(price)] += delta;
+        }
+        if (!book) return;
+        Lineup lineup = f.getLineup();
+        bookings += (long) delta * lineup.size();
+        for (int i = 0; i < lineup.size(); i++) book(lineup.idAt(i), delta);
+    }
+
+    private void book(long artistId, int delta) {
+        Bucket from = bucketOfArtist.get(artistId);
+        int count = (from == null ? 0 : from.bookings) + delta;
+        if (count > 0) {
+            Bucket to = delta > 0 ? (from == null ? lowest : from.higher) : from.lower;
+            if (to == null || to.bookings != count) {
+                to = delta > 0 ? link(from, from == null ? lowest : from.higher, count) : link(from.lower, from, count);
+            }
+            to.artists.add(artistId);
+            bucketOfArtist.put(artistId, to);
+        } else {
+            bucketOfArtist.remove(artistId);
+        }
+        if (from != null) {
+            from.artists.remove(artistId);
+            if (from.artists.isEmpty()) unlink(from);
+        }
+    }
+
+    // A new, empty bucket between two neighbours, either of which may be null at the ends of the list
+    private Bucket link(Bucket lower, Bucket higher, int bookings) {
+        Bucket bucket = new Bucket(bookings);
+        bucket.lower = lower;
+        bucket.higher = higher;
+        if (lower != null) lower.higher = bucket;
+        else lowest = bucket;
+        if (higher != null) higher.lower = bucket;
+        else highest = bucket;
+        return bucket;
+    }
+
+    private void unlink(Bucket bucket) {
+        if (bucket.lower != null) bucket.lower.higher = bucket.higher;
+        else lowest = bucket.higher;
+        if (bucket.higher != null) bucket.higher.lower = bucket.lower;
+        else highest = bucket.lower;
+    }
+
+    // Buckets from the top down; ties are broken by artist id, so the answer does not depend on write order
+    private List<StoreStats.BusyArtist> busiest(StoreSnapshot snap, int top) {
+        List<StoreStats.BusyArtist> result = new ArrayList<>(Math.min(top, bucketOfArtist.size()));
+        for (Bucket b = highest; b != null && result.size() < top; b = b.lower) {
+            for (Iterator<Long> ids = b.artists.iterator(); ids.hasNext() && result.size() < top; ) {
+                long id = ids.next();
+                Artist a = snap.artists().get(id);
+                result.add(new StoreStats.BusyArtist(id, a == null ? null : a.getName(), b.bookings));
+            }
+        }
+        return result;
+    }
+
+    private static int bucketOf(BigDecimal price) {
+        for (int i = 0; i < PRICE_BOUNDS.length; i++) {
+            if (price.compareTo(PRICE_BOUNDS[i]) <= 0) return i;
+        }
+        return PRICE_BOUNDS.length;
+    }
+
+    private static void count(Map<String, Integer> counts, String key, int delta) {
+        if (key == null) return;
+        counts.merge(key, delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    private static Map<String, Integer> byCount(Map<String, Integer> counts) {
+        Map<String, Integer> sorted = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                .forEach(e -> sorted.put(e.getKey(), e.getValue()));
+        return sorted;
+    }
+
+    // Price index keys have their trailing zeros stripped, which would otherwise print 110 as 1.1E+2
+    private static BigDecimal plain(BigDecimal key) {
+        return key == null || key.scale() >= 0 ? key : key.setScale(0);
+    }
+
+    private static final class Bucket {
+        final int bookings;
+        // In id order, so the top n are read off the front instead of sorting the whole bucket
+        final NavigableSet<Long> artists = new TreeSet<>();
+        Bucket lower;
+        Bucket higher;
+
+        Bucket(int bookings) {
+            this.bookings = bookings;
+        }
+    }
+}
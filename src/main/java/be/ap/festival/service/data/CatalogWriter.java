@@ -0,0 +1,71 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams a {@link StoreSnapshot} as a catalog document that {@link CatalogLoader} reads back: artists are
+ * written once at the top and lineups only carry their ids, so a snapshot costs one pass and no extra copy.
+ */
+class CatalogWriter {
+
+    // The caller owns the stream (it still has to fsync it), so closing the generator must not close it
+    private static final JsonFactory FACTORY = JsonFactory.builder().disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+
+    static void write(StoreSnapshot snap, long nextFestivalId, long nextArtistId, OutputStream out) throws IOException {
+        try (JsonGenerator gen = FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeNumberField("version", snap.version());
+            gen.writeNumberField("nextFestivalId", nextFestivalId);
+            gen.writeNumberField("nextArtistId", nextArtistId);
+            gen.writeArrayFieldStart("artists");
+            for (int i = 0; i < snap.artists().size(); i++) {
+                Artist a = snap.artists().peekAt(i);
+                gen.writeStartObject();
+                gen.writeNumberField("id", a.getId());
+                writeString(gen, "name", a.getName());
+                writeString(gen, "photoUrl", a.getPhotoUrl());
+                writeString(gen, "genre", a.getGenre());
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("festivals");
+            for (int i = 0; i < snap.festivals().size(); i++) {
+                writeFestival(gen, snap.festivals().peekAt(i));
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    private static void writeFestival(JsonGenerator gen, Festival f) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", f.getId());
+        writeString(gen, "name", f.getName());
+        writeString(gen, "place", f.getPlace());
+        if (f.getDate() != null) gen.writeStringField("date", f.getDate().toString());
+        if (f.getPrice() != null) gen.writeNumberField("price", f.getPrice());
+        gen.writeArrayFieldStart("photos");
+        for (String photo : f.getPhotos()) gen.writeString(photo);
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("lineup");
+        for (Artist a : f.getLineup()) {
+            gen.writeStartObject();
+            gen.writeNumberField("id", a.getId());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator gen, String field, String value) throws IOException {
+        if (value != null) gen.writeStringField(field, value);
+    }
+}
@@ -0,0 +1,133 @@
+package be.ap.festival.service.data;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-memory history of the most recent {@link StoreChange}s, so clients that already hold a store
+ * version can ask for what changed after it instead of fetching everything again. A catalog load replaces
+ * everything and clears the history; so does running past {@code capacity} changes for the oldest ones.
+ * <p>
+ * Versions after a catalog load are consecutive, so the history is a ring indexed by version and readers
+ * such as the change feed can follow it with nothing more than a cursor.
+ */
+@Component
+public class ChangeLog implements StoreListener {
+
+    /**
+     * Everything that changed after {@code since} up to and including {@code version}. The ids, in ascending
+     * order, name entities that were created, updated or deleted; {@code snapshot} is the store as of
+     * {@code version}, so an id missing from it was deleted.
+     */
+    public record Changes(long since, long version, StoreSnapshot snapshot, Set<Long> festivalIds, Set<Long> artistIds) {
+    }
+
+    private final StoreChange[] ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // Every change after this version, up to the latest one, is in the ring
+    private long floor;
+    private StoreSnapshot latest;
+
+    public ChangeLog(FestivalDataStore store, @Value("${festival.change-log.capacity:100000}") int capacity) {
+        this.ring = new StoreChange[capacity];
+        lock.lock();
+        try {
+            this.latest = store.snapshot();
+            this.floor = latest.version();
+        } finally {
+            lock.unlock();
+        }
+        store.addListener(this);
+    }
+
+    @Override
+    public void onChange(StoreChange change, StoreSnapshot snapshot) {
+        lock.lock();
+        try {
+            latest = snapshot;
+            if (change.mutation() == null) {
+                floor = change.version();
+            } else {
+                ring[slot(change.version())] = change;
+                floor = Math.max(floor, change.version() - ring.length);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long latestVersion() {
+        lock.lock();
+        try {
+            return latest.version();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Empty when changes after the version are no longer retained, or the version is from the future
+    public Optional<Changes> since(long version) {
+        lock.lock();
+        try {
+            if (!retains(version)) return Optional.empty();
+            Set<Long> festivalIds = new TreeSet<>();
+            Set<Long> artistIds = new TreeSet<>();
+            for (long v = version + 1; v <= latest.version(); v++) {
+                StoreChange change = ring[slot(v)];
+                festivalIds.addAll(change.festivalIds());
+                artistIds.addAll(change.artistIds());
+            }
+            return Optional.of(new Changes(version, latest.version(), latest, festivalIds, artistIds));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The next (at most max) changes after the version, in order; empty under the same conditions as since
+    public Optional<List<StoreChange>> after(long version, int max) {
+        lock.lock();
+        try {
+            if (!retains(version)) return Optional.empty();
+            long last = Math.min(latest.version(), version + max);
+            List<StoreChange> changes = new ArrayList<>((int) (last - version));
+            for (long v = version + 1; v <= last; v++) changes.add(ring[slot(v)]);
+            return Optional.of(changes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until the latest version is no longer the given one; false if the timeout passed first
+    public boolean awaitChange(long version, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (latest.version() == version) {
+                if (nanos <= 0) return false;
+                nanos = changed.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean retains(long version) {
+        return version >= floor && version <= latest.version();
+    }
+
+    private int slot(long version) {
+        return (int) (version % ring.length);
+    }
+}
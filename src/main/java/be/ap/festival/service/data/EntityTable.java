@@ -0,0 +1,331 @@
+package be.ap.festival.service.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Immutable, id-ordered table of entities. Rows are kept in chunks of at most {@value #MAX_CHUNK}, and every
+ * "modification" returns a new table that copies only the chunk it touches plus the chunk directory
+ * (one reference per {@value #CHUNK} rows); all other chunks, and the entity instances in them, are shared
+ * with the previous version. A single-entity write therefore costs O(n / {@value #CHUNK} + {@value #MAX_CHUNK}),
+ * not a copy of the whole table.
+ * <p>
+ * A table can also be {@linkplain #lazy lazy}: entities are then built on first access and cached, and
+ * later versions of the table keep sharing the not-yet-built slots.
+ */
+public final class EntityTable<T> {
+
+    static final int CHUNK = 128;
+    static final int MAX_CHUNK = 2 * CHUNK;
+
+    private static final EntityTable<?> EMPTY = new EntityTable<>(new Chunk[0]);
+
+    private final Chunk[] chunks;
+    // First id and first row index of every chunk, for the binary searches that pick a chunk
+    private final long[] firstIds;
+    private final int[] starts;
+    private final int size;
+    private final List<T> view;
+
+    private EntityTable(Chunk[] chunks) {
+        this.chunks = chunks;
+        this.firstIds = new long[chunks.length];
+        this.starts = new int[chunks.length];
+        int rows = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            firstIds[c] = chunks[c].ids[0];
+            starts[c] = rows;
+            rows += chunks[c].ids.length;
+        }
+        this.size = rows;
+        this.view = new View();
+    }
+
+    // For in-place replacements: the chunk boundaries are unchanged, so the directory is shared as well
+    private EntityTable(EntityTable<T> base, Chunk[] chunks) {
+        this.chunks = chunks;
+        this.firstIds = base.firstIds;
+        this.starts = base.starts;
+        this.size = base.size;
+        this.view = new View();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> EntityTable<T> empty() {
+        return (EntityTable<T>) EMPTY;
+    }
+
+    // Entries must be supplied as parallel arrays; they are sorted by id here
+    static <T> EntityTable<T> of(long[] ids, Object[] values) {
+        if (!isSorted(ids)) {
+            Integer[] order = new Integer[ids.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(ids[a], ids[b]));
+            long[] sortedIds = new long[ids.length];
+            Object[] sortedValues = new Object[values.length];
+            for (int i = 0; i < order.length; i++) {
+                sortedIds[i] = ids[order[i]];
+                sortedValues[i] = values[order[i]];
+            }
+            return chunked(sortedIds, sortedValues);
+        }
+        return chunked(ids, values);
+    }
+
+    // Values come from the loader on first access, exactly once per row; ids must already be sorted
+    static <T> EntityTable<T> lazy(long[] ids, IntFunction<? extends T> loader) {
+        Object[] values = new Object[ids.length];
+        for (int i = 0; i < ids.length; i++) values[i] = new Deferred(loader, i);
+        return chunked(ids, values);
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public T get(Long id) {
+        if (id == null) return null;
+        int c = chunkFor(id);
+        if (c < 0) return null;
+        int idx = Arrays.binarySearch(chunks[c].ids, id);
+        return idx >= 0 ? chunks[c].valueAt(idx) : null;
+    }
+
+    public boolean contains(Long id) {
+        if (id == null) return false;
+        int c = chunkFor(id);
+        return c >= 0 && Arrays.binarySearch(chunks[c].ids, id) >= 0;
+    }
+
+    // Index of the first entity whose id is strictly greater than the given one (0 for a null cursor)
+    public int indexAfter(Long id) {
+        if (id == null) return 0;
+        int c = chunkFor(id);
+        if (c < 0) return 0;
+        int idx = Arrays.binarySearch(chunks[c].ids, id);
+        return starts[c] + (idx >= 0 ? idx + 1 : -idx - 1);
+    }
+
+    public long idAt(int index) {
+        int c = chunkAt(index);
+        return chunks[c].ids[index - starts[c]];
+    }
+
+    public long maxId() {
+        if (size == 0) return 0L;
+        long[] last = chunks[chunks.length - 1].ids;
+        return last[last.length - 1];
+    }
+
+    // Read-only, zero-copy list view in id order
+    public List<T> asList() { return view; }
+
+    // Like asList().get(index), but does not keep a lazily built entity; for one-off passes such as snapshots
+    @SuppressWarnings("unchecked")
+    public T peekAt(int index) {
+        int c = chunkAt(index);
+        Object value = chunks[c].values[index - starts[c]];
+        return value instanceof Deferred deferred ? (T) deferred.peek() : (T) value;
+    }
+
+    public EntityTable<T> with(long id, T value) {
+        if (size == 0) return new EntityTable<>(new Chunk[] {new Chunk(new long[] {id}, new Object[] {value})});
+        // An id below the first one goes to the front of the first chunk
+        int c = Math.max(0, chunkFor(id));
+        Chunk chunk = chunks[c];
+        int idx = Arrays.binarySearch(chunk.ids, id);
+        if (idx >= 0) {
+            if (chunk.values[idx] == value) return this;
+            Object[] newValues = chunk.values.clone();
+            newValues[idx] = value;
+            Chunk[] newChunks = chunks.clone();
+            newChunks[c] = new Chunk(chunk.ids, newValues);
+            return new EntityTable<>(this, newChunks);
+        }
+        int insertAt = -idx - 1;
+        int n = chunk.ids.length;
+        long[] newIds = new long[n + 1];
+        Object[] newValues = new Object[n + 1];
+        System.arraycopy(chunk.ids, 0, newIds, 0, insertAt);
+        System.arraycopy(chunk.values, 0, newValues, 0, insertAt);
+        newIds[insertAt] = id;
+        newValues[insertAt] = value;
+        System.arraycopy(chunk.ids, insertAt, newIds, insertAt + 1, n - insertAt);
+        System.arraycopy(chunk.values, insertAt, newValues, insertAt + 1, n - insertAt);
+        if (newIds.length <= MAX_CHUNK) return new EntityTable<>(splice(c, new Chunk(newIds, newValues)));
+        int half = newIds.length / 2;
+        return new EntityTable<>(splice(c,
+                new Chunk(Arrays.copyOfRange(newIds, 0, half), Arrays.copyOfRange(newValues, 0, half)),
+                new Chunk(Arrays.copyOfRange(newIds, half, newIds.length), Arrays.copyOfRange(newValues, half, newIds.length))));
+    }
+
+    public EntityTable<T> without(Long id) {
+        if (id == null) return this;
+        int c = chunkFor(id);
+        if (c < 0) return this;
+        Chunk chunk = chunks[c];
+        int idx = Arrays.binarySearch(chunk.ids, id);
+        if (idx < 0) return this;
+        int n = chunk.ids.length;
+        if (n == 1) return new EntityTable<>(splice(c));
+        long[] newIds = new long[n - 1];
+        Object[] newValues = new Object[n - 1];
+        System.arraycopy(chunk.ids, 0, newIds, 0, idx);
+        System.arraycopy(chunk.values, 0, newValues, 0, idx);
+        System.arraycopy(chunk.ids, idx + 1, newIds, idx, n - idx - 1);
+        System.arraycopy(chunk.values, idx + 1, newValues, idx, n - idx - 1);
+        return new EntityTable<>(splice(c, new Chunk(newIds, newValues)));
+    }
+
+    // Applies the change to the entities with the given ids (unknown ids are skipped), copying each touched chunk once
+    public EntityTable<T> replace(long[] targetIds, UnaryOperator<T> change) {
+        Chunk[] newChunks = null;
+        Object[][] copied = null;
+        for (long id : targetIds) {
+            int c = chunkFor(id);
+            if (c < 0) continue;
+            Chunk chunk = chunks[c];
+            int idx = Arrays.binarySearch(chunk.ids, id);
+            if (idx < 0) continue;
+            T current = (copied != null && copied[c] != null) ? valueOf(copied[c][idx]) : chunk.valueAt(idx);
+            T replacement = change.apply(current);
+            if (replacement != current) {
+                if (newChunks == null) {
+                    newChunks = chunks.clone();
+                    copied = new Object[chunks.length][];
+                }
+                if (copied[c] == null) {
+                    copied[c] = chunk.values.clone();
+                    newChunks[c] = new Chunk(chunk.ids, copied[c]);
+                }
+                copied[c][idx] = replacement;
+            }
+        }
+        return newChunks == null ? this : new EntityTable<>(this, newChunks);
+    }
+
+    private static <T> EntityTable<T> chunked(long[] ids, Object[] values) {
+        if (ids.length == 0) return empty();
+        Chunk[] chunks = new Chunk[(ids.length + CHUNK - 1) / CHUNK];
+        for (int c = 0; c < chunks.length; c++) {
+            int from = c * CHUNK, to = Math.min(ids.length, from + CHUNK);
+            chunks[c] = new Chunk(Arrays.copyOfRange(ids, from, to), Arrays.copyOfRange(values, from, to));
+        }
+        return new EntityTable<>(chunks);
+    }
+
+    // The chunks with the one at the given position swapped for the replacements (none to drop it)
+    private Chunk[] splice(int at, Chunk... replacements) {
+        Chunk[] result = new Chunk[chunks.length - 1 + replacements.length];
+        System.arraycopy(chunks, 0, result, 0, at);
+        System.arraycopy(replacements, 0, result, at, replacements.length);
+        System.arraycopy(chunks, at + 1, result, at + replacements.length, chunks.length - at - 1);
+        return result;
+    }
+
+    // The chunk that holds (or would hold) the id: the last one starting at or below it, -1 if none does
+    private int chunkFor(long id) {
+        int idx = Arrays.binarySearch(firstIds, id);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+    private int chunkAt(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        int idx = Arrays.binarySearch(starts, index);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+    private T valueAt(int index) {
+        int c = chunkAt(index);
+        return chunks[c].valueAt(index - starts[c]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T valueOf(Object value) {
+        return value instanceof Deferred deferred ? (T) deferred.get() : (T) value;
+    }
+
+    private static boolean isSorted(long[] ids) {
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i - 1] >= ids[i]) return false;
+        }
+        return true;
+    }
+
+    private record Chunk(long[] ids, Object[] values) {
+        <T> T valueAt(int index) { return valueOf(values[index]); }
+    }
+
+    private final class View extends AbstractList<T> implements RandomAccess {
+        @Override
+        public T get(int index) { return valueAt(index); }
+
+        @Override
+        public int size() { return size; }
+
+        // Walks the chunks directly instead of locating every row again
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<>() {
+                private int chunk, row;
+
+                @Override
+                public boolean hasNext() { return chunk < chunks.length; }
+
+                @Override
+                public T next() {
+                    if (chunk >= chunks.length) throw new NoSuchElementException();
+                    T value = chunks[chunk].valueAt(row);
+                    if (++row == chunks[chunk].ids.length) {
+                        chunk++;
+                        row = 0;
+                    }
+                    return value;
+                }
+            };
+        }
+    }
+
+    private static final class Deferred {
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(Deferred.class, "value", Object.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final IntFunction<?> loader;
+        private final int row;
+        private volatile Object value;
+
+        Deferred(IntFunction<?> loader, int row) {
+            this.loader = loader;
+            this.row = row;
+        }
+
+        Object get() {
+            Object current = value;
+            if (current != null) return current;
+            Object loaded = loader.apply(row);
+            // Racing readers must all end up with the same instance, lineups rely on artist identity
+            Object witness = VALUE.compareAndExchange(this, null, loaded);
+            return witness == null ? loaded : witness;
+        }
+
+        Object peek() {
+            Object current = value;
+            return current != null ? current : loader.apply(row);
+        }
+    }
+}
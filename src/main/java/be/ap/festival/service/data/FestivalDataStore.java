@@ -2,222 +2,860 @@ package be.ap.festival.service.data;
 
 import be.ap.festival.service.Artist;
 import be.ap.festival.service.Festival;
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import be.ap.festival.service.Lineup;
+import be.ap.festival.service.Photos;
+import be.ap.festival.service.festival.repo.StorageEngine;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.time.LocalDate;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.LongStream;
 
+/**
+ * The in-memory {@link StorageEngine}: immutable, indexed snapshots swapped in by one writer at a time, so
+ * reads never lock. Everything beyond the SPI (listeners, the change log and feed, search, persistence and
+ * replication) is built on these snapshots and only available with this engine.
+ */
 @Component
-public class FestivalDataStore {
+public class FestivalDataStore implements StorageEngine {
 
-    private final Map<Long, Festival> festivals = new LinkedHashMap<>();
-    private final Map<Long, Artist> artists = new LinkedHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(FestivalDataStore.class);
+
+    // Readers only ever dereference this volatile field; writers serialize on writeLock and publish a new
+    // immutable snapshot per mutation. ReentrantLock (not synchronized) keeps virtual threads unpinned.
+    private volatile StoreSnapshot current = StoreSnapshot.EMPTY;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final List<StoreListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile LongConsumer commitBarrier = version -> { };
+    // Guards the stats together with the swap of current, so a stats read always matches one snapshot
+    private final ReentrantLock statsLock = new ReentrantLock();
+    private final CatalogStats stats = new CatalogStats();
+    // A replication follower only changes through apply() and replicate(); see ReplicationFollower
+    private volatile boolean replica;
+
+    private static final String DEFAULT_CATALOG_LOCATION = "classpath:festivals.json";
+    private static final int PROGRESS_INTERVAL = 10_000;
 
     private final AtomicLong festivalIdSeq = new AtomicLong(1);
     private final AtomicLong artistIdSeq = new AtomicLong(1);
+    // Shared across catalog loads, so values survive a reload and new entities reuse loaded ones
+    private final StringDictionary dictionary = new StringDictionary();
+
+    private final String catalogLocation;
+    private final boolean loadOnStartup;
+    private final ObservationRegistry observations;
+
+    public FestivalDataStore() {
+        this(DEFAULT_CATALOG_LOCATION);
+    }
+
+    public FestivalDataStore(String catalogLocation) {
+        this(catalogLocation, true, ObservationRegistry.NOOP);
+    }
 
+    @Autowired
+    public FestivalDataStore(@Value("${festival.catalog.location:" + DEFAULT_CATALOG_LOCATION + "}") String catalogLocation,
+                             @Value("${festival.catalog.load-on-startup:true}") boolean loadOnStartup,
+                             ObjectProvider<ObservationRegistry> observations) {
+        this(catalogLocation, loadOnStartup, observations.getIfAvailable(() -> ObservationRegistry.NOOP));
+    }
+
+    private FestivalDataStore(String catalogLocation, boolean loadOnStartup, ObservationRegistry observations) {
+        this.catalogLocation = catalogLocation;
+        this.loadOnStartup = loadOnStartup;
+        this.observations = observations;
+    }
+
+    // A store that was already restored (see StorePersistence) or replicates a leader is not overwritten by
+    // the seed catalog; neither is one that another engine stands in for
     @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() throws IOException {
+        if (current.version() == 0 && !replica && loadOnStartup) load();
+    }
+
     public void load() throws IOException {
-        // Load JSON from classpath
-        ClassPathResource resource = new ClassPathResource("festivals.json");
+        observeChecked("load", () -> {
+            loadCatalog();
+            return null;
+        });
+    }
+
+    private void loadCatalog() throws IOException {
+        Resource resource = resolveCatalog(catalogLocation);
         if (!resource.exists()) {
             return; // nothing to load
         }
+        if (resource.isFile()) {
+            loadFile(resource.getFile().toPath());
+            return;
+        }
         try (InputStream is = resource.getInputStream()) {
-            ObjectMapper mapper = new ObjectMapper()
-                    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-                    .findAndRegisterModules();
-
-            RootDto root = mapper.readValue(is, RootDto.class);
-            if (root == null || root.festivals == null) return;
-
-            // First, index all artists found across festivals so shared artists map to same instance
-            Map<Long, Artist> tempArtists = new LinkedHashMap<>();
-            for (FestivalDto fDto : root.festivals) {
-                if (fDto.lineup != null) {
-                    for (Artist a : fDto.lineup) {
-                        Long id = a.getId();
-                        if (id == null) {
-                            id = artistIdSeq.getAndIncrement();
-                            a.setId(id);
-                        }
-                        tempArtists.putIfAbsent(id, a);
-                    }
-                }
+            load(is, resource.getDescription(), false);
+        }
+    }
+
+    // Accepts festivals.json-style catalogs as well as binary snapshots, which are mapped rather than parsed
+    public void load(Path path) throws IOException {
+        observeChecked("load", () -> {
+            loadFile(path);
+            return null;
+        });
+    }
+
+    private void loadFile(Path path) throws IOException {
+        if (BinarySnapshot.isBinary(path)) {
+            long started = System.nanoTime();
+            BinarySnapshot.Contents contents = BinarySnapshot.open(path, dictionary);
+            install(contents.version(), false, contents.nextFestivalId(), contents.nextArtistId(), contents.festivals(),
+                    contents.artists(), contents.indexes(), path.toString(), started);
+            return;
+        }
+        try (InputStream is = Files.newInputStream(path)) {
+            load(is, path.toString(), false);
+        }
+    }
+
+    // Installs a leader's snapshot at exactly the leader's version, so its log can be applied on top of it
+    void replicate(InputStream is, String source) throws IOException {
+        observeChecked("replicate", () -> {
+            load(is, source, true);
+            return null;
+        });
+    }
+
+    private void load(InputStream is, String source, boolean exactVersion) throws IOException {
+        long started = System.nanoTime();
+        CatalogLoader.Catalog catalog = CatalogLoader.read(is, dictionary, PROGRESS_INTERVAL,
+                (festivals, artists) -> log.info("Loading {}: {} festivals, {} artists so far", source, festivals, artists));
+        EntityTable<Festival> festivals = toTable(catalog.festivals());
+        EntityTable<Artist> artists = toTable(catalog.artists());
+        install(catalog.version(), exactVersion, catalog.nextFestivalId(), catalog.nextArtistId(), festivals, artists,
+                StoreIndexes.build(festivals.asList(), artists.asList()), source, started);
+    }
+
+    // Replaces the whole catalog with one snapshot; indexes are built by the caller, outside the lock.
+    // Unless the version must be kept exactly, it never goes backwards
+    private void install(long version, boolean exactVersion, long nextFestivalId, long nextArtistId,
+                         EntityTable<Festival> festivals, EntityTable<Artist> artists, StoreIndexes indexes,
+                         String source, long started) {
+        long published;
+        writeLock.lock();
+        try {
+            // Snapshots remember ids that were handed out and deleted since, so they are never reused
+            festivalIdSeq.set(Math.max(nextFestivalId, festivals.maxId() + 1));
+            artistIdSeq.set(Math.max(nextArtistId, artists.maxId() + 1));
+            published = exactVersion ? version : Math.max(current.version() + 1, version);
+            publish(new StoreSnapshot(published, festivals, artists, indexes), StoreChange.Type.CATALOG_LOADED,
+                    Set.of(), Set.of(), null, CatalogStats::invalidate);
+            log.info("Loaded {} festivals and {} artists from {} in {} ms", festivals.size(), artists.size(), source,
+                    (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            writeLock.unlock();
+        }
+        commitBarrier.accept(published);
+    }
+
+    // "classpath:" and URL locations go through Spring's resource loading; anything else is a filesystem path
+    private static Resource resolveCatalog(String location) {
+        if (location.startsWith(ResourceLoader.CLASSPATH_URL_PREFIX) || location.contains("://") || location.startsWith("file:")) {
+            return new DefaultResourceLoader().getResource(location);
+        }
+        return new FileSystemResource(location);
+    }
+
+    // ===== Public API for controllers =====
+
+    // Current immutable view; use it when several reads must agree with each other
+    public StoreSnapshot snapshot() { return current; }
+
+    public long version() { return current.version(); }
+
+    public void writeSnapshot(OutputStream out) throws IOException {
+        StoreSnapshot snap = current;
+        CatalogWriter.write(snap, nextFestivalId(), nextArtistId(), out);
+    }
+
+    public List<Festival> getFestivals() {
+        return observe("getFestivals", () -> current.festivals().asList());
+    }
+
+    public Page<Festival> findFestivals(FestivalQuery query) {
+        return observe("findFestivals", () -> {
+            StoreSnapshot snap = current;
+            long[] candidates = festivalCandidates(snap, query);
+            return candidates == null
+                    ? scan(snap.festivals(), query.after(), query.limit(), query)
+                    : scan(snap.festivals(), candidates, query.after(), query.limit(), query);
+        });
+    }
+
+    public Optional<Festival> getFestival(Long id) {
+        return observe("getFestival", () -> Optional.ofNullable(current.festivals().get(id)));
+    }
+
+    public Lineup getLineup(Long festivalId) {
+        return observe("getLineup", () -> {
+            Festival f = current.festivals().get(festivalId);
+            return f != null ? f.getLineup() : Lineup.empty();
+        });
+    }
+
+    public List<Artist> getArtists() {
+        return observe("getArtists", () -> current.artists().asList());
+    }
+
+    public Page<Artist> findArtists(ArtistQuery query) {
+        return observe("findArtists", () -> findArtistsIn(current, query));
+    }
+
+    private static Page<Artist> findArtistsIn(StoreSnapshot snap, ArtistQuery query) {
+        long[] candidates = null;
+        if (query.name() != null) {
+            candidates = snap.indexes().artistsByName().idsFor(query.name());
+        } else if (query.genre() != null) {
+            candidates = snap.indexes().artistsByGenre().idsFor(StoreIndexes.fold(query.genre()));
+        }
+        return candidates == null
+                ? scan(snap.artists(), query.after(), query.limit(), query)
+                : scan(snap.artists(), candidates, query.after(), query.limit(), query);
+    }
+
+    // Festivals whose lineup contains the artist, in id order; empty if the artist does not exist
+    public Optional<List<Festival>> getFestivalsOfArtist(Long artistId) {
+        return observe("getFestivalsOfArtist", () -> festivalsOfArtistIn(current, artistId));
+    }
+
+    private static Optional<List<Festival>> festivalsOfArtistIn(StoreSnapshot snap, Long artistId) {
+        if (!snap.artists().contains(artistId)) return Optional.empty();
+        long[] ids = snap.indexes().festivalsByArtist().idsFor(artistId);
+        List<Festival> result = new ArrayList<>(ids.length);
+        for (long id : ids) result.add(snap.festivals().get(id));
+        return Optional.of(result);
+    }
+
+    public Optional<Artist> getArtist(Long id) {
+        return observe("getArtist", () -> Optional.ofNullable(current.artists().get(id)));
+    }
+
+    // Ranked full-text search over festival names and places and artist names and genres
+    public Page<SearchHit> search(SearchQuery query) {
+        return observe("search", () -> TextSearch.run(current, query));
+    }
+
+    // Aggregates are maintained as writes are published; only the first read after a catalog load walks it
+    public StoreStats stats(int topArtists) {
+        return observe("stats", () -> {
+            statsLock.lock();
+            try {
+                StoreSnapshot snap = current;
+                if (stats.stale()) stats.rebuild(snap);
+                return stats.view(snap, topArtists);
+            } finally {
+                statsLock.unlock();
             }
-            // Put into main artists map and update sequence
-            artists.clear();
-            artists.putAll(tempArtists);
-            if (!artists.isEmpty()) {
-                long maxId = artists.keySet().stream().mapToLong(Long::longValue).max().orElse(0L);
-                artistIdSeq.set(maxId + 1);
+        });
+    }
+
+    public Festival createFestival(Festival f) {
+        return write("createFestival", () -> commit(new Mutation.CreateFestival(festivalIdSeq.getAndIncrement(), detach(f)),
+                this::applyCreateFestival));
+    }
+
+    public Optional<Festival> updateFestival(Long id, Festival updated) {
+        if (id == null) return Optional.empty();
+        return write("updateFestival", () -> commit(new Mutation.UpdateFestival(id, detach(updated)), this::applyUpdateFestival));
+    }
+
+    public void deleteFestival(Long id) {
+        if (id == null) return;
+        write("deleteFestival", () -> commit(new Mutation.DeleteFestival(id), this::applyDeleteFestival));
+    }
+
+    public Optional<Festival> addPhoto(Long festivalId, String url) {
+        if (url == null) throw new IllegalArgumentException("Missing photo url");
+        if (festivalId == null) return Optional.empty();
+        return write("addPhoto", () -> commit(new Mutation.AddPhoto(festivalId, url), this::applyAddPhoto));
+    }
+
+    public Optional<Festival> removePhoto(Long festivalId, String url) {
+        if (festivalId == null) return Optional.empty();
+        return write("removePhoto", () -> commit(new Mutation.RemovePhoto(festivalId, url), this::applyRemovePhoto));
+    }
+
+    public Artist createArtist(Artist a) {
+        return write("createArtist", () -> commit(new Mutation.CreateArtist(artistIdSeq.getAndIncrement(), detach(a)),
+                this::applyCreateArtist));
+    }
+
+    public Optional<Artist> updateArtist(Long id, Artist updated) {
+        if (id == null) return Optional.empty();
+        return write("updateArtist", () -> commit(new Mutation.UpdateArtist(id, detach(updated)), this::applyUpdateArtist));
+    }
+
+    public void deleteArtist(Long id) {
+        if (id == null) return;
+        write("deleteArtist", () -> commit(new Mutation.DeleteArtist(id), this::applyDeleteArtist));
+    }
+
+    public Optional<Festival> addArtistToFestival(Long festivalId, Long artistId) {
+        if (festivalId == null || artistId == null) return Optional.empty();
+        return write("addArtistToFestival", () -> commit(new Mutation.AddArtistToFestival(festivalId, artistId),
+                this::applyAddArtistToFestival));
+    }
+
+    public Optional<Festival> removeArtistFromFestival(Long festivalId, Long artistId) {
+        if (festivalId == null || artistId == null) return Optional.empty();
+        return write("removeArtistFromFestival", () -> commit(new Mutation.RemoveArtistFromFestival(festivalId, artistId),
+                this::applyRemoveArtistFromFestival));
+    }
+
+    // Empty when the festival or one of the artists does not exist; the lineup is then left alone.
+    // Lineups are sets ordered by artist id, so the order of the given ids does not matter
+    public Optional<Festival> replaceLineup(Long festivalId, List<Long> artistIds) {
+        if (festivalId == null || artistIds == null || artistIds.stream().anyMatch(Objects::isNull)) return Optional.empty();
+        return write("replaceLineup", () -> commit(new Mutation.ReplaceLineup(festivalId, List.copyOf(artistIds)),
+                this::applyReplaceLineup));
+    }
+
+    /**
+     * Applies the mutations in order as a single write: one lock acquisition, one published snapshot, one
+     * {@link StoreChange} and one log record for the whole batch. Ids of created festivals and artists are
+     * allocated here (ids in the request are ignored). Items that cannot be applied, such as updates of unknown
+     * ids, are reported per item and do not affect the others.
+     */
+    public BulkResult bulk(List<Mutation> mutations) {
+        return write("bulk", () -> {
+            BulkResult.Item[] items = new BulkResult.Item[mutations.size()];
+            List<Mutation> batch = new ArrayList<>(mutations.size());
+            for (int i = 0; i < items.length; i++) {
+                String error = Mutation.validate(mutations.get(i));
+                if (error != null) items[i] = BulkResult.Item.invalid(error);
+                else batch.add(normalize(mutations.get(i)));
+            }
+            Iterator<BulkResult.Item> applied = commit(new Mutation.Batch(List.copyOf(batch)), this::applyBatch).iterator();
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] == null) items[i] = applied.next();
             }
+            return new BulkResult(current.version(), List.of(items));
+        });
+    }
+
+    // Replays a mutation whose ids were allocated elsewhere (write-ahead log, replication)
+    public void apply(Mutation mutation) {
+        observe("apply", () -> writeLocked(() -> commit(mutation, this::applyTo)));
+    }
+
+    public void addListener(StoreListener listener) { listeners.add(listener); }
+
+    public void removeListener(StoreListener listener) { listeners.remove(listener); }
+
+    // Invoked with the store version after every write, once the write lock is released; a durable log uses it
+    // to hold the caller until its change is on disk without blocking other writers
+    public void setCommitBarrier(LongConsumer barrier) { this.commitBarrier = barrier; }
+
+    // Rejects every write but apply(), so a follower can never allocate ids of its own
+    void setReplica(boolean replica) { this.replica = replica; }
+
+    // Id sequences, for snapshots that must never let a deleted id be handed out again
+    public long nextFestivalId() { return festivalIdSeq.get(); }
+
+    public long nextArtistId() { return artistIdSeq.get(); }
+
+    int dictionarySize() { return dictionary.size(); }
 
-            // Now build festivals, ensuring their lineup references the shared artist instances
-            festivals.clear();
-            for (FestivalDto fDto : root.festivals) {
-                Festival f = new Festival();
-                Long fid = fDto.id != null ? fDto.id : festivalIdSeq.getAndIncrement();
-                f.setId(fid);
-                f.setName(fDto.name);
-                f.setPlace(fDto.place);
-                f.setDate(fDto.date);
-                f.setPrice(fDto.price);
-                f.setPhotos(fDto.photos != null ? new ArrayList<>(fDto.photos) : new ArrayList<>());
-                Set<Artist> lineup = new LinkedHashSet<>();
-                if (fDto.lineup != null) {
-                    for (Artist a : fDto.lineup) {
-                        if (a.getId() != null && artists.containsKey(a.getId())) {
-                            lineup.add(artists.get(a.getId()));
-                        } else {
-                            // If no ID, try to match by name
-                            Optional<Artist> byName = artists.values().stream()
-                                    .filter(x -> Objects.equals(x.getName(), a.getName()))
-                                    .findFirst();
-                            Artist ref = byName.orElseGet(() -> {
-                                long newId = artistIdSeq.getAndIncrement();
-                                Artist na = new Artist(a.getName(), a.getPhotoUrl(), a.getGenre());
-                                na.setId(newId);
-                                artists.put(newId, na);
-                                return na;
-                            });
-                            lineup.add(ref);
-                        }
+    // ===== Queries =====
+
+    // Picks the most selective index for the query's filters, or null when a plain keyset scan is cheaper
+    private static long[] festivalCandidates(StoreSnapshot snap, FestivalQuery q) {
+        StoreIndexes idx = snap.indexes();
+        int best = snap.festivals().size();
+        Supplier<long[]> plan = null;
+        if (q.place() != null) {
+            String key = StoreIndexes.fold(q.place());
+            int count = idx.festivalsByPlace().countFor(key);
+            if (count < best) {
+                best = count;
+                plan = () -> idx.festivalsByPlace().idsFor(key);
+            }
+        }
+        if (q.from() != null || q.to() != null) {
+            int count = idx.festivalsByDate().countBetween(q.from(), q.to());
+            if (count < best) {
+                best = count;
+                plan = () -> idx.festivalsByDate().idsBetween(q.from(), q.to());
+            }
+        }
+        if (q.minPrice() != null || q.maxPrice() != null) {
+            BigDecimal min = StoreIndexes.priceKey(q.minPrice());
+            BigDecimal max = StoreIndexes.priceKey(q.maxPrice());
+            int count = idx.festivalsByPrice().countBetween(min, max);
+            if (count < best) {
+                best = count;
+                plan = () -> idx.festivalsByPrice().idsBetween(min, max);
+            }
+        }
+        if (q.genre() != null) {
+            long[] artistIds = idx.artistsByGenre().idsFor(StoreIndexes.fold(q.genre()));
+            int count = 0;
+            for (long artistId : artistIds) count += idx.festivalsByArtist().countFor(artistId);
+            if (count < best) {
+                int total = count;
+                plan = () -> {
+                    // Filled once and then deduplicated, as festivals with several such artists come up repeatedly
+                    long[] ids = new long[total];
+                    int n = 0;
+                    for (long artistId : artistIds) {
+                        long[] more = idx.festivalsByArtist().idsFor(artistId);
+                        System.arraycopy(more, 0, ids, n, more.length);
+                        n += more.length;
+                    }
+                    Arrays.sort(ids);
+                    int distinct = 0;
+                    for (int i = 0; i < ids.length; i++) {
+                        if (i == 0 || ids[i] != ids[i - 1]) ids[distinct++] = ids[i];
                     }
-                }
-                f.setLineup(lineup);
-                festivals.put(fid, f);
+                    return Arrays.copyOf(ids, distinct);
+                };
+            }
+        }
+        return plan == null ? null : plan.get();
+    }
+
+    // Index-driven keyset scan: candidates come from a secondary index in any order (duplicates allowed),
+    // are put in id order and then paged and re-checked against the full filter
+    private static <T> Page<T> scan(EntityTable<T> table, long[] candidates, Long after, int limit, Predicate<? super T> filter) {
+        long[] ids = Arrays.stream(candidates).sorted().distinct().toArray();
+        int start = 0;
+        if (after != null) {
+            int idx = Arrays.binarySearch(ids, after);
+            start = idx >= 0 ? idx + 1 : -idx - 1;
+        }
+        List<T> items = new ArrayList<>(Math.min(limit, ids.length - start));
+        for (int i = start; i < ids.length; i++) {
+            T row = table.get(ids[i]);
+            if (row == null || !filter.test(row)) continue;
+            items.add(row);
+            if (items.size() == limit) {
+                return new Page<>(items, i + 1 < ids.length ? ids[i] : null);
             }
-            if (!festivals.isEmpty()) {
-                long maxFid = festivals.keySet().stream().mapToLong(Long::longValue).max().orElse(0L);
-                festivalIdSeq.set(maxFid + 1);
+        }
+        return new Page<>(items, null);
+    }
+
+    // Keyset scan: jumps straight to the cursor and stops as soon as the page is full,
+    // so the cost depends on the page size (and filter selectivity), not on the catalog size
+    private static <T> Page<T> scan(EntityTable<T> table, Long after, int limit, Predicate<? super T> filter) {
+        List<T> rows = table.asList();
+        List<T> items = new ArrayList<>(Math.min(limit, rows.size()));
+        for (int i = table.indexAfter(after); i < rows.size(); i++) {
+            T row = rows.get(i);
+            if (!filter.test(row)) continue;
+            items.add(row);
+            if (items.size() == limit) {
+                return new Page<>(items, i + 1 < rows.size() ? table.idAt(i) : null);
             }
         }
+        return new Page<>(items, null);
     }
 
-    // ===== Public API for controllers =====
-    public List<Festival> getFestivals() { return new ArrayList<>(festivals.values()); }
+    // ===== Mutations =====
+
+    // Each public operation is one observation: a festival.store timer tagged with the operation and, when
+    // tracing is on, a span, so a slow request can be split into store time and serialization time
+    private <T> T observe(String operation, Supplier<T> body) {
+        return observation(operation).observe(body);
+    }
 
-    public Optional<Festival> getFestival(Long id) { return Optional.ofNullable(festivals.get(id)); }
+    private <T> T observeChecked(String operation, Observation.CheckedCallable<T, IOException> body) throws IOException {
+        return observation(operation).observeChecked(body);
+    }
 
-    public Festival createFestival(Festival f) {
-        long id = festivalIdSeq.getAndIncrement();
-        f.setId(id);
-        // Normalize nulls
-        if (f.getPhotos() == null) f.setPhotos(new ArrayList<>());
-        if (f.getLineup() == null) f.setLineup(new LinkedHashSet<>());
-        festivals.put(id, f);
-        return f;
+    private Observation observation(String operation) {
+        return Observation.createNotStarted("festival.store", observations)
+                .contextualName("store " + operation)
+                .lowCardinalityKeyValue("operation", operation);
     }
 
-    public Optional<Festival> updateFestival(Long id, Festival updated) {
-        Festival existing = festivals.get(id);
-        if (existing == null) return Optional.empty();
-        existing.setName(updated.getName());
-        existing.setPlace(updated.getPlace());
-        existing.setDate(updated.getDate());
-        existing.setPrice(updated.getPrice());
-        existing.setPhotos(updated.getPhotos() != null ? new ArrayList<>(updated.getPhotos()) : new ArrayList<>());
-        // Keep lineup unchanged here; dedicated endpoints may modify it
-        return Optional.of(existing);
+    private <R> R write(String operation, Supplier<R> body) {
+        if (replica) throw new IllegalStateException("This store is a read-only replica; " + operation + " must go to the leader");
+        return observe(operation, () -> writeLocked(body));
     }
 
-    public void deleteFestival(Long id) { festivals.remove(id); }
+    // Takes the write lock for the body, then waits for durability (if any) outside of it
+    private <R> R writeLocked(Supplier<R> body) {
+        R result;
+        long version;
+        writeLock.lock();
+        try {
+            result = body.get();
+            version = current.version();
+        } finally {
+            writeLock.unlock();
+        }
+        commitBarrier.accept(version);
+        return result;
+    }
 
-    public Set<Artist> getLineup(Long festivalId) {
-        return getFestival(festivalId).map(Festival::getLineup).orElseGet(LinkedHashSet::new);
+    // Caller must hold writeLock. Runs the mutation against a draft of the current snapshot and publishes
+    // the draft, if anything changed, as the next version
+    private <M extends Mutation, R> R commit(M mutation, BiFunction<Draft, M, R> body) {
+        Draft draft = new Draft(current);
+        R result = body.apply(draft, mutation);
+        publish(draft, typeOf(mutation), mutation);
+        return result;
     }
 
-    public Optional<Festival> addPhoto(Long festivalId, String url) {
-        Festival f = festivals.get(festivalId);
-        if (f == null) return Optional.empty();
-        List<String> photos = new ArrayList<>(Optional.ofNullable(f.getPhotos()).orElseGet(ArrayList::new));
-        photos.add(url);
-        f.setPhotos(photos);
-        return Optional.of(f);
+    private Object applyTo(Draft d, Mutation mutation) {
+        if (mutation instanceof Mutation.CreateFestival m) return applyCreateFestival(d, m);
+        if (mutation instanceof Mutation.UpdateFestival m) return applyUpdateFestival(d, m);
+        if (mutation instanceof Mutation.DeleteFestival m) return applyDeleteFestival(d, m);
+        if (mutation instanceof Mutation.AddPhoto m) return applyAddPhoto(d, m);
+        if (mutation instanceof Mutation.RemovePhoto m) return applyRemovePhoto(d, m);
+        if (mutation instanceof Mutation.AddArtistToFestival m) return applyAddArtistToFestival(d, m);
+        if (mutation instanceof Mutation.RemoveArtistFromFestival m) return applyRemoveArtistFromFestival(d, m);
+        if (mutation instanceof Mutation.ReplaceLineup m) return applyReplaceLineup(d, m);
+        if (mutation instanceof Mutation.CreateArtist m) return applyCreateArtist(d, m);
+        if (mutation instanceof Mutation.UpdateArtist m) return applyUpdateArtist(d, m);
+        if (mutation instanceof Mutation.DeleteArtist m) return applyDeleteArtist(d, m);
+        if (mutation instanceof Mutation.Batch m) return applyBatch(d, m);
+        throw new IllegalArgumentException("Unsupported mutation " + mutation);
     }
 
-    public Optional<Festival> removePhoto(Long festivalId, String url) {
-        Festival f = festivals.get(festivalId);
-        if (f == null) return Optional.empty();
-        if (f.getPhotos() != null) {
-            f.getPhotos().removeIf(p -> Objects.equals(p, url));
+    private static StoreChange.Type typeOf(Mutation mutation) {
+        if (mutation instanceof Mutation.CreateFestival) return StoreChange.Type.FESTIVAL_CREATED;
+        if (mutation instanceof Mutation.UpdateFestival) return StoreChange.Type.FESTIVAL_UPDATED;
+        if (mutation instanceof Mutation.DeleteFestival) return StoreChange.Type.FESTIVAL_DELETED;
+        if (mutation instanceof Mutation.AddPhoto) return StoreChange.Type.PHOTO_ADDED;
+        if (mutation instanceof Mutation.RemovePhoto) return StoreChange.Type.PHOTO_REMOVED;
+        if (mutation instanceof Mutation.AddArtistToFestival) return StoreChange.Type.LINEUP_ARTIST_ADDED;
+        if (mutation instanceof Mutation.RemoveArtistFromFestival) return StoreChange.Type.LINEUP_ARTIST_REMOVED;
+        if (mutation instanceof Mutation.ReplaceLineup) return StoreChange.Type.LINEUP_REPLACED;
+        if (mutation instanceof Mutation.CreateArtist) return StoreChange.Type.ARTIST_CREATED;
+        if (mutation instanceof Mutation.UpdateArtist) return StoreChange.Type.ARTIST_UPDATED;
+        if (mutation instanceof Mutation.DeleteArtist) return StoreChange.Type.ARTIST_DELETED;
+        return StoreChange.Type.BATCH_APPLIED;
+    }
+
+    private Festival applyCreateFestival(Draft d, Mutation.CreateFestival m) {
+        // Replayed ids must never be handed out again
+        festivalIdSeq.accumulateAndGet(m.id() + 1, Math::max);
+        Festival created = encode(copyOf(m.festival()));
+        created.setId(m.id());
+        created.setLineup(resolve(d, m.festival().getLineup()));
+        d.putFestival(created);
+        return created;
+    }
+
+    private Optional<Festival> applyUpdateFestival(Draft d, Mutation.UpdateFestival m) {
+        return mutateFestival(d, m.id(), existing -> {
+            Festival f = copyOf(existing);
+            f.setName(m.festival().getName());
+            f.setPlace(m.festival().getPlace());
+            f.setDate(m.festival().getDate());
+            f.setPrice(m.festival().getPrice());
+            f.setPhotos(m.festival().getPhotos());
+            // Keep lineup unchanged here; dedicated endpoints may modify it
+            return encode(f);
+        });
+    }
+
+    private boolean applyDeleteFestival(Draft d, Mutation.DeleteFestival m) {
+        if (!d.festivals.contains(m.id())) return false;
+        d.festivals = d.festivals.without(m.id());
+        d.festivalIds.add(m.id());
+        return true;
+    }
+
+    private Optional<Festival> applyAddPhoto(Draft d, Mutation.AddPhoto m) {
+        return mutateFestival(d, m.festivalId(), existing -> {
+            Festival f = copyOf(existing);
+            List<String> photos = new ArrayList<>(existing.getPhotos());
+            photos.add(m.url());
+            f.setPhotos(Photos.of(photos, dictionary::canonical));
+            return f;
+        });
+    }
+
+    private Optional<Festival> applyRemovePhoto(Draft d, Mutation.RemovePhoto m) {
+        return mutateFestival(d, m.festivalId(), existing -> {
+            List<String> photos = new ArrayList<>(existing.getPhotos());
+            if (!photos.removeIf(p -> Objects.equals(p, m.url()))) return existing;
+            Festival f = copyOf(existing);
+            f.setPhotos(Photos.of(photos, dictionary::canonical));
+            return f;
+        });
+    }
+
+    private Optional<Festival> applyAddArtistToFestival(Draft d, Mutation.AddArtistToFestival m) {
+        return mutateFestival(d, m.festivalId(), existing -> {
+            Artist a = d.artists.get(m.artistId());
+            if (a == null) return null;
+            if (existing.getLineup().containsId(m.artistId())) return existing;
+            Festival f = copyOf(existing);
+            f.setLineup(existing.getLineup().with(a));
+            return f;
+        });
+    }
+
+    private Optional<Festival> applyRemoveArtistFromFestival(Draft d, Mutation.RemoveArtistFromFestival m) {
+        return mutateFestival(d, m.festivalId(), existing -> {
+            if (!existing.getLineup().containsId(m.artistId())) return existing;
+            Festival f = copyOf(existing);
+            f.setLineup(existing.getLineup().without(m.artistId()));
+            return f;
+        });
+    }
+
+    private Optional<Festival> applyReplaceLineup(Draft d, Mutation.ReplaceLineup m) {
+        return mutateFestival(d, m.festivalId(), existing -> {
+            List<Artist> artists = new ArrayList<>(m.artistIds().size());
+            for (Long artistId : m.artistIds()) {
+                Artist a = d.artists.get(artistId);
+                if (a == null) return null;
+                artists.add(a);
+            }
+            Lineup lineup = Lineup.of(artists);
+            if (lineup.sameIds(existing.getLineup())) return existing;
+            Festival f = copyOf(existing);
+            f.setLineup(lineup);
+            return f;
+        });
+    }
+
+    private Artist applyCreateArtist(Draft d, Mutation.CreateArtist m) {
+        artistIdSeq.accumulateAndGet(m.id() + 1, Math::max);
+        Artist created = encode(detach(m.artist()));
+        created.setId(m.id());
+        d.artists = d.artists.with(m.id(), created);
+        d.artistIds.add(m.id());
+        return created;
+    }
+
+    private Optional<Artist> applyUpdateArtist(Draft d, Mutation.UpdateArtist m) {
+        if (!d.artists.contains(m.id())) return Optional.empty();
+        Artist replacement = encode(detach(m.artist()));
+        replacement.setId(m.id());
+        // Lineups resolve their ids to artist instances, so point them at the new one in the same snapshot
+        rewriteLineups(d, m.id(), replacement);
+        d.artists = d.artists.with(m.id(), replacement);
+        d.artistIds.add(m.id());
+        return Optional.of(replacement);
+    }
+
+    private boolean applyDeleteArtist(Draft d, Mutation.DeleteArtist m) {
+        if (!d.artists.contains(m.id())) return false;
+        // Artist and every lineup entry disappear in one snapshot, so readers never see a half-done cascade
+        rewriteLineups(d, m.id(), null);
+        d.artists = d.artists.without(m.id());
+        d.artistIds.add(m.id());
+        return true;
+    }
+
+    private List<BulkResult.Item> applyBatch(Draft d, Mutation.Batch batch) {
+        List<BulkResult.Item> items = new ArrayList<>(batch.mutations().size());
+        for (Mutation m : batch.mutations()) {
+            Object result = applyTo(d, m);
+            if (m instanceof Mutation.CreateFestival || m instanceof Mutation.CreateArtist) {
+                items.add(BulkResult.Item.of(BulkResult.Status.CREATED, result));
+            } else if (result instanceof Boolean deleted) {
+                items.add(BulkResult.Item.of(deleted ? BulkResult.Status.DELETED : BulkResult.Status.NOT_FOUND, null));
+            } else if (result instanceof Optional<?> updated && updated.isPresent()) {
+                items.add(BulkResult.Item.of(BulkResult.Status.UPDATED, updated.get()));
+            } else {
+                items.add(BulkResult.Item.of(BulkResult.Status.NOT_FOUND, null));
+            }
         }
-        return Optional.of(f);
+        return items;
     }
 
-    public List<Artist> getArtists() { return new ArrayList<>(artists.values()); }
+    // Caller must hold writeLock: allocates ids for creates and detaches request payloads
+    private Mutation normalize(Mutation m) {
+        if (m instanceof Mutation.CreateFestival c) return new Mutation.CreateFestival(festivalIdSeq.getAndIncrement(), detach(c.festival()));
+        if (m instanceof Mutation.UpdateFestival u) return new Mutation.UpdateFestival(u.id(), detach(u.festival()));
+        if (m instanceof Mutation.CreateArtist c) return new Mutation.CreateArtist(artistIdSeq.getAndIncrement(), detach(c.artist()));
+        if (m instanceof Mutation.UpdateArtist u) return new Mutation.UpdateArtist(u.id(), detach(u.artist()));
+        if (m instanceof Mutation.ReplaceLineup r) return new Mutation.ReplaceLineup(r.festivalId(), List.copyOf(r.artistIds()));
+        return m;
+    }
 
-    public Optional<Artist> getArtist(Long id) { return Optional.ofNullable(artists.get(id)); }
+    // ===== Snapshot publishing =====
 
-    public Artist createArtist(Artist a) {
-        long id = artistIdSeq.getAndIncrement();
-        a.setId(id);
-        artists.put(id, a);
-        return a;
+    /**
+     * Working copy of the tables for one write. Mutations replace entities in it and record which ids they
+     * touched; the draft is then published as one snapshot, so a batch costs one index diff and one version.
+     */
+    private static final class Draft {
+        private final StoreSnapshot base;
+        private EntityTable<Festival> festivals;
+        private EntityTable<Artist> artists;
+        private final Set<Long> festivalIds = new LinkedHashSet<>();
+        private final Set<Long> artistIds = new LinkedHashSet<>();
+
+        Draft(StoreSnapshot base) {
+            this.base = base;
+            this.festivals = base.festivals();
+            this.artists = base.artists();
+        }
+
+        void putFestival(Festival f) {
+            festivals = festivals.with(f.getId(), f);
+            festivalIds.add(f.getId());
+        }
+
+        boolean changed() { return !festivalIds.isEmpty() || !artistIds.isEmpty(); }
     }
 
-    public Optional<Artist> updateArtist(Long id, Artist updated) {
-        Artist existing = artists.get(id);
+    // Published festivals are never modified: every write builds a copy and swaps it into a new snapshot,
+    // so readers (and Jackson) only ever see complete, immutable-in-practice instances.
+    private static Optional<Festival> mutateFestival(Draft d, long id, UnaryOperator<Festival> change) {
+        Festival existing = d.festivals.get(id);
         if (existing == null) return Optional.empty();
-        existing.setName(updated.getName());
-        existing.setGenre(updated.getGenre());
-        existing.setPhotoUrl(updated.getPhotoUrl());
-        return Optional.of(existing);
+        Festival replacement = change.apply(existing);
+        if (replacement == null) return Optional.empty();
+        if (replacement != existing) d.putFestival(replacement);
+        return Optional.of(replacement);
     }
 
-    public void deleteArtist(Long id) {
-        // Remove from festivals' lineups first
-        for (Festival f : festivals.values()) {
-            if (f.getLineup() != null) {
-                f.getLineup().removeIf(a -> Objects.equals(a.getId(), id));
+    private void publish(Draft d, StoreChange.Type type, Mutation mutation) {
+        if (!d.changed()) return;
+        StoreSnapshot prev = d.base;
+        List<Festival> oldFestivals = present(prev.festivals(), d.festivalIds);
+        List<Festival> newFestivals = present(d.festivals, d.festivalIds);
+        List<Artist> oldArtists = present(prev.artists(), d.artistIds);
+        List<Artist> newArtists = present(d.artists, d.artistIds);
+        StoreIndexes indexes = prev.indexes().update(oldFestivals, newFestivals, oldArtists, newArtists);
+        publish(new StoreSnapshot(prev.version() + 1, d.festivals, d.artists, indexes), type, d.festivalIds, d.artistIds,
+                mutation, stats -> stats.update(oldFestivals, newFestivals, oldArtists, newArtists));
+    }
+
+    // Caller must hold writeLock, which also keeps listener notifications in version order
+    private void publish(StoreSnapshot next, StoreChange.Type type, Set<Long> festivalIds, Set<Long> artistIds,
+                         Mutation mutation, Consumer<CatalogStats> statsChange) {
+        statsLock.lock();
+        try {
+            statsChange.accept(stats);
+            current = next;
+        } finally {
+            statsLock.unlock();
+        }
+        StoreChange change = new StoreChange(next.version(), type, Set.copyOf(festivalIds), Set.copyOf(artistIds), mutation);
+        for (StoreListener listener : listeners) {
+            try {
+                listener.onChange(change, next);
+            } catch (RuntimeException e) {
+                // The snapshot is already published; a broken listener must not fail the write
+                log.warn("Store listener failed for change {}", change, e);
             }
         }
-        artists.remove(id);
     }
 
-    public Optional<Festival> addArtistToFestival(Long festivalId, Long artistId) {
-        Festival f = festivals.get(festivalId);
-        Artist a = artists.get(artistId);
-        if (f == null || a == null) return Optional.empty();
-        if (f.getLineup() == null) f.setLineup(new LinkedHashSet<>());
-        f.getLineup().add(a);
-        return Optional.of(f);
+    private static <T> List<T> present(EntityTable<T> table, Set<Long> ids) {
+        List<T> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            T entity = table.get(id);
+            if (entity != null) result.add(entity);
+        }
+        return result;
     }
 
-    public Optional<Festival> removeArtistFromFestival(Long festivalId, Long artistId) {
-        Festival f = festivals.get(festivalId);
-        if (f == null) return Optional.empty();
-        if (f.getLineup() != null) {
-            f.getLineup().removeIf(a -> Objects.equals(a.getId(), artistId));
+    // Only visits the festivals the reverse lineup index lists for the artist, plus those already rewritten in
+    // this draft (the index is that of the base snapshot)
+    private static void rewriteLineups(Draft d, Long artistId, Artist replacement) {
+        long[] indexed = d.base.indexes().festivalsByArtist().idsFor(artistId);
+        long[] festivalIds = d.festivalIds.isEmpty() ? indexed : LongStream.concat(Arrays.stream(indexed),
+                d.festivalIds.stream().mapToLong(Long::longValue)).distinct().toArray();
+        Set<Long> touched = new LinkedHashSet<>();
+        d.festivals = d.festivals.replace(festivalIds, existing -> {
+            if (!existing.getLineup().containsId(artistId)) return existing;
+            touched.add(existing.getId());
+            Festival f = copyOf(existing);
+            f.setLineup(replacement != null ? existing.getLineup().with(replacement) : existing.getLineup().without(artistId));
+            return f;
+        });
+        d.festivalIds.addAll(touched);
+    }
+
+    private static <T> EntityTable<T> toTable(Map<Long, T> entities) {
+        long[] ids = new long[entities.size()];
+        Object[] values = new Object[entities.size()];
+        int i = 0;
+        for (Map.Entry<Long, T> e : entities.entrySet()) {
+            ids[i] = e.getKey();
+            values[i++] = e.getValue();
         }
-        return Optional.of(f);
+        return EntityTable.of(ids, values);
     }
 
-    // ===== DTOs for JSON binding =====
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    static class RootDto {
-        public List<FestivalDto> festivals;
+    // Normalizes nulls and detaches from the caller's (mutable) collections; the logged payload and the
+    // published festival then share their encoded values
+    private Festival detach(Festival source) {
+        Festival f = new Festival(source.getName(), source.getPlace(), source.getDate(), source.getPrice());
+        f.setPhotos(source.getPhotos());
+        f.setLineup(source.getLineup());
+        return encode(f);
     }
 
-    @JsonIgnoreProperties(ignoreUnknown = true)
-    static class FestivalDto {
-        public Long id;
-        public String name;
-        public String place;
-        public LocalDate date;
-        public BigDecimal price;
-        public List<String> photos;
-        public List<Artist> lineup;
+    // Lineups in request payloads and logged mutations name artists by id; they are resolved against the draft
+    // and ids of unknown artists are dropped
+    private static Lineup resolve(Draft d, Lineup requested) {
+        List<Artist> artists = new ArrayList<>(requested.size());
+        for (int i = 0; i < requested.size(); i++) {
+            Artist a = d.artists.get(requested.idAt(i));
+            if (a != null) artists.add(a);
+        }
+        return Lineup.of(artists);
+    }
+
+    private static Artist detach(Artist source) {
+        return new Artist(source.getName(), source.getPhotoUrl(), source.getGenre());
+    }
+
+    // Shares repeated values through the dictionary; applied to every entity a mutation publishes, including
+    // replayed ones, which were not detached by this store
+    private Festival encode(Festival f) {
+        f.setPlace(dictionary.canonical(f.getPlace()));
+        f.setPhotos(Photos.of(f.getPhotos(), dictionary::canonical));
+        return f;
+    }
+
+    private Artist encode(Artist a) {
+        a.setGenre(dictionary.canonical(a.getGenre()));
+        return a;
+    }
+
+    private static Festival copyOf(Festival source) {
+        Festival f = new Festival(source.getName(), source.getPlace(), source.getDate(), source.getPrice());
+        f.setId(source.getId());
+        // Published collections are unmodifiable, so a copy keeps sharing them until they are replaced
+        f.setPhotos(source.getPhotos());
+        f.setLineup(source.getLineup());
+        return f;
     }
 }
@@ -0,0 +1,33 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+// Keyset page request plus optional filters; null filters match everything. Date and price bounds are inclusive.
+public record FestivalQuery(Long after, int limit, String place, LocalDate from, LocalDate to,
+                            BigDecimal minPrice, BigDecimal maxPrice, String genre) implements Predicate<Festival> {
+
+    public FestivalQuery {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+    }
+
+    @Override
+    public boolean test(Festival f) {
+        if (place != null && !place.equalsIgnoreCase(f.getPlace())) return false;
+        if (from != null && (f.getDate() == null || f.getDate().isBefore(from))) return false;
+        if (to != null && (f.getDate() == null || f.getDate().isAfter(to))) return false;
+        if (minPrice != null && (f.getPrice() == null || f.getPrice().compareTo(minPrice) < 0)) return false;
+        if (maxPrice != null && (f.getPrice() == null || f.getPrice().compareTo(maxPrice) > 0)) return false;
+        if (genre != null) {
+            for (Artist a : f.getLineup()) {
+                if (genre.equalsIgnoreCase(a.getGenre())) return true;
+            }
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+package be.ap.festival.service.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Immutable secondary index: sorted (key, id) entries, ordered by key and then id. Equality and range lookups
+ * are binary searches, and the ids of one key come back in id order. Like {@link EntityTable}, entries are kept
+ * in chunks: an update rebuilds only the chunks it touches and shares all others with the previous index.
+ */
+public final class KeyIndex<K extends Comparable<? super K>> {
+
+    private static final int CHUNK = EntityTable.CHUNK;
+    private static final int MAX_CHUNK = EntityTable.MAX_CHUNK;
+
+    private static final KeyIndex<?> EMPTY = new KeyIndex<>(new Chunk[0]);
+
+    private final Chunk[] chunks;
+    // Index of the first entry of every chunk
+    private final int[] starts;
+    private final int size;
+
+    private KeyIndex(Chunk[] chunks) {
+        this.chunks = chunks;
+        this.starts = new int[chunks.length];
+        int entries = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            starts[c] = entries;
+            entries += chunks[c].ids.length;
+        }
+        this.size = entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<? super K>> KeyIndex<K> empty() {
+        return (KeyIndex<K>) EMPTY;
+    }
+
+    public static <K extends Comparable<? super K>> KeyIndex<K> of(List<Entry<K>> entries) {
+        return KeyIndex.<K>empty().update(List.of(), entries);
+    }
+
+    public int size() { return size; }
+
+    // Smallest and largest key, or null when the index is empty
+    public K firstKey() { return size == 0 ? null : keyAt(0); }
+
+    public K lastKey() { return size == 0 ? null : keyAt(size - 1); }
+
+    // Ids whose key equals the given one, in id order
+    public long[] idsFor(K key) {
+        if (key == null) return new long[0];
+        return idsIn(lowerBound(key, Long.MIN_VALUE), upperBound(key));
+    }
+
+    public int countFor(K key) {
+        return key == null ? 0 : upperBound(key) - lowerBound(key, Long.MIN_VALUE);
+    }
+
+    // Ids whose key lies in [from, to]; a null bound is open. Ordered by key, not by id.
+    public long[] idsBetween(K from, K to) {
+        int lo = from == null ? 0 : lowerBound(from, Long.MIN_VALUE);
+        int hi = to == null ? size : upperBound(to);
+        return idsIn(lo, hi);
+    }
+
+    public int countBetween(K from, K to) {
+        int lo = from == null ? 0 : lowerBound(from, Long.MIN_VALUE);
+        int hi = to == null ? size : upperBound(to);
+        return Math.max(0, hi - lo);
+    }
+
+    // Visits the entries whose key lies in [from, to] in key order, for lookups that need the matched keys
+    @SuppressWarnings("unchecked")
+    public void forEachBetween(K from, K to, ObjLongConsumer<? super K> action) {
+        int lo = from == null ? 0 : lowerBound(from, Long.MIN_VALUE);
+        int hi = to == null ? size : upperBound(to);
+        if (lo >= hi) return;
+        for (int c = chunkAt(lo), i = lo - starts[c]; lo < hi; lo++, i++) {
+            if (i == chunks[c].ids.length) {
+                c++;
+                i = 0;
+            }
+            action.accept((K) chunks[c].keys[i], chunks[c].ids[i]);
+        }
+    }
+
+    /**
+     * Returns a new index with the given entries removed and added. Both lists may be in any order;
+     * entries with a null key are ignored, since null values are never indexed.
+     */
+    public KeyIndex<K> update(List<Entry<K>> removed, List<Entry<K>> added) {
+        if (removed.isEmpty() && added.isEmpty()) return this;
+        List<Entry<K>> toRemove = sorted(removed);
+        List<Entry<K>> toAdd = sorted(added);
+        if (chunks.length == 0) {
+            if (toAdd.isEmpty()) return this;
+            return new KeyIndex<>(rebuilt(new Chunk(new Object[0], new long[0]), List.of(), toAdd).toArray(Chunk[]::new));
+        }
+
+        // Both lists are sorted, so the changes for one chunk are a contiguous run of each; only those chunks
+        // are merged again, the others are carried over as they are
+        List<Chunk> result = new ArrayList<>(chunks.length + 1);
+        boolean changed = false;
+        int r = 0, a = 0;
+        for (int c = 0; c < chunks.length; c++) {
+            int rEnd = c == chunks.length - 1 ? toRemove.size() : end(toRemove, r, chunks[c]);
+            int aEnd = c == chunks.length - 1 ? toAdd.size() : end(toAdd, a, chunks[c]);
+            if (r == rEnd && a == aEnd) {
+                result.add(chunks[c]);
+            } else {
+                List<Chunk> merged = rebuilt(chunks[c], toRemove.subList(r, rEnd), toAdd.subList(a, aEnd));
+                changed |= merged.size() != 1 || merged.get(0) != chunks[c];
+                result.addAll(merged);
+            }
+            r = rEnd;
+            a = aEnd;
+        }
+        return changed ? new KeyIndex<>(result.toArray(Chunk[]::new)) : this;
+    }
+
+    // End of the run of changes, starting at from, that sort at or before the last entry of the chunk
+    @SuppressWarnings("unchecked")
+    private int end(List<Entry<K>> changes, int from, Chunk chunk) {
+        int last = chunk.ids.length - 1;
+        int lo = from, hi = changes.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(changes.get(mid), (K) chunk.keys[last], chunk.ids[last]) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // The chunk with the changes applied: itself if none had an effect, otherwise zero or more new chunks
+    @SuppressWarnings("unchecked")
+    private List<Chunk> rebuilt(Chunk chunk, List<Entry<K>> toRemove, List<Entry<K>> toAdd) {
+        Object[] keys = chunk.keys;
+        long[] ids = chunk.ids;
+        int n = ids.length;
+        Object[] newKeys = new Object[n + toAdd.size()];
+        long[] newIds = new long[n + toAdd.size()];
+        int i = 0, r = 0, a = 0, dst = 0;
+        boolean changed = false;
+        while (i < n || a < toAdd.size()) {
+            int c = a == toAdd.size() ? 1 : i == n ? -1 : compare(toAdd.get(a), (K) keys[i], ids[i]);
+            if (c < 0) {
+                Entry<K> e = toAdd.get(a++);
+                if (dst > 0 && compare(e, (K) newKeys[dst - 1], newIds[dst - 1]) == 0) continue;
+                // A key equal to a neighbour's shares its instance, so a key repeated across many entities is only held once
+                Object key = e.key();
+                if (dst > 0 && key.equals(newKeys[dst - 1])) key = newKeys[dst - 1];
+                else if (i < n && key.equals(keys[i])) key = keys[i];
+                newKeys[dst] = key;
+                newIds[dst++] = e.id();
+                changed = true;
+                continue;
+            }
+            while (r < toRemove.size() && compare(toRemove.get(r), (K) keys[i], ids[i]) < 0) r++;
+            if (r < toRemove.size() && compare(toRemove.get(r), (K) keys[i], ids[i]) == 0) {
+                r++;
+                i++;
+                changed = true;
+                continue;
+            }
+            // Already present
+            if (c == 0) a++;
+            newKeys[dst] = keys[i];
+            newIds[dst++] = ids[i++];
+        }
+        if (!changed) return List.of(chunk);
+        List<Chunk> result = new ArrayList<>();
+        int pieces = dst <= MAX_CHUNK ? 1 : (dst + CHUNK - 1) / CHUNK;
+        for (int p = 0, from = 0; p < pieces && from < dst; p++) {
+            int to = pieces == 1 ? dst : Math.min(dst, from + CHUNK);
+            result.add(new Chunk(Arrays.copyOfRange(newKeys, from, to), Arrays.copyOfRange(newIds, from, to)));
+            from = to;
+        }
+        return result;
+    }
+
+    private long[] idsIn(int lo, int hi) {
+        if (lo >= hi) return new long[0];
+        long[] result = new long[hi - lo];
+        for (int c = chunkAt(lo), i = lo - starts[c], dst = 0; dst < result.length; c++, i = 0) {
+            int run = Math.min(chunks[c].ids.length - i, result.length - dst);
+            System.arraycopy(chunks[c].ids, i, result, dst, run);
+            dst += run;
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K keyAt(int index) {
+        int c = chunkAt(index);
+        return (K) chunks[c].keys[index - starts[c]];
+    }
+
+    private int chunkAt(int index) {
+        int idx = Arrays.binarySearch(starts, index);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+    // Position of the first entry at or after (key, id): first the chunk whose last entry is, then within it
+    @SuppressWarnings("unchecked")
+    private int lowerBound(K key, long id) {
+        int lo = 0, hi = chunks.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Chunk chunk = chunks[mid];
+            int last = chunk.ids.length - 1;
+            int c = ((K) chunk.keys[last]).compareTo(key);
+            if (c < 0 || (c == 0 && chunk.ids[last] < id)) lo = mid + 1;
+            else hi = mid;
+        }
+        if (lo == chunks.length) return size;
+        Chunk chunk = chunks[lo];
+        int from = 0, to = chunk.ids.length;
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            int c = ((K) chunk.keys[mid]).compareTo(key);
+            if (c < 0 || (c == 0 && chunk.ids[mid] < id)) from = mid + 1;
+            else to = mid;
+        }
+        return starts[lo] + from;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int upperBound(K key) {
+        int lo = 0, hi = chunks.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Chunk chunk = chunks[mid];
+            if (((K) chunk.keys[chunk.ids.length - 1]).compareTo(key) <= 0) lo = mid + 1;
+            else hi = mid;
+        }
+        if (lo == chunks.length) return size;
+        Chunk chunk = chunks[lo];
+        int from = 0, to = chunk.ids.length;
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (((K) chunk.keys[mid]).compareTo(key) <= 0) from = mid + 1;
+            else to = mid;
+        }
+        return starts[lo] + from;
+    }
+
+    private int compare(Entry<K> entry, K key, long id) {
+        int c = entry.key().compareTo(key);
+        return c != 0 ? c : Long.compare(entry.id(), id);
+    }
+
+    private List<Entry<K>> sorted(List<Entry<K>> entries) {
+        List<Entry<K>> result = new ArrayList<>(entries.size());
+        for (Entry<K> e : entries) {
+            if (e.key() != null) result.add(e);
+        }
+        result.sort(Comparator.<Entry<K>, K>comparing(Entry::key).thenComparingLong(Entry::id));
+        return result;
+    }
+
+    public record Entry<K>(K key, long id) {
+    }
+
+    private record Chunk(Object[] keys, long[] ids) {
+    }
+}
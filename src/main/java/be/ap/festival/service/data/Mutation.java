@@ -0,0 +1,86 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A single logical write against the store, with every id already allocated. Applying the same sequence of
+ * mutations to the same starting snapshot always yields the same catalog, which is what makes them usable
+ * as write-ahead log records.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "op")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = Mutation.CreateFestival.class, name = "createFestival"),
+        @JsonSubTypes.Type(value = Mutation.UpdateFestival.class, name = "updateFestival"),
+        @JsonSubTypes.Type(value = Mutation.DeleteFestival.class, name = "deleteFestival"),
+        @JsonSubTypes.Type(value = Mutation.AddPhoto.class, name = "addPhoto"),
+        @JsonSubTypes.Type(value = Mutation.RemovePhoto.class, name = "removePhoto"),
+        @JsonSubTypes.Type(value = Mutation.AddArtistToFestival.class, name = "addArtistToFestival"),
+        @JsonSubTypes.Type(value = Mutation.RemoveArtistFromFestival.class, name = "removeArtistFromFestival"),
+        @JsonSubTypes.Type(value = Mutation.ReplaceLineup.class, name = "replaceLineup"),
+        @JsonSubTypes.Type(value = Mutation.CreateArtist.class, name = "createArtist"),
+        @JsonSubTypes.Type(value = Mutation.UpdateArtist.class, name = "updateArtist"),
+        @JsonSubTypes.Type(value = Mutation.DeleteArtist.class, name = "deleteArtist"),
+        @JsonSubTypes.Type(value = Mutation.Batch.class, name = "batch")
+})
+public sealed interface Mutation {
+
+    // Null when the mutation can be part of a bulk write, otherwise why not
+    static String validate(Mutation m) {
+        if (m == null) return "Missing operation";
+        if (m instanceof Mutation.Batch) return "Batches cannot be nested";
+        if (m instanceof Mutation.CreateFestival c && c.festival() == null) return "Missing festival";
+        if (m instanceof Mutation.UpdateFestival u && u.festival() == null) return "Missing festival";
+        if (m instanceof Mutation.CreateArtist c && c.artist() == null) return "Missing artist";
+        if (m instanceof Mutation.UpdateArtist u && u.artist() == null) return "Missing artist";
+        if (m instanceof Mutation.AddPhoto p && p.url() == null) return "Missing photo url";
+        if (m instanceof Mutation.ReplaceLineup r && (r.artistIds() == null || r.artistIds().stream().anyMatch(Objects::isNull))) {
+            return "Missing artist ids";
+        }
+        return null;
+    }
+
+    record CreateFestival(long id, Festival festival) implements Mutation {
+    }
+
+    record UpdateFestival(long id, Festival festival) implements Mutation {
+    }
+
+    record DeleteFestival(long id) implements Mutation {
+    }
+
+    record AddPhoto(long festivalId, String url) implements Mutation {
+    }
+
+    record RemovePhoto(long festivalId, String url) implements Mutation {
+    }
+
+    record AddArtistToFestival(long festivalId, long artistId) implements Mutation {
+    }
+
+    record RemoveArtistFromFestival(long festivalId, long artistId) implements Mutation {
+    }
+
+    // The lineup becomes exactly these artists; lineups are sets ordered by artist id, so the given order and
+    // any repeated ids are not kept
+    record ReplaceLineup(long festivalId, List<Long> artistIds) implements Mutation {
+    }
+
+    record CreateArtist(long id, Artist artist) implements Mutation {
+    }
+
+    record UpdateArtist(long id, Artist artist) implements Mutation {
+    }
+
+    record DeleteArtist(long id) implements Mutation {
+    }
+
+    // Applied in order as one write: one snapshot, one change, one log record
+    record Batch(List<Mutation> mutations) implements Mutation {
+    }
+}
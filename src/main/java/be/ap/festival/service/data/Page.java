@@ -0,0 +1,7 @@
+package be.ap.festival.service.data;
+
+import java.util.List;
+
+// One keyset page; nextAfter is the cursor for the following page, or null when the scan reached the end
+public record Page<T>(List<T> items, Long nextAfter) {
+}
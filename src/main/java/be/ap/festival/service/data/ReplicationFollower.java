@@ -0,0 +1,158 @@
+package be.ap.festival.service.data;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follower side of replication: keeps the local store a read-only copy of the leader at {@code leader-url}.
+ * A single thread copies the leader's snapshot, installs it at the leader's version and then applies the
+ * leader's log in version order. Any gap, refusal or broken connection falls back to reconnecting and, if
+ * the log cannot be continued, to a fresh snapshot; the store is never changed any other way, so ids stay
+ * the leader's.
+ */
+@Component
+@ConditionalOnProperty(name = "festival.replication.role", havingValue = "follower")
+@Profile("!h2")
+public class ReplicationFollower implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    private final FestivalDataStore store;
+    private final URI leader;
+    private final Duration heartbeat;
+    private final Duration retry;
+
+    private final AtomicLong resyncs = new AtomicLong();
+    private volatile boolean running;
+    private volatile boolean connected;
+    private volatile HttpURLConnection connection;
+    private Thread thread;
+
+    public ReplicationFollower(FestivalDataStore store,
+                               @Value("${festival.replication.leader-url}") URI leader,
+                               @Value("${festival.replication.heartbeat:5s}") Duration heartbeat,
+                               @Value("${festival.replication.retry:1s}") Duration retry) {
+        this.store = store;
+        this.leader = leader;
+        this.heartbeat = heartbeat;
+        this.retry = retry;
+    }
+
+    @PostConstruct
+    public void start() {
+        store.setReplica(true);
+        running = true;
+        thread = new Thread(this::run, "replication-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        // A blocked read only returns once its socket is closed
+        HttpURLConnection open = connection;
+        if (open != null) open.disconnect();
+        thread.interrupt();
+        thread.join();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("festival.replication.connected", this, f -> f.connected ? 1 : 0)
+                .description("Whether the follower is streaming the leader's log")
+                .register(registry);
+        FunctionCounter.builder("festival.replication.resyncs", resyncs, AtomicLong::get)
+                .description("Snapshots copied from the leader")
+                .register(registry);
+    }
+
+    private void run() {
+        boolean resync = true;
+        while (running) {
+            try {
+                if (resync) {
+                    copySnapshot();
+                    resync = false;
+                }
+                resync = !follow();
+            } catch (IOException | RuntimeException e) {
+                if (!running) return;
+                log.warn("Replication from {} failed, retrying in {}: {}", leader, retry, e.toString());
+                // The store may be at a version the leader never had, e.g. after the leader lost its state
+                resync = true;
+                try {
+                    Thread.sleep(retry.toMillis());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void copySnapshot() throws IOException {
+        HttpURLConnection c = open("/api/replication/snapshot");
+        try (InputStream in = c.getInputStream()) {
+            store.replicate(in, leader + "/api/replication/snapshot");
+            resyncs.incrementAndGet();
+        } finally {
+            c.disconnect();
+        }
+    }
+
+    // False when the store can no longer catch up from the log and needs a snapshot
+    private boolean follow() throws IOException {
+        HttpURLConnection c = open("/api/replication/log?after=" + store.snapshot().version());
+        try {
+            int status = c.getResponseCode();
+            if (status == HttpURLConnection.HTTP_GONE) return false;
+            if (status != HttpURLConnection.HTTP_OK) throw new IOException("Leader answered " + status);
+            connected = true;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while (running && (line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue; // heartbeat
+                    StorePersistence.LogRecord record = StorePersistence.MAPPER.readValue(line, StorePersistence.LogRecord.class);
+                    long version = store.snapshot().version();
+                    if (record.version() <= version) continue;
+                    if (record.version() != version + 1) return false;
+                    store.apply(record.mutation());
+                }
+            }
+            // The leader ends every stream after a while; reconnecting continues from the same version
+            return true;
+        } finally {
+            connected = false;
+            c.disconnect();
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) leader.resolve(path).toURL().openConnection();
+        c.setConnectTimeout((int) retry.toMillis() * 5);
+        // Missing several heartbeats in a row means the leader or the network is gone
+        c.setReadTimeout((int) heartbeat.toMillis() * 3);
+        connection = c;
+        return c;
+    }
+}
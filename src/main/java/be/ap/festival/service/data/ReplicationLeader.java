@@ -0,0 +1,84 @@
+package be.ap.festival.service.data;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leader side of replication. A follower first copies a snapshot and then follows the mutation log after its
+ * version: the same {version, mutation} records the write-ahead log holds, read from the {@link ChangeLog}.
+ * Every id in them was allocated here, so followers replay creates with the leader's ids and never need
+ * sequences of their own.
+ * <p>
+ * A log stream ends when the follower can no longer continue from the log, after a catalog load or when it
+ * fell out of the change log; it then reconnects, is refused, and copies a fresh snapshot.
+ */
+@Component
+@ConditionalOnProperty(name = "festival.replication.role", havingValue = "leader")
+@Profile("!h2")
+public class ReplicationLeader {
+
+    private static final int BATCH = 1000;
+
+    private final FestivalDataStore store;
+    private final ChangeLog changeLog;
+    private final Duration heartbeat;
+    private final Duration streamDuration;
+
+    public ReplicationLeader(FestivalDataStore store, ChangeLog changeLog,
+                             @Value("${festival.replication.heartbeat:5s}") Duration heartbeat,
+                             @Value("${festival.replication.stream-duration:5m}") Duration streamDuration) {
+        this.store = store;
+        this.changeLog = changeLog;
+        this.heartbeat = heartbeat;
+        this.streamDuration = streamDuration;
+    }
+
+    // Whether a follower at this version can catch up from the log alone
+    public boolean canFollow(long version) {
+        return changeLog.after(version, 0).isPresent();
+    }
+
+    // The catalog document StorePersistence also writes, with the id sequences the follower has to adopt
+    public void writeSnapshot(OutputStream out) throws IOException {
+        CatalogWriter.write(store.snapshot(), store.nextFestivalId(), store.nextArtistId(), out);
+    }
+
+    /**
+     * Writes the log records after the version as NDJSON, flushing after every batch, until the stream
+     * duration is up or the log can no longer be followed. An empty line is written whenever the store was
+     * idle for a heartbeat, so followers notice a dead leader and the leader a dead follower.
+     */
+    public void stream(long after, OutputStream out) throws IOException {
+        long cursor = after;
+        long deadline = System.nanoTime() + streamDuration.toNanos();
+        while (System.nanoTime() - deadline < 0) {
+            Optional<List<StoreChange>> changes = changeLog.after(cursor, BATCH);
+            if (changes.isEmpty()) return;
+            if (changes.get().isEmpty()) {
+                try {
+                    if (changeLog.awaitChange(cursor, heartbeat.toMillis(), TimeUnit.MILLISECONDS)) continue;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                out.write('\n');
+            }
+            for (StoreChange change : changes.get()) {
+                StorePersistence.LogRecord record = new StorePersistence.LogRecord(change.version(), change.mutation());
+                out.write(StorePersistence.MAPPER.writeValueAsBytes(record));
+                out.write('\n');
+                cursor = change.version();
+            }
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package be.ap.festival.service.data;
+
+// One ranked search result: a festival (detail is its place) or an artist (detail is its genre)
+public record SearchHit(String type, long id, String name, String detail, int score) {
+
+    public static final String FESTIVAL = "festival";
+    public static final String ARTIST = "artist";
+}
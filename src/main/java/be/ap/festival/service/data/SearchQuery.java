@@ -0,0 +1,17 @@
+package be.ap.festival.service.data;
+
+/**
+ * Full-text query: every word of the text must start a word of the entity's name or detail field, so the text
+ * can be typed incrementally. A null type searches festivals and artists together.
+ * Results are ranked, so paging is by position: after is the number of hits already returned.
+ */
+public record SearchQuery(String text, String type, Long after, int limit) {
+
+    public SearchQuery {
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        if (after != null && after < 0) throw new IllegalArgumentException("after must not be negative");
+        if (type != null && !type.equals(SearchHit.FESTIVAL) && !type.equals(SearchHit.ARTIST)) {
+            throw new IllegalArgumentException("type must be " + SearchHit.FESTIVAL + " or " + SearchHit.ARTIST);
+        }
+    }
+}
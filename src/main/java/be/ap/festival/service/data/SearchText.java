@@ -0,0 +1,65 @@
+package be.ap.festival.service.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tokenization for the full-text indexes. Text is split into words of letters and digits, lower-cased and
+ * stripped of diacritics, so "Pukkelpop", "pukkelPOP" and "Pükkelpop" all index as "pukkelpop".
+ * <p>
+ * Index keys are the token followed by NUL and the field it came from, either the entity's name or its detail
+ * field (a festival's place, an artist's genre). Every key that starts with a token therefore lies in
+ * [token, token + U+FFFF], so a prefix lookup is one range scan, and an exact match is a key that is exactly
+ * two characters longer than the token.
+ */
+final class SearchText {
+
+    static final char NAME = 'n';
+    static final char DETAIL = 'd';
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private SearchText() {
+    }
+
+    // Folded words of the text, each once, in order of appearance
+    static List<String> tokens(String text) {
+        if (text == null || text.isBlank()) return List.of();
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(folded)) {
+            if (!token.isEmpty()) tokens.add(token);
+        }
+        return List.copyOf(tokens);
+    }
+
+    static List<KeyIndex.Entry<String>> entries(long id, String name, String detail) {
+        List<KeyIndex.Entry<String>> entries = new ArrayList<>();
+        for (String token : tokens(name)) entries.add(new KeyIndex.Entry<>(key(token, NAME), id));
+        for (String token : tokens(detail)) entries.add(new KeyIndex.Entry<>(key(token, DETAIL), id));
+        return entries;
+    }
+
+    static String key(String token, char field) {
+        return token + '\u0000' + field;
+    }
+
+    // Upper bound of the keys of every token that starts with the given one
+    static String prefixEnd(String token) {
+        return token + '\uffff';
+    }
+
+    static char field(String key) {
+        return key.charAt(key.length() - 1);
+    }
+
+    static boolean exact(String key, String token) {
+        return key.length() == token.length() + 2;
+    }
+}
@@ -0,0 +1,27 @@
+package be.ap.festival.service.data;
+
+import java.util.Set;
+
+/**
+ * Describes one published mutation: the snapshot version it produced, the ids of every festival and
+ * artist whose published instance changed (cascades such as deleteArtist list all rewritten festivals)
+ * and the {@link Mutation} that caused it. Catalog loads replace everything: they carry no mutation and no ids.
+ */
+public record StoreChange(long version, Type type, Set<Long> festivalIds, Set<Long> artistIds, Mutation mutation) {
+
+    public enum Type {
+        CATALOG_LOADED,
+        FESTIVAL_CREATED,
+        FESTIVAL_UPDATED,
+        FESTIVAL_DELETED,
+        PHOTO_ADDED,
+        PHOTO_REMOVED,
+        LINEUP_ARTIST_ADDED,
+        LINEUP_ARTIST_REMOVED,
+        LINEUP_REPLACED,
+        ARTIST_CREATED,
+        ARTIST_UPDATED,
+        ARTIST_DELETED,
+        BATCH_APPLIED
+    }
+}
@@ -0,0 +1,144 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.Lineup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Secondary indexes published together with every {@link StoreSnapshot}, so an index lookup always agrees
+ * with the entity tables it was taken from. Place and genre keys are case-folded; names are exact. The token
+ * indexes hold the words of names, places and genres for full-text search (see {@link SearchText}).
+ */
+public record StoreIndexes(KeyIndex<LocalDate> festivalsByDate,
+                           KeyIndex<BigDecimal> festivalsByPrice,
+                           KeyIndex<String> festivalsByPlace,
+                           KeyIndex<Long> festivalsByArtist,
+                           KeyIndex<String> artistsByGenre,
+                           KeyIndex<String> artistsByName,
+                           KeyIndex<String> festivalsByToken,
+                           KeyIndex<String> artistsByToken) {
+
+    static final StoreIndexes EMPTY = new StoreIndexes(KeyIndex.empty(), KeyIndex.empty(), KeyIndex.empty(),
+            KeyIndex.empty(), KeyIndex.empty(), KeyIndex.empty(), KeyIndex.empty(), KeyIndex.empty());
+
+    static StoreIndexes build(Collection<Festival> festivals, Collection<Artist> artists) {
+        return EMPTY.update(List.of(), festivals, List.of(), artists);
+    }
+
+    /**
+     * Applies a diff: the previous versions of changed entities are unindexed and their replacements indexed.
+     * Entities that were created have no previous version, deleted ones have no replacement. Only keys that
+     * actually changed touch an index, and a lineup is only diffed when its artist ids changed.
+     */
+    StoreIndexes update(Collection<Festival> oldFestivals, Collection<Festival> newFestivals,
+                        Collection<Artist> oldArtists, Collection<Artist> newArtists) {
+        Diff<LocalDate> dates = new Diff<>();
+        Diff<BigDecimal> prices = new Diff<>();
+        Diff<String> places = new Diff<>();
+        Diff<Long> lineups = new Diff<>();
+        Diff<String> festivalTokens = new Diff<>();
+        Map<Long, Festival> replacements = byId(newFestivals, Festival::getId);
+        for (Festival before : oldFestivals) {
+            Festival after = replacements.remove(before.getId());
+            dates.change(before.getId(), before.getDate(), after == null ? null : after.getDate(), after == null);
+            // Prices are normalized so that 110.0 and 110.00 share one key
+            prices.change(before.getId(), priceKey(before.getPrice()), after == null ? null : priceKey(after.getPrice()), after == null);
+            places.change(before.getId(), fold(before.getPlace()), after == null ? null : fold(after.getPlace()), after == null);
+            if (after == null || !Objects.equals(before.getName(), after.getName()) || !Objects.equals(before.getPlace(), after.getPlace())) {
+                festivalTokens.changeAll(SearchText.entries(before.getId(), before.getName(), before.getPlace()),
+                        after == null ? List.of() : SearchText.entries(after.getId(), after.getName(), after.getPlace()));
+            }
+            // Swapped artist instances (updateArtist) keep the ids and do not touch the index
+            Lineup beforeLineup = before.getLineup();
+            Lineup afterLineup = after == null ? Lineup.empty() : after.getLineup();
+            if (!beforeLineup.sameIds(afterLineup)) {
+                for (int i = 0; i < beforeLineup.size(); i++) {
+                    long artistId = beforeLineup.idAt(i);
+                    if (!afterLineup.containsId(artistId)) lineups.removed.add(new KeyIndex.Entry<>(artistId, before.getId()));
+                }
+                for (int i = 0; i < afterLineup.size(); i++) {
+                    long artistId = afterLineup.idAt(i);
+                    if (!beforeLineup.containsId(artistId)) lineups.added.add(new KeyIndex.Entry<>(artistId, before.getId()));
+                }
+            }
+        }
+        for (Festival created : replacements.values()) {
+            dates.added.add(new KeyIndex.Entry<>(created.getDate(), created.getId()));
+            prices.added.add(new KeyIndex.Entry<>(priceKey(created.getPrice()), created.getId()));
+            places.added.add(new KeyIndex.Entry<>(fold(created.getPlace()), created.getId()));
+            Lineup lineup = created.getLineup();
+            for (int i = 0; i < lineup.size(); i++) lineups.added.add(new KeyIndex.Entry<>(lineup.idAt(i), created.getId()));
+            festivalTokens.added.addAll(SearchText.entries(created.getId(), created.getName(), created.getPlace()));
+        }
+
+        Diff<String> genres = new Diff<>();
+        Diff<String> names = new Diff<>();
+        Diff<String> artistTokens = new Diff<>();
+        Map<Long, Artist> artistReplacements = byId(newArtists, Artist::getId);
+        for (Artist before : oldArtists) {
+            Artist after = artistReplacements.remove(before.getId());
+            genres.change(before.getId(), fold(before.getGenre()), after == null ? null : fold(after.getGenre()), after == null);
+            names.change(before.getId(), before.getName(), after == null ? null : after.getName(), after == null);
+            if (after == null || !Objects.equals(before.getName(), after.getName()) || !Objects.equals(before.getGenre(), after.getGenre())) {
+                artistTokens.changeAll(SearchText.entries(before.getId(), before.getName(), before.getGenre()),
+                        after == null ? List.of() : SearchText.entries(after.getId(), after.getName(), after.getGenre()));
+            }
+        }
+        for (Artist created : artistReplacements.values()) {
+            genres.added.add(new KeyIndex.Entry<>(fold(created.getGenre()), created.getId()));
+            names.added.add(new KeyIndex.Entry<>(created.getName(), created.getId()));
+            artistTokens.added.addAll(SearchText.entries(created.getId(), created.getName(), created.getGenre()));
+        }
+
+        return new StoreIndexes(dates.applyTo(festivalsByDate), prices.applyTo(festivalsByPrice),
+                places.applyTo(festivalsByPlace), lineups.applyTo(festivalsByArtist),
+                genres.applyTo(artistsByGenre), names.applyTo(artistsByName),
+                festivalTokens.applyTo(festivalsByToken), artistTokens.applyTo(artistsByToken));
+    }
+
+    static String fold(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    static BigDecimal priceKey(BigDecimal price) {
+        return price == null ? null : price.stripTrailingZeros();
+    }
+
+    private static <T> Map<Long, T> byId(Collection<T> entities, Function<T, Long> id) {
+        Map<Long, T> result = new LinkedHashMap<>();
+        for (T e : entities) result.put(id.apply(e), e);
+        return result;
+    }
+
+    private static final class Diff<K extends Comparable<? super K>> {
+        final List<KeyIndex.Entry<K>> removed = new ArrayList<>();
+        final List<KeyIndex.Entry<K>> added = new ArrayList<>();
+
+        void change(long id, K before, K after, boolean deleted) {
+            if (!deleted && Objects.equals(before, after)) return;
+            removed.add(new KeyIndex.Entry<>(before, id));
+            if (!deleted) added.add(new KeyIndex.Entry<>(after, id));
+        }
+
+        // Only the entries that are not in both lists, so renaming "Rock Werchter" leaves "werchter" alone
+        void changeAll(List<KeyIndex.Entry<K>> before, List<KeyIndex.Entry<K>> after) {
+            for (KeyIndex.Entry<K> e : before) if (!after.contains(e)) removed.add(e);
+            for (KeyIndex.Entry<K> e : after) if (!before.contains(e)) added.add(e);
+        }
+
+        KeyIndex<K> applyTo(KeyIndex<K> index) {
+            return index.update(removed, added);
+        }
+    }
+}
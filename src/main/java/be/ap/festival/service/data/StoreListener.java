@@ -0,0 +1,7 @@
+package be.ap.festival.service.data;
+
+// Called synchronously, in version order, right after a new snapshot has been published; keep it cheap.
+@FunctionalInterface
+public interface StoreListener {
+    void onChange(StoreChange change, StoreSnapshot snapshot);
+}
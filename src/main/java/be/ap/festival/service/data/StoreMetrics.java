@@ -0,0 +1,102 @@
+package be.ap.festival.service.data;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Catalog gauges: festival and artist counts, the published version and the lineup size distribution.
+ * Lineup statistics are derived from the festivals-by-artist index rather than the entities, so a lazily
+ * loaded catalog is not materialized by a scrape; they are recomputed at most once per store version.
+ */
+@Component
+public class StoreMetrics implements MeterBinder {
+
+    // Inclusive upper bounds of the lineup size buckets
+    private static final int[] BUCKETS = {0, 5, 10, 20, Integer.MAX_VALUE};
+
+    private final FestivalDataStore store;
+    private volatile LineupStats lineups = new LineupStats(-1, 0, 0, new long[BUCKETS.length]);
+
+    public StoreMetrics(FestivalDataStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("festival.store.festivals", store, s -> s.snapshot().festivals().size())
+                .description("Festivals in the published snapshot")
+                .register(registry);
+        Gauge.builder("festival.store.artists", store, s -> s.snapshot().artists().size())
+                .description("Artists in the published snapshot")
+                .register(registry);
+        Gauge.builder("festival.store.version", store, s -> s.snapshot().version())
+                .description("Version of the published snapshot")
+                .register(registry);
+        Gauge.builder("festival.store.dictionary.entries", store, FestivalDataStore::dictionarySize)
+                .description("Distinct places, genres and photo URL prefixes shared between entities")
+                .register(registry);
+        Gauge.builder("festival.store.lineup.size", this, m -> m.lineups().mean())
+                .tag("statistic", "mean")
+                .register(registry);
+        Gauge.builder("festival.store.lineup.size", this, m -> m.lineups().max())
+                .tag("statistic", "max")
+                .register(registry);
+        for (int i = 0; i < BUCKETS.length; i++) {
+            int bucket = i;
+            Gauge.builder("festival.store.lineup.festivals", this, m -> m.lineups().festivals()[bucket])
+                    .description("Festivals by lineup size")
+                    .tag("size", label(bucket))
+                    .register(registry);
+        }
+    }
+
+    LineupStats lineups() {
+        StoreSnapshot snap = store.snapshot();
+        LineupStats stats = lineups;
+        if (stats.version() != snap.version()) {
+            stats = LineupStats.of(snap);
+            lineups = stats;
+        }
+        return stats;
+    }
+
+    private static String label(int bucket) {
+        if (bucket == 0) return "0";
+        int from = BUCKETS[bucket - 1] + 1;
+        return BUCKETS[bucket] == Integer.MAX_VALUE ? from + "+" : from + "-" + BUCKETS[bucket];
+    }
+
+    record LineupStats(long version, double mean, int max, long[] festivals) {
+
+        static LineupStats of(StoreSnapshot snap) {
+            // One index entry per (artist, festival) booking; sorting the festival ids groups each lineup
+            long[] bookings = snap.indexes().festivalsByArtist().idsBetween(null, null);
+            Arrays.sort(bookings);
+            long[] festivals = new long[BUCKETS.length];
+            int max = 0;
+            int withLineup = 0;
+            for (int i = 0; i < bookings.length; ) {
+                int j = i;
+                while (j < bookings.length && bookings[j] == bookings[i]) j++;
+                int size = j - i;
+                festivals[bucketOf(size)]++;
+                max = Math.max(max, size);
+                withLineup++;
+                i = j;
+            }
+            int total = snap.festivals().size();
+            festivals[0] = Math.max(0, total - withLineup);
+            return new LineupStats(snap.version(), total == 0 ? 0 : (double) bookings.length / total, max, festivals);
+        }
+
+        private static int bucketOf(int size) {
+            int bucket = 0;
+            while (size > BUCKETS[bucket]) bucket++;
+            return bucket;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package be.ap.festival.service.data;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Makes the in-memory store durable. Every published {@link StoreChange} is appended to a {@link WriteAheadLog}
+ * by a single writer thread that fsyncs whole batches at once (group commit); in {@code group} mode a write
+ * returns only once its batch is on disk. At most {@code queue-capacity} changes wait for the writer; beyond
+ * that writers block, so a slow disk slows writes down instead of filling the heap.
+ * <p>
+ * Every {@code snapshot-every} mutations the log moves on to a new segment and the snapshot as of that point is
+ * written atomically by a separate thread, so appends keep flowing meanwhile; once it is on disk the segments
+ * it covers are dropped. A catalog load is only captured by a snapshot, so that one is written before anything
+ * later is logged. On startup the latest snapshot is loaded and the log tail replayed on top of it, before the
+ * seed catalog would be read. Snapshots are written as JSON or, with {@code snapshot-format: binary}, as a
+ * memory-mapped {@link BinarySnapshot}; recovery reads whichever format it finds.
+ * <p>
+ * Changes are published before they are durable: readers, the change feed and replication followers see a
+ * write as soon as the store publishes it, while the writing request (in {@code group} mode) waits for its
+ * fsync. A crash can therefore lose a change that others have already seen, though never one whose writer
+ * was told it succeeded.
+ */
+@Component
+@ConditionalOnProperty(name = "festival.persistence.enabled", havingValue = "true")
+@Profile("!h2")
+public class StorePersistence implements StoreListener {
+
+    private static final Logger log = LoggerFactory.getLogger(StorePersistence.class);
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    // Also used for the replication log, which carries the same records
+    static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false)
+            .findAndRegisterModules();
+
+    public enum SyncMode {
+        // The writing request waits for its fsync; concurrent writers share one
+        GROUP,
+        // Writes return immediately and are fsynced in the background; a crash can lose the last batch
+        ASYNC
+    }
+
+    public enum SnapshotFormat {
+        // The festivals.json layout; portable and readable, parsed on startup
+        JSON(".json"),
+        // BinarySnapshot: memory-mapped on startup, entities are built when first touched
+        BINARY(".bin");
+
+        private final String suffix;
+
+        SnapshotFormat(String suffix) {
+            this.suffix = suffix;
+        }
+    }
+
+    record LogRecord(long version, Mutation mutation) {
+    }
+
+    private sealed interface Task {
+    }
+
+    private record Append(long version, Mutation mutation) implements Task {
+    }
+
+    // In the background unless the snapshot is the only record of its changes (a catalog load) or a final one
+    private record Checkpoint(StoreSnapshot snapshot, long nextFestivalId, long nextArtistId, boolean background)
+            implements Task {
+    }
+
+    private record Stop() implements Task {
+    }
+
+    private final FestivalDataStore store;
+    private final Path directory;
+    private final SyncMode syncMode;
+    private final int snapshotEvery;
+    private final SnapshotFormat snapshotFormat;
+
+    private final BlockingQueue<Task> queue;
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableChanged = durableLock.newCondition();
+    private long durableVersion;
+    private IOException failure;
+    private boolean stopped;
+
+    private WriteAheadLog wal;
+    private Thread writer;
+    private ExecutorService snapshotter;
+    // A background snapshot is being written; the next one is skipped rather than queued behind it
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+    private long sinceSnapshot;
+
+    @Autowired
+    public StorePersistence(FestivalDataStore store,
+                            @Value("${festival.persistence.directory:data}") Path directory,
+                            @Value("${festival.persistence.sync:group}") SyncMode syncMode,
+                            @Value("${festival.persistence.snapshot-every:10000}") int snapshotEvery,
+                            @Value("${festival.persistence.snapshot-format:json}") SnapshotFormat snapshotFormat,
+                            @Value("${festival.persistence.queue-capacity:10000}") int queueCapacity) {
+        this.store = store;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.directory = directory;
+        this.syncMode = syncMode;
+        this.snapshotEvery = snapshotEvery;
+        this.snapshotFormat = snapshotFormat;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        recover();
+        long version = store.snapshot().version();
+        durableVersion = version;
+        wal = new WriteAheadLog(directory);
+        wal.roll(version + 1);
+        snapshotter = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "store-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        writer = new Thread(this::run, "store-wal");
+        writer.setDaemon(true);
+        writer.start();
+        store.addListener(this);
+        store.setCommitBarrier(this::awaitDurable);
+    }
+
+    // Takes a final snapshot so the next start does not have to replay anything
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        detach();
+        requestSnapshot();
+        enqueue(new Stop());
+        writer.join();
+    }
+
+    // Queues a snapshot behind the changes logged so far; the log writer waits until it is written
+    public void requestSnapshot() {
+        StoreSnapshot snap = store.snapshot();
+        if (snap.version() > 0) enqueue(new Checkpoint(snap, store.nextFestivalId(), store.nextArtistId(), false));
+    }
+
+    // Stops logging without a final snapshot, as if the process had died after its last fsync
+    void halt() throws InterruptedException {
+        detach();
+        enqueue(new Stop());
+        writer.join();
+    }
+
+    // Runs under the store's write lock, so tasks are queued in version order, and a full queue holds up writers
+    @Override
+    public void onChange(StoreChange change, StoreSnapshot snapshot) {
+        if (change.mutation() == null) {
+            // Catalog loads replace everything and are only captured by a snapshot
+            sinceSnapshot = 0;
+            enqueue(new Checkpoint(snapshot, store.nextFestivalId(), store.nextArtistId(), false));
+            return;
+        }
+        enqueue(new Append(change.version(), change.mutation()));
+        if (++sinceSnapshot >= snapshotEvery) {
+            sinceSnapshot = 0;
+            enqueue(new Checkpoint(snapshot, store.nextFestivalId(), store.nextArtistId(), true));
+        }
+    }
+
+    private void enqueue(Task task) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(task);
+                break;
+            } catch (InterruptedException e) {
+                // Dropping the task would leave a hole in the log
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private void awaitDurable(long version) {
+        if (syncMode == SyncMode.ASYNC) return;
+        durableLock.lock();
+        try {
+            while (durableVersion < version && failure == null && !stopped) durableChanged.await();
+            if (failure != null) throw new UncheckedIOException("Write-ahead log failed, changes are no longer durable", failure);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    private void detach() {
+        store.removeListener(this);
+        store.setCommitBarrier(version -> { });
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>();
+        try {
+            boolean stop = false;
+            while (!stop) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                long version = -1;
+                for (Task task : batch) {
+                    if (task instanceof Append append) {
+                        wal.append(MAPPER.writeValueAsBytes(new LogRecord(append.version(), append.mutation())));
+                        version = append.version();
+                    } else if (task instanceof Checkpoint checkpoint) {
+                        if (checkpoint(checkpoint)) version = Math.max(version, checkpoint.snapshot().version());
+                    } else {
+                        stop = true;
+                    }
+                }
+                wal.sync();
+                if (version >= 0) markDurable(version, null);
+                batch.clear();
+            }
+            snapshotter.shutdown();
+            snapshotter.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            wal.close();
+        } catch (IOException e) {
+            log.error("Write-ahead log failed in {}", directory, e);
+            markDurable(-1, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            snapshotter.shutdown();
+            durableLock.lock();
+            try {
+                stopped = true;
+                durableChanged.signalAll();
+            } finally {
+                durableLock.unlock();
+            }
+        }
+    }
+
+    private void markDurable(long version, IOException error) {
+        durableLock.lock();
+        try {
+            durableVersion = Math.max(durableVersion, version);
+            if (error != null) failure = error;
+            durableChanged.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    /**
+     * Starts a fresh log segment after the snapshot's version, then writes the snapshot, in the background or
+     * before returning. True once the snapshot is on disk, which makes its version durable.
+     */
+    private boolean checkpoint(Checkpoint checkpoint) throws IOException {
+        long version = checkpoint.snapshot().version();
+        if (checkpoint.background()) {
+            if (!snapshotting.compareAndSet(false, true)) return false;
+            wal.roll(version + 1);
+            snapshotter.execute(() -> {
+                try {
+                    writeSnapshot(checkpoint);
+                } catch (IOException | RuntimeException e) {
+                    // The log still holds everything; the next checkpoint tries again
+                    log.error("Could not write snapshot of version {} to {}", version, directory, e);
+                } finally {
+                    snapshotting.set(false);
+                }
+            });
+            return false;
+        }
+        wal.roll(version + 1);
+        try {
+            snapshotter.submit(() -> {
+                writeSnapshot(checkpoint);
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing snapshot of version " + version);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Could not write snapshot of version " + version, e.getCause());
+        }
+        return true;
+    }
+
+    // Writes the snapshot atomically, then drops the log segments and older snapshots it covers
+    private void writeSnapshot(Checkpoint checkpoint) throws IOException {
+        long version = checkpoint.snapshot().version();
+        Path target = snapshotPath(version);
+        if (!Files.exists(target)) {
+            long started = System.nanoTime();
+            Path tmp = directory.resolve(target.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16)) {
+                if (snapshotFormat == SnapshotFormat.BINARY) {
+                    BinarySnapshot.write(checkpoint.snapshot(), checkpoint.nextFestivalId(), checkpoint.nextArtistId(), out);
+                } else {
+                    CatalogWriter.write(checkpoint.snapshot(), checkpoint.nextFestivalId(), checkpoint.nextArtistId(), out);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            syncDirectory();
+            log.info("Wrote snapshot of version {} in {} ms", version, (System.nanoTime() - started) / 1_000_000);
+        }
+        // The writer has moved on to a segment starting after this version, so none of these is being written
+        WriteAheadLog.deleteSegmentsBefore(directory, version + 1);
+        for (Path snapshot : snapshots()) {
+            if (snapshot.getFileName().toString().compareTo(target.getFileName().toString()) >= 0) continue;
+            try {
+                Files.delete(snapshot);
+            } catch (IOException e) {
+                // A mapped binary snapshot cannot be deleted on every platform; the next checkpoint retries
+                log.warn("Could not delete old snapshot {}", snapshot, e);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        long started = System.nanoTime();
+        List<Path> snapshots = snapshots();
+        if (!snapshots.isEmpty()) {
+            store.load(snapshots.get(snapshots.size() - 1));
+        }
+        long[] replayed = {0};
+        WriteAheadLog.replay(directory, payload -> {
+            LogRecord record;
+            try {
+                record = MAPPER.readValue(payload, LogRecord.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            long version = store.snapshot().version();
+            if (record.version() <= version) return; // already in the snapshot
+            if (record.version() != version + 1) {
+                throw new IllegalStateException("Write-ahead log in " + directory + " jumps from version " + version
+                        + " to " + record.version());
+            }
+            store.apply(record.mutation());
+            replayed[0]++;
+        });
+        if (!snapshots.isEmpty() || replayed[0] > 0) {
+            log.info("Recovered store version {} from {} ({} log records replayed) in {} ms", store.snapshot().version(),
+                    directory, replayed[0], (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(SNAPSHOT_PREFIX)
+                            && !p.getFileName().toString().endsWith(".tmp"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path snapshotPath(long version) {
+        return directory.resolve(String.format("%s%019d%s", SNAPSHOT_PREFIX, version, snapshotFormat.suffix));
+    }
+
+    // Makes the rename itself durable; not every platform can open a directory, which is fine to skip
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.debug("Could not fsync directory {}", directory, e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+
+/**
+ * Immutable, versioned view of the whole catalog. Writers publish a new snapshot per mutation;
+ * readers grab the current one and can walk it without locking or copying.
+ */
+public record StoreSnapshot(long version, EntityTable<Festival> festivals, EntityTable<Artist> artists,
+                            StoreIndexes indexes) {
+
+    static final StoreSnapshot EMPTY = new StoreSnapshot(0L, EntityTable.empty(), EntityTable.empty(), StoreIndexes.EMPTY);
+}
@@ -0,0 +1,25 @@
+package be.ap.festival.service.data;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalog aggregates as of one store version. Places and genres map to their festival and artist counts,
+ * busiest first; festivals without a price are left out of the price statistics.
+ */
+public record StoreStats(long version, int festivals, int artists, long bookings,
+                         Map<String, Integer> festivalsPerPlace, Map<String, Integer> artistsPerGenre,
+                         Prices prices, List<BusyArtist> busiestArtists) {
+
+    // Min, max and average are null without any priced festival
+    public record Prices(long festivals, BigDecimal min, BigDecimal max, BigDecimal avg, List<Bucket> histogram) {
+    }
+
+    // Festivals priced above from (exclusive) up to to (inclusive); a null bound is open
+    public record Bucket(BigDecimal from, BigDecimal to, long festivals) {
+    }
+
+    public record BusyArtist(long id, String name, int festivals) {
+    }
+}
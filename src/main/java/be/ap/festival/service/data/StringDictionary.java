@@ -0,0 +1,36 @@
+package be.ap.festival.service.data;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances of values that repeat across the catalog: places, genres and photo URL prefixes. Every
+ * festival or artist that uses one of them refers to the same String instead of its own copy. The dictionary
+ * only grows, so it stops taking new values once full; values seen after that are simply not shared.
+ */
+final class StringDictionary {
+
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    private final int capacity;
+
+    StringDictionary() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    StringDictionary(int capacity) {
+        this.capacity = capacity;
+    }
+
+    String canonical(String value) {
+        if (value == null) return null;
+        String known = values.get(value);
+        if (known != null) return known;
+        if (values.size() >= capacity) return value;
+        known = values.putIfAbsent(value, value);
+        return known != null ? known : value;
+    }
+
+    int size() { return values.size(); }
+}
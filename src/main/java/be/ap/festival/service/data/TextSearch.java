@@ -0,0 +1,138 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Runs a {@link SearchQuery} against the token indexes of one snapshot. Each query word is a range scan over
+ * the keys it prefixes; the per-word matches are intersected as id-sorted arrays and their scores summed.
+ * Only the hits on the requested page are materialized.
+ * <p>
+ * A word scores 4 when it is a whole word of the name, 2 when it starts one, and 2 and 1 for the detail
+ * field; a word that matches several fields counts its best match. Hits are ranked by score, then
+ * festivals before artists, then by id.
+ */
+final class TextSearch {
+
+    private static final int NAME_EXACT = 4;
+    private static final int NAME_PREFIX = 2;
+    private static final int DETAIL_EXACT = 2;
+    private static final int DETAIL_PREFIX = 1;
+    // Scores are packed below the id while matches are collected; a word scores at most 4
+    private static final int SCORE_BITS = 3;
+
+    private TextSearch() {
+    }
+
+    static Page<SearchHit> run(StoreSnapshot snap, SearchQuery query) {
+        List<String> words = SearchText.tokens(query.text());
+        if (words.isEmpty()) return new Page<>(List.of(), null);
+        Matches festivals = query.type() == null || query.type().equals(SearchHit.FESTIVAL)
+                ? match(snap.indexes().festivalsByToken(), words) : Matches.NONE;
+        Matches artists = query.type() == null || query.type().equals(SearchHit.ARTIST)
+                ? match(snap.indexes().artistsByToken(), words) : Matches.NONE;
+
+        long skip = query.after() == null ? 0 : query.after();
+        long position = 0;
+        List<SearchHit> hits = new ArrayList<>(Math.min(query.limit(), festivals.size + artists.size));
+        // Scores are small, so ranking is a pass per score over the id-ordered matches rather than a sort
+        for (int score = Math.max(festivals.maxScore, artists.maxScore); score > 0; score--) {
+            for (int i = 0; i < festivals.size; i++) {
+                if (festivals.scores[i] != score || position++ < skip) continue;
+                if (hits.size() == query.limit()) return new Page<>(hits, skip + hits.size());
+                Festival f = snap.festivals().get(festivals.ids[i]);
+                hits.add(new SearchHit(SearchHit.FESTIVAL, f.getId(), f.getName(), f.getPlace(), score));
+            }
+            for (int i = 0; i < artists.size; i++) {
+                if (artists.scores[i] != score || position++ < skip) continue;
+                if (hits.size() == query.limit()) return new Page<>(hits, skip + hits.size());
+                Artist a = snap.artists().get(artists.ids[i]);
+                hits.add(new SearchHit(SearchHit.ARTIST, a.getId(), a.getName(), a.getGenre(), score));
+            }
+        }
+        return new Page<>(hits, null);
+    }
+
+    // Entities that match every word, in id order, with their summed scores
+    private static Matches match(KeyIndex<String> index, List<String> words) {
+        Matches result = null;
+        for (String word : words) {
+            Matches matches = matchWord(index, word);
+            result = result == null ? matches : result.intersect(matches);
+            if (result.size == 0) break;
+        }
+        return result;
+    }
+
+    private static Matches matchWord(KeyIndex<String> index, String word) {
+        WordScan scan = new WordScan(word);
+        index.forEachBetween(word, SearchText.prefixEnd(word), scan);
+        // Sorting the packed values orders by id and, within one id, by score, so the last entry is the best
+        long[] packed = scan.packed;
+        Arrays.sort(packed, 0, scan.count);
+        Matches matches = new Matches(scan.count);
+        for (int i = 0; i < scan.count; i++) {
+            long id = packed[i] >>> SCORE_BITS;
+            if (i + 1 < scan.count && packed[i + 1] >>> SCORE_BITS == id) continue;
+            matches.add(id, (int) (packed[i] & ((1 << SCORE_BITS) - 1)));
+        }
+        return matches;
+    }
+
+    // Collects (id, score) pairs of the keys a word prefixes, packed into single longs
+    private static final class WordScan implements ObjLongConsumer<String> {
+        final String word;
+        long[] packed = new long[16];
+        int count;
+
+        WordScan(String word) {
+            this.word = word;
+        }
+
+        @Override
+        public void accept(String key, long id) {
+            boolean exact = SearchText.exact(key, word);
+            int score = SearchText.field(key) == SearchText.NAME
+                    ? (exact ? NAME_EXACT : NAME_PREFIX)
+                    : (exact ? DETAIL_EXACT : DETAIL_PREFIX);
+            if (count == packed.length) packed = Arrays.copyOf(packed, count * 2);
+            packed[count++] = id << SCORE_BITS | score;
+        }
+    }
+
+    private static final class Matches {
+        static final Matches NONE = new Matches(0);
+
+        final long[] ids;
+        final int[] scores;
+        int size;
+        int maxScore;
+
+        Matches(int capacity) {
+            ids = new long[capacity];
+            scores = new int[capacity];
+        }
+
+        void add(long id, int score) {
+            ids[size] = id;
+            scores[size++] = score;
+            maxScore = Math.max(maxScore, score);
+        }
+
+        Matches intersect(Matches other) {
+            Matches result = new Matches(Math.min(size, other.size));
+            int i = 0, j = 0;
+            while (i < size && j < other.size) {
+                if (ids[i] < other.ids[j]) i++;
+                else if (ids[i] > other.ids[j]) j++;
+                else result.add(ids[i], scores[i++] + other.scores[j++]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package be.ap.festival.service.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of store mutations, split into segments named after the first version they may contain.
+ * Every record is framed as {@code [length][crc32][payload]}; a record that was only partly written when the
+ * process died fails its length or checksum and is cut off on the next {@link #replay}.
+ * <p>
+ * Not thread-safe: {@link StorePersistence} drives it from a single writer thread. Only
+ * {@link #deleteSegmentsBefore} may run elsewhere, for segments the writer has moved past.
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long segmentStart = -1;
+
+    WriteAheadLog(Path directory) {
+        this.directory = directory;
+    }
+
+    // Closes the current segment and starts one whose records all have a version >= firstVersion
+    void roll(long firstVersion) throws IOException {
+        if (channel != null && segmentStart == firstVersion) return;
+        sync();
+        if (channel != null) channel.close();
+        channel = FileChannel.open(segment(firstVersion), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segmentStart = firstVersion;
+    }
+
+    // Buffers a record; nothing reaches the file before the next sync()
+    void append(byte[] payload) throws IOException {
+        crc.reset();
+        crc.update(payload);
+        pendingOut.writeInt(payload.length);
+        pendingOut.writeInt((int) crc.getValue());
+        pendingOut.write(payload);
+    }
+
+    // One write and one fsync for everything appended since the last call: the group commit
+    void sync() throws IOException {
+        if (pending.size() == 0) return;
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        while (buffer.hasRemaining()) channel.write(buffer);
+        channel.force(false);
+        pending.reset();
+    }
+
+    // Segments that start before firstVersion; once a snapshot of firstVersion - 1 is written they are covered by it
+    static void deleteSegmentsBefore(Path directory, long firstVersion) throws IOException {
+        for (Path path : segments(directory)) {
+            if (startOf(path) < firstVersion) Files.deleteIfExists(path);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        if (channel != null) channel.close();
+        channel = null;
+    }
+
+    /**
+     * Feeds every intact record of every segment, oldest first, to the consumer. A torn or corrupt record at
+     * the end of the last segment is what a crash mid-write leaves behind: the segment is truncated right
+     * before it, so new segments never follow garbage. Anywhere else it means records were lost, so replay
+     * fails rather than skipping the segments after it.
+     */
+    static void replay(Path directory, Consumer<byte[]> records) throws IOException {
+        List<Path> segments = segments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer data = ByteBuffer.allocate((int) ch.size());
+                while (data.hasRemaining() && ch.read(data) >= 0) {
+                    // read until the buffer is full
+                }
+                data.flip();
+                CRC32 crc = new CRC32();
+                while (data.hasRemaining()) {
+                    int start = data.position();
+                    byte[] payload = null;
+                    if (data.remaining() >= HEADER_BYTES) {
+                        int length = data.getInt();
+                        int checksum = data.getInt();
+                        if (length >= 0 && length <= data.remaining()) {
+                            payload = new byte[length];
+                            data.get(payload);
+                            crc.reset();
+                            crc.update(payload);
+                            if ((int) crc.getValue() != checksum) payload = null;
+                        }
+                    }
+                    if (payload == null) {
+                        if (i < segments.size() - 1) {
+                            throw new IOException("Corrupt record at byte " + start + " of " + path + ", which is followed by "
+                                    + (segments.size() - 1 - i) + " more segment(s); refusing to drop them");
+                        }
+                        log.warn("Truncating {} at byte {} of {}: incomplete or corrupt record", path, start, ch.size());
+                        ch.truncate(start);
+                        ch.force(true);
+                        return;
+                    }
+                    records.accept(payload);
+                }
+            }
+        }
+    }
+
+    private Path segment(long firstVersion) {
+        return directory.resolve(String.format("%s%019d%s", PREFIX, firstVersion, SUFFIX));
+    }
+
+    private static List<Path> segments(Path directory) throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().startsWith(PREFIX) && p.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .forEach(result::add);
+        }
+        return result;
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
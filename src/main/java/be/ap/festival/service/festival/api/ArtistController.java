@@ -1,32 +1,54 @@
 package be.ap.festival.service.festival.api;
 
 import be.ap.festival.service.Artist;
-import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.data.ArtistQuery;
+import be.ap.festival.service.data.Page;
+import be.ap.festival.service.festival.asset.AssetCache;
+import be.ap.festival.service.festival.repo.ArtistRepository;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.servlet.view.RedirectView;
 
+import java.io.IOException;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/artists")
 public class ArtistController {
 
-    private final FestivalDataStore dataStore;
+    private final ArtistRepository artists;
+    private final ResponseCache responseCache;
+    private final AssetCache assets;
 
-    public ArtistController(FestivalDataStore dataStore) {
-        this.dataStore = dataStore;
+    public ArtistController(ArtistRepository artists, ResponseCache responseCache, ObjectProvider<AssetCache> assets) {
+        this.artists = artists;
+        this.responseCache = responseCache;
+        this.assets = assets.getIfAvailable();
     }
 
     @GetMapping
-    public List<Artist> findAll() {
-        return dataStore.getArtists();
+    public ResponseEntity<?> findAll(@RequestHeader HttpHeaders headers,
+                                     @RequestParam(required = false) Long after,
+                                     @RequestParam(required = false) Integer limit,
+                                     @RequestParam(required = false) String fields,
+                                     @RequestParam(required = false) String genre,
+                                     @RequestParam(required = false) String name) {
+        if (after == null && limit == null && fields == null && genre == null && name == null) {
+            // Plain listing: served from the pre-serialized cache while the catalog version is unchanged
+            return responseCache.serve(ResponseCache.ARTISTS, artists::getArtists, headers);
+        }
+        Page<Artist> page = artists.findArtists(new ArtistQuery(after, Paging.limit(limit), genre, name));
+        return Paging.respond(page, FieldProjection.ARTIST.apply(page.items(), fields));
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Artist> findById(@PathVariable Long id) {
-        return dataStore.getArtist(id)
+        return artists.getArtist(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -35,12 +57,12 @@ public class ArtistController {
     @ResponseStatus(HttpStatus.CREATED)
     public Artist create(@RequestBody Artist artist) {
         artist.setId(null);
-        return dataStore.createArtist(artist);
+        return artists.createArtist(artist);
     }
 
     @PutMapping("/{id}")
     public ResponseEntity<Artist> update(@PathVariable Long id, @RequestBody Artist updated) {
-        return dataStore.updateArtist(id, updated)
+        return artists.updateArtist(id, updated)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -48,21 +70,23 @@ public class ArtistController {
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void delete(@PathVariable Long id) {
-        dataStore.deleteArtist(id);
+        artists.deleteArtist(id);
     }
 
-    // Extra: show or redirect to artist photo
-    @GetMapping("/{id}/photo")
-    public ResponseEntity<?> getPhoto(@PathVariable Long id) {
-        return dataStore.getArtist(id)
-                .map(artist -> {
-                    String url = artist.getPhotoUrl();
-                    if (url == null || url.isBlank()) {
-                        return ResponseEntity.noContent().build();
-                    }
-                    RedirectView redirect = new RedirectView(url);
-                    return new ResponseEntity<>(redirect, HttpStatus.SEE_OTHER);
-                })
+    // Festivals the artist plays, answered from the reverse lineup index
+    @GetMapping("/{id}/festivals")
+    public ResponseEntity<List<Festival>> findFestivals(@PathVariable Long id) {
+        return artists.getFestivalsOfArtist(id)
+                .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
-}
\ No newline at end of file
+
+    // The artist's photo, or with festival.assets.enabled a cached copy (?size=thumb|medium for a scaled one)
+    @GetMapping("/{id}/photo")
+    public ResponseEntity<?> getPhoto(@PathVariable Long id, @RequestParam(required = false) String size,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Artist artist = artists.getArtist(id).orElse(null);
+        if (artist == null) return ResponseEntity.notFound().build();
+        return PhotoResponses.serve(artist.getPhotoUrl(), size, assets, request, response);
+    }
+}
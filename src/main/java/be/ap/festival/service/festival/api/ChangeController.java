@@ -0,0 +1,49 @@
+package be.ap.festival.service.festival.api;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * Server-Sent Events feed of store changes. Every event id is a store version, so a reconnecting
+ * {@code EventSource} resumes through {@code Last-Event-ID}; {@code ?since=<version>} does the same explicitly.
+ */
+@Profile("!h2")
+@RestController
+@RequestMapping("/api/changes")
+public class ChangeController {
+
+    private final ChangeFeed changeFeed;
+
+    public ChangeController(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public void changes(@RequestParam(required = false) Long since,
+                        @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Long from = since;
+        if (from == null && lastEventId != null) {
+            try {
+                from = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Last-Event-ID must be a store version");
+            }
+        }
+        if (from != null && from < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Version must not be negative");
+        }
+        changeFeed.subscribe(from, request, response);
+    }
+}
@@ -0,0 +1,380 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.data.ChangeLog;
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.StoreChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fans store changes out to Server-Sent Events subscribers. Subscribers do not get their own copy of each
+ * event: every one of them is a cursor into the {@link ChangeLog}, so a write costs the same no matter how many
+ * clients listen. A dispatcher thread wakes up on every change and hands subscribers that are behind to a
+ * small pool of sender threads.
+ * <p>
+ * Responses are written with non-blocking servlet IO, so a client that stops reading never holds a sender
+ * thread: events wait in a per-subscriber buffer of about {@code buffer-size} bytes and go out when the
+ * container says the connection can take more. A live subscriber is disconnected when its buffer is full
+ * and more changes are waiting, when it falls more than {@code max-lag} versions behind, or when its
+ * connection has not taken any bytes for {@code write-timeout}. Like any client it can reconnect with
+ * {@code Last-Event-ID} and resume, or is told to {@code reset} when the changes it missed are no longer
+ * retained.
+ */
+@Component
+@Profile("!h2")
+public class ChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeFeed.class);
+    private static final int BATCH = 256;
+    private static final byte[] HEARTBEAT = ":heartbeat\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // Payload of a "change" event; the event id is the version
+    record ChangeEvent(long version, StoreChange.Type type, Set<Long> festivalIds, Set<Long> artistIds) {
+    }
+
+    // Payload of "ready" (the feed starts at this version) and "reset" (refetch everything as of this version)
+    record VersionEvent(long version) {
+    }
+
+    enum Disconnect {
+        // Further behind than max-lag versions
+        SLOW,
+        // A full buffer and more changes to send
+        BUFFER_FULL,
+        // The connection took no bytes for write-timeout
+        WRITE_TIMEOUT
+    }
+
+    private final ChangeLog changeLog;
+    private final JsonMapper mapper;
+    private final long timeoutMillis;
+    private final int maxLag;
+    private final long bufferSize;
+    private final long writeTimeoutNanos;
+    private final long heartbeatNanos;
+    private final Map<Subscriber, Boolean> subscribers = new ConcurrentHashMap<>();
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final ExecutorService senders;
+    private final Thread dispatcher;
+    private final Map<Disconnect, Counter> disconnected = new EnumMap<>(Disconnect.class);
+    private volatile boolean stopped;
+
+    public ChangeFeed(FestivalDataStore store, ChangeLog changeLog, JsonMapper mapper, MeterRegistry meters,
+                      @Value("${festival.change-feed.timeout:30m}") Duration timeout,
+                      @Value("${festival.change-feed.max-lag:1000}") int maxLag,
+                      @Value("${festival.change-feed.buffer-size:64KB}") DataSize bufferSize,
+                      @Value("${festival.change-feed.write-timeout:10s}") Duration writeTimeout,
+                      @Value("${festival.change-feed.heartbeat:15s}") Duration heartbeat,
+                      @Value("${festival.change-feed.senders:4}") int senders) {
+        this.changeLog = changeLog;
+        this.mapper = mapper;
+        this.timeoutMillis = timeout.toMillis();
+        this.maxLag = maxLag;
+        this.bufferSize = bufferSize.toBytes();
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+        this.heartbeatNanos = heartbeat.toNanos();
+        AtomicInteger threads = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senders, r -> {
+            Thread t = new Thread(r, "change-feed-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Gauge.builder("festival.changes.subscribers", subscribers, Map::size).register(meters);
+        for (Disconnect reason : Disconnect.values()) {
+            disconnected.put(reason, Counter.builder("festival.changes.disconnected")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(meters));
+        }
+        // Only a wake-up under the store's write lock; the fan-out happens on the dispatcher thread
+        store.addListener((change, snapshot) -> wakeUp.release());
+        this.dispatcher = new Thread(this::dispatch, "change-feed");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Opens a feed on the request, which is put in async mode. Without {@code since} it starts at the current
+     * version (announced in a "ready" event); otherwise every change after {@code since} is replayed first.
+     */
+    public void subscribe(Long since, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        AsyncContext async = request.startAsync(request, response);
+        async.setTimeout(timeoutMillis);
+        long start = since != null ? since : changeLog.latestVersion();
+        Subscriber subscriber = new Subscriber(async, response.getOutputStream(), start, since == null);
+        async.addListener(subscriber);
+        subscribers.put(subscriber, Boolean.TRUE);
+        // The container calls onWritePossible once the request thread is done, which sends the first events
+        subscriber.out.setWriteListener(subscriber);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        dispatcher.interrupt();
+        senders.shutdownNow();
+        subscribers.keySet().forEach(Subscriber::close);
+    }
+
+    private void dispatch() {
+        // Often enough to notice a stalled connection well within the write timeout
+        long tick = Math.min(heartbeatNanos, Math.max(writeTimeoutNanos / 4, TimeUnit.MILLISECONDS.toNanos(10)));
+        while (!stopped) {
+            try {
+                // Changes arrive as permits; a quiet period doubles as the heartbeat and write timeout tick
+                if (wakeUp.tryAcquire(tick, TimeUnit.NANOSECONDS)) wakeUp.drainPermits();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (Subscriber subscriber : subscribers.keySet()) {
+                long blockedSince = subscriber.blockedSince;
+                if (blockedSince != 0 && now - blockedSince > writeTimeoutNanos) {
+                    subscriber.disconnect(Disconnect.WRITE_TIMEOUT);
+                } else {
+                    subscriber.schedule();
+                }
+            }
+        }
+    }
+
+    private final class Subscriber implements WriteListener, AsyncListener {
+        private final AsyncContext async;
+        private final ServletOutputStream out;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Guards everything below but blockedSince; held by one sender or the container at a time
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private long pendingBytes;
+        // Last version put in the buffer
+        private long cursor;
+        private boolean announce;
+        // Caught up once; only then do the lag and buffer limits apply, a replay may take its time
+        private boolean live;
+        // The container has called onWritePossible, so the response may be written to
+        private boolean started;
+        private boolean closed;
+        private long lastSent = System.nanoTime();
+        // When the connection last refused bytes; 0 while it takes them
+        private volatile long blockedSince;
+
+        Subscriber(AsyncContext async, ServletOutputStream out, long cursor, boolean announce) {
+            this.async = async;
+            this.out = out;
+            this.cursor = cursor;
+            this.announce = announce;
+            this.live = announce;
+        }
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::deliver);
+                } catch (RuntimeException e) {
+                    scheduled.set(false); // shutting down
+                }
+            }
+        }
+
+        private void deliver() {
+            boolean behind = false;
+            lock.lock();
+            try {
+                if (started && !closed) pump();
+            } finally {
+                // Cleared before the last check: a change after it schedules again, one before it is seen here
+                scheduled.set(false);
+                try {
+                    behind = started && !closed && blockedSince == 0 && cursor < changeLog.latestVersion();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (behind) schedule();
+        }
+
+        @Override
+        public void onWritePossible() {
+            lock.lock();
+            try {
+                if (closed) return;
+                started = true;
+                pump();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Fills the buffer from the change log and writes out as much as the connection takes; caller holds the lock
+        private void pump() {
+            try {
+                while (true) {
+                    long latest = changeLog.latestVersion();
+                    if (announce) {
+                        append(event("ready", cursor, new VersionEvent(cursor)));
+                        announce = false;
+                    }
+                    while (cursor < latest && pendingBytes < bufferSize) {
+                        Optional<List<StoreChange>> changes = changeLog.after(cursor, BATCH);
+                        if (changes.isEmpty()) {
+                            // What the client missed is gone (catalog reload or too far back): it has to start over
+                            append(event("reset", latest, new VersionEvent(latest)));
+                            cursor = latest;
+                        } else {
+                            if (live && latest - cursor > maxLag) {
+                                disconnect(Disconnect.SLOW);
+                                return;
+                            }
+                            for (StoreChange c : changes.get()) {
+                                // The bound holds within a batch too, or a late sender would take a whole batch in
+                                if (pendingBytes >= bufferSize) break;
+                                append(event("change", c.version(),
+                                        new ChangeEvent(c.version(), c.type(), c.festivalIds(), c.artistIds())));
+                                cursor = c.version();
+                            }
+                        }
+                    }
+                    if (cursor >= latest) live = true;
+                    if (pending.isEmpty() && System.nanoTime() - lastSent >= heartbeatNanos) append(HEARTBEAT);
+                    if (!flush()) {
+                        // Meanwhile the buffer takes what arrived since; only a full one with more waiting ends the feed
+                        if (pendingBytes < bufferSize && cursor < changeLog.latestVersion()) continue;
+                        if (live && pendingBytes >= bufferSize && cursor < changeLog.latestVersion()) {
+                            disconnect(Disconnect.BUFFER_FULL);
+                        }
+                        // The container calls onWritePossible once the connection takes more
+                        return;
+                    }
+                    if (cursor >= changeLog.latestVersion()) return;
+                }
+            } catch (IOException | RuntimeException e) {
+                onError(e);
+            }
+        }
+
+        // True once everything buffered has been handed to the connection
+        private boolean flush() throws IOException {
+            boolean wrote = false;
+            while (true) {
+                if (!out.isReady()) {
+                    if (blockedSince == 0) blockedSince = System.nanoTime();
+                    return false;
+                }
+                byte[] next = pending.poll();
+                if (next == null) break;
+                out.write(next);
+                pendingBytes -= next.length;
+                wrote = true;
+            }
+            if (wrote) {
+                out.flush();
+                lastSent = System.nanoTime();
+                if (!out.isReady()) {
+                    blockedSince = lastSent;
+                    return false;
+                }
+            }
+            blockedSince = 0;
+            return true;
+        }
+
+        private void append(byte[] event) {
+            pending.add(event);
+            pendingBytes += event.length;
+            lastSent = System.nanoTime();
+        }
+
+        private byte[] event(String name, long id, Object data) {
+            return ("event:" + name + "\nid:" + id + "\ndata:" + mapper.writeValueAsString(data) + "\n\n")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        void disconnect(Disconnect reason) {
+            if (close()) disconnected.get(reason).increment();
+        }
+
+        // True if this call closed the feed
+        boolean close() {
+            lock.lock();
+            try {
+                if (closed) return false;
+                closed = true;
+                pending.clear();
+            } finally {
+                lock.unlock();
+            }
+            subscribers.remove(this);
+            try {
+                async.complete();
+            } catch (IllegalStateException e) {
+                // Completed by the container already
+            }
+            return true;
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            // Mostly clients that went away
+            log.debug("Change feed subscriber failed", t);
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            subscribers.remove(this);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            onError(event.getThrowable());
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.data.ChangeLog;
+import be.ap.festival.service.data.EntityTable;
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.StoreSnapshot;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the catalog as NDJSON, one entity per line, straight from a store snapshot: nothing is collected
+ * or rendered up front, and a slow reader simply blocks the writing thread once the response buffer is full.
+ * The first line carries the store version the export reflects; {@code ?since=<version>} then streams only
+ * the artists and festivals changed after that version, with deletions as {@code "deleted": true} lines.
+ */
+@Profile("!h2")
+@RestController
+@RequestMapping("/api/export")
+public class ExportController {
+
+    private final FestivalDataStore dataStore;
+    private final ChangeLog changeLog;
+    private final JsonMapper mapper;
+
+    public ExportController(FestivalDataStore dataStore, ChangeLog changeLog, JsonMapper mapper) {
+        this.dataStore = dataStore;
+        this.changeLog = changeLog;
+        this.mapper = mapper;
+    }
+
+    @GetMapping
+    public void export(@RequestParam(required = false) Long since, @RequestHeader HttpHeaders headers,
+                       HttpServletResponse response) throws IOException {
+        ChangeLog.Changes changes = null;
+        if (since != null) {
+            changes = changeLog.since(since).orElseThrow(() -> new ResponseStatusException(HttpStatus.GONE,
+                    "Changes since version " + since + " are not available; export without 'since'"));
+        }
+        boolean gzip = ResponseCache.acceptsGzip(headers);
+        response.setContentType(FestivalController.NDJSON);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+        // Lines are separated by the explicit newlines, not by Jackson's root value separator
+        try (JsonGenerator gen = mapper.writer().withRootValueSeparator((String) null).createGenerator(out)) {
+            if (changes == null) {
+                StoreSnapshot snapshot = dataStore.snapshot();
+                writeVersion(gen, snapshot.version(), null);
+                writeAll(gen, "artist", snapshot.artists());
+                writeAll(gen, "festival", snapshot.festivals());
+            } else {
+                writeVersion(gen, changes.version(), changes.since());
+                writeChanged(gen, "artist", changes.snapshot().artists(), changes.artistIds());
+                writeChanged(gen, "festival", changes.snapshot().festivals(), changes.festivalIds());
+            }
+        }
+    }
+
+    private static void writeVersion(JsonGenerator gen, long version, Long since) {
+        gen.writeStartObject();
+        gen.writeStringProperty("type", "version");
+        gen.writeNumberProperty("version", version);
+        if (since != null) gen.writeNumberProperty("since", since);
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+    }
+
+    // Lazily loaded entities are built for the line and not kept, so an export does not grow the heap
+    private static void writeAll(JsonGenerator gen, String type, EntityTable<?> table) {
+        for (int i = 0; i < table.size(); i++) {
+            writeEntity(gen, type, table.idAt(i), table.peekAt(i));
+        }
+    }
+
+    private static void writeChanged(JsonGenerator gen, String type, EntityTable<?> table, Set<Long> ids) {
+        for (Long id : ids) {
+            Object entity = table.get(id);
+            if (entity != null) {
+                writeEntity(gen, type, id, entity);
+            } else {
+                gen.writeStartObject();
+                gen.writeStringProperty("type", type);
+                gen.writeNumberProperty("id", id);
+                gen.writeBooleanProperty("deleted", true);
+                gen.writeEndObject();
+                gen.writeRaw('\n');
+            }
+        }
+    }
+
+    private static void writeEntity(JsonGenerator gen, String type, long id, Object entity) {
+        gen.writeStartObject();
+        gen.writeStringProperty("type", type);
+        gen.writeNumberProperty("id", id);
+        gen.writePOJOProperty("data", entity);
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+    }
+}
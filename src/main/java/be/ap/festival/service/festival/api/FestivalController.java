@@ -1,32 +1,81 @@
 package be.ap.festival.service.festival.api;
 
-import be.ap.festival.service.Artist;
 import be.ap.festival.service.Festival;
-import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.BulkResult;
+import be.ap.festival.service.data.FestivalQuery;
+import be.ap.festival.service.data.Mutation;
+import be.ap.festival.service.data.Page;
+import be.ap.festival.service.festival.asset.AssetCache;
+import be.ap.festival.service.festival.repo.FestivalRepository;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.json.JsonMapper;
 
-import java.util.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/festivals")
 public class FestivalController {
 
-    private final FestivalDataStore dataStore;
+    static final String NDJSON = "application/x-ndjson";
 
-    public FestivalController(FestivalDataStore dataStore) {
-        this.dataStore = dataStore;
+    private final FestivalRepository festivals;
+    private final ResponseCache responseCache;
+    private final JsonMapper mapper;
+    private final int maxBulkOperations;
+    private final AssetCache assets;
+
+    public FestivalController(FestivalRepository festivals, ResponseCache responseCache, JsonMapper mapper,
+                              @Value("${festival.bulk.max-operations:10000}") int maxBulkOperations,
+                              ObjectProvider<AssetCache> assets) {
+        this.festivals = festivals;
+        this.responseCache = responseCache;
+        this.mapper = mapper;
+        this.maxBulkOperations = maxBulkOperations;
+        this.assets = assets.getIfAvailable();
     }
 
     @GetMapping
-    public List<Festival> findAll() {
-        return dataStore.getFestivals();
+    public ResponseEntity<?> findAll(@RequestHeader HttpHeaders headers,
+                                     @RequestParam(required = false) Long after,
+                                     @RequestParam(required = false) Integer limit,
+                                     @RequestParam(required = false) String fields,
+                                     @RequestParam(required = false) String place,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                     @RequestParam(required = false) BigDecimal minPrice,
+                                     @RequestParam(required = false) BigDecimal maxPrice,
+                                     @RequestParam(required = false) String genre) {
+        if (after == null && limit == null && fields == null && place == null && from == null && to == null
+                && minPrice == null && maxPrice == null && genre == null) {
+            // Plain listing: served from the pre-serialized cache while the catalog version is unchanged
+            return responseCache.serve(ResponseCache.FESTIVALS, festivals::getFestivals, headers);
+        }
+        Page<Festival> page = festivals.findFestivals(
+                new FestivalQuery(after, Paging.limit(limit), place, from, to, minPrice, maxPrice, genre));
+        return Paging.respond(page, FieldProjection.FESTIVAL.apply(page.items(), fields));
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Festival> findById(@PathVariable Long id) {
-        return dataStore.getFestival(id)
+        return festivals.getFestival(id)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -35,12 +84,12 @@ public class FestivalController {
     @ResponseStatus(HttpStatus.CREATED)
     public Festival create(@RequestBody Festival festival) {
         festival.setId(null);
-        return dataStore.createFestival(festival);
+        return festivals.createFestival(festival);
     }
 
     @PutMapping("/{id}")
     public ResponseEntity<Festival> update(@PathVariable Long id, @RequestBody Festival updated) {
-        return dataStore.updateFestival(id, updated)
+        return festivals.updateFestival(id, updated)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -48,42 +97,87 @@ public class FestivalController {
     @DeleteMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public void delete(@PathVariable Long id) {
-        dataStore.deleteFestival(id);
+        festivals.deleteFestival(id);
+    }
+
+    // Bulk writes: festival, artist, photo and lineup operations (see Mutation; creates need no id), applied
+    // as one batch with one result per operation. The body is a JSON array or NDJSON, one operation per line,
+    // and is parsed while it streams in.
+    @PostMapping(path = "/_bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public BulkResult bulk(InputStream body) {
+        List<Mutation> operations = new ArrayList<>();
+        try (MappingIterator<Mutation> items = mapper.readerFor(Mutation.class)
+                .without(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES)
+                .readValues(body)) {
+            while (items.hasNext()) {
+                operations.add(items.next());
+                checkBulkSize(operations.size());
+            }
+        } catch (JacksonException e) {
+            String line = e.getLocation() != null ? " on line " + e.getLocation().getLineNr() : "";
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid operation" + line + ": " + e.getOriginalMessage());
+        }
+        return festivals.bulk(operations);
+    }
+
+    private void checkBulkSize(int operations) {
+        if (operations > maxBulkOperations) {
+            throw new ResponseStatusException(HttpStatus.CONTENT_TOO_LARGE, "At most " + maxBulkOperations + " operations per request");
+        }
     }
 
     // Photos helpers
     @PostMapping("/{id}/photos")
     public ResponseEntity<Festival> addPhoto(@PathVariable Long id, @RequestBody String photoUrl) {
-        return dataStore.addPhoto(id, photoUrl)
+        return festivals.addPhoto(id, photoUrl)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // The index-th photo (from 0), served like an artist photo (see ArtistController.getPhoto)
+    @GetMapping("/{id}/photos/{index}")
+    public ResponseEntity<?> getPhoto(@PathVariable Long id, @PathVariable int index,
+                                      @RequestParam(required = false) String size,
+                                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Festival festival = festivals.getFestival(id).orElse(null);
+        if (festival == null || index < 0 || index >= festival.getPhotos().size()) return ResponseEntity.notFound().build();
+        return PhotoResponses.serve(festival.getPhotos().get(index), size, assets, request, response);
+    }
+
     @DeleteMapping("/{id}/photos")
     public ResponseEntity<Festival> removePhoto(@PathVariable Long id, @RequestParam String url) {
-        return dataStore.removePhoto(id, url)
+        return festivals.removePhoto(id, url)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     // Line-up management
     @GetMapping("/{id}/lineup")
-    public ResponseEntity<Set<Artist>> getLineup(@PathVariable Long id) {
-        return dataStore.getFestival(id)
-                .map(f -> ResponseEntity.ok(f.getLineup()))
+    public ResponseEntity<byte[]> getLineup(@PathVariable Long id, @RequestHeader HttpHeaders headers) {
+        // Looked up inside the render, so the lineup is the one of the version it is cached under
+        return responseCache.serveIfPresent(ResponseCache.lineupKey(id),
+                () -> festivals.getFestival(id).map(Festival::getLineup), headers);
+    }
+
+    // Replaces the whole lineup with the given artist ids; the lineup comes back ordered by artist id, not in
+    // the order given
+    @PutMapping("/{id}/lineup")
+    public ResponseEntity<Festival> replaceLineup(@PathVariable Long id, @RequestBody List<Long> artistIds) {
+        return festivals.replaceLineup(id, artistIds)
+                .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping("/{festivalId}/lineup/{artistId}")
     public ResponseEntity<Festival> addArtist(@PathVariable Long festivalId, @PathVariable Long artistId) {
-        return dataStore.addArtistToFestival(festivalId, artistId)
+        return festivals.addArtistToFestival(festivalId, artistId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{festivalId}/lineup/{artistId}")
     public ResponseEntity<Festival> removeArtist(@PathVariable Long festivalId, @PathVariable Long artistId) {
-        return dataStore.removeArtistFromFestival(festivalId, artistId)
+        return festivals.removeArtistFromFestival(festivalId, artistId)
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
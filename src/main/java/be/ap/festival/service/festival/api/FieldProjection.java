@@ -0,0 +1,62 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Sparse fieldsets (?fields=id,name,date): renders only the requested properties, in the requested order
+final class FieldProjection<T> {
+
+    static final FieldProjection<Festival> FESTIVAL = new FieldProjection<Festival>()
+            .field("id", Festival::getId)
+            .field("name", Festival::getName)
+            .field("place", Festival::getPlace)
+            .field("date", Festival::getDate)
+            .field("price", Festival::getPrice)
+            .field("photos", Festival::getPhotos)
+            .field("lineup", Festival::getLineup);
+
+    static final FieldProjection<Artist> ARTIST = new FieldProjection<Artist>()
+            .field("id", Artist::getId)
+            .field("name", Artist::getName)
+            .field("photoUrl", Artist::getPhotoUrl)
+            .field("genre", Artist::getGenre);
+
+    private final Map<String, Function<T, Object>> accessors = new LinkedHashMap<>();
+
+    private FieldProjection<T> field(String name, Function<T, Object> accessor) {
+        accessors.put(name, accessor);
+        return this;
+    }
+
+    // Without a fields parameter the entities are returned untouched
+    List<?> apply(List<T> items, String fields) {
+        if (fields == null || fields.isBlank()) return items;
+        List<Map.Entry<String, Function<T, Object>>> selected = new ArrayList<>();
+        for (String name : fields.split(",")) {
+            String field = name.trim();
+            if (field.isEmpty()) continue;
+            Function<T, Object> accessor = accessors.get(field);
+            if (accessor == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown field '" + field + "'");
+            }
+            selected.add(Map.entry(field, accessor));
+        }
+        List<Map<String, Object>> projected = new ArrayList<>(items.size());
+        for (T item : items) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (Map.Entry<String, Function<T, Object>> e : selected) {
+                row.put(e.getKey(), e.getValue().apply(item));
+            }
+            projected.add(row);
+        }
+        return projected;
+    }
+}
@@ -0,0 +1,40 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.data.Page;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.util.List;
+
+// Shared keyset paging rules: bounded page sizes and a Link: rel="next" header carrying the next cursor
+final class Paging {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private Paging() {
+    }
+
+    static int limit(Integer requested) {
+        if (requested == null) return DEFAULT_LIMIT;
+        if (requested <= 0 || requested > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + MAX_LIMIT);
+        }
+        return requested;
+    }
+
+    static ResponseEntity<List<?>> respond(Page<?> page, List<?> body) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextAfter() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.nextAfter())
+                    .build()
+                    .toUriString();
+            response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(body);
+    }
+}
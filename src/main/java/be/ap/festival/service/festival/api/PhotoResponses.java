@@ -0,0 +1,113 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.festival.asset.AssetCache;
+import be.ap.festival.service.festival.asset.AssetVariant;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Answers the photo endpoints. Without an {@link AssetCache} (festival.assets.enabled) the client is sent to
+ * the photo URL itself; with one the requested variant is served from the cache, with a strong ETag and a
+ * long max-age. Files on disk go out through Tomcat's sendfile where the connector offers it, and otherwise
+ * through {@link FileChannel#transferTo}, so their bytes are not copied through the heap.
+ */
+final class PhotoResponses {
+
+    // Request attributes of Tomcat's sendfile support (see org.apache.coyote.Constants)
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private PhotoResponses() {
+    }
+
+    // Null once the photo has been written to the response itself
+    static ResponseEntity<?> serve(String url, String size, AssetCache assets,
+                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (url == null || url.isBlank()) return ResponseEntity.noContent().build();
+        AssetVariant variant;
+        try {
+            variant = AssetVariant.parse(size);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        if (assets == null) return ResponseEntity.status(HttpStatus.SEE_OTHER).header(HttpHeaders.LOCATION, url).build();
+
+        // A second attempt if the file is evicted between the lookup and opening it
+        for (int attempt = 0; ; attempt++) {
+            AssetCache.Asset asset;
+            try {
+                asset = assets.get(url, variant);
+            } catch (FileNotFoundException e) {
+                return ResponseEntity.notFound().build();
+            } catch (IOException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Photo not available: " + e.getMessage(), e);
+            }
+            String etag = "\"" + asset.key() + "\"";
+            response.setHeader(HttpHeaders.ETAG, etag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "public, max-age=" + assets.maxAge().toSeconds());
+            if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+                response.setStatus(HttpStatus.NOT_MODIFIED.value());
+                return null;
+            }
+            try {
+                write(asset, request, response);
+                return null;
+            } catch (NoSuchFileException e) {
+                if (attempt > 0) throw e;
+            }
+        }
+    }
+
+    private static void write(AssetCache.Asset asset, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType(asset.contentType());
+        response.setContentLengthLong(asset.size());
+        if (asset.bytes() != null) {
+            response.getOutputStream().write(asset.bytes());
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat streams the file once the response is committed
+            request.setAttribute(SENDFILE_FILENAME, asset.file().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, asset.size());
+            return;
+        }
+        try (FileChannel file = FileChannel.open(asset.file(), StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel channel = Channels.newChannel(out);
+            long position = 0;
+            while (position < asset.size()) {
+                long sent = file.transferTo(position, asset.size() - position, channel);
+                if (sent <= 0) break;
+                position += sent;
+            }
+            out.flush();
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
+    }
+}
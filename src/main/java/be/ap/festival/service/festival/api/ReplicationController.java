@@ -0,0 +1,49 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.data.ReplicationLeader;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+
+/**
+ * What followers read from the leader: a snapshot, then the mutation log after its version. A 410 on the log
+ * tells the follower to copy a snapshot again.
+ */
+@RestController
+@RequestMapping("/api/replication")
+@ConditionalOnProperty(name = "festival.replication.role", havingValue = "leader")
+@Profile("!h2")
+public class ReplicationController {
+
+    private final ReplicationLeader leader;
+
+    public ReplicationController(ReplicationLeader leader) {
+        this.leader = leader;
+    }
+
+    @GetMapping("/snapshot")
+    public void snapshot(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        leader.writeSnapshot(response.getOutputStream());
+    }
+
+    @GetMapping("/log")
+    public void log(@RequestParam long after, HttpServletResponse response) throws IOException {
+        if (after < 0) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "after must not be negative");
+        if (!leader.canFollow(after)) {
+            throw new ResponseStatusException(HttpStatus.GONE, "The log after version " + after + " is not available; copy a snapshot");
+        }
+        response.setContentType(FestivalController.NDJSON);
+        response.flushBuffer();
+        leader.stream(after, response.getOutputStream());
+    }
+}
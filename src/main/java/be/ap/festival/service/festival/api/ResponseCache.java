@@ -0,0 +1,225 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.festival.repo.StorageEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the serialized JSON (and lazily a gzip'ed copy) of hot read resources, so a cache hit is a plain
+ * byte copy. Each entry remembers the {@linkplain StorageEngine#version() catalog version} it was rendered at
+ * and is only served while the engine is still at that version, so it works the same for every engine.
+ * Concurrent misses of one resource at one version render it once and share the result.
+ */
+@Component
+public class ResponseCache {
+
+    static final String FESTIVALS = "festivals";
+    static final String ARTISTS = "artists";
+    private static final String LINEUP_PREFIX = "lineup:";
+
+    private final StorageEngine engine;
+    private final JsonMapper mapper;
+    private final int gzipMinBytes;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Render, CompletableFuture<Entry>> rendering = new ConcurrentHashMap<>();
+    private final ObservationRegistry observations;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter shared;
+
+    public ResponseCache(StorageEngine engine, JsonMapper mapper,
+                         @Value("${festival.response-cache.gzip-min-bytes:1024}") int gzipMinBytes,
+                         @Value("${festival.response-cache.max-entries:10000}") int maxEntries,
+                         MeterRegistry meters, ObservationRegistry observations) {
+        this.engine = engine;
+        this.mapper = mapper;
+        this.gzipMinBytes = gzipMinBytes;
+        this.maxEntries = maxEntries;
+        this.observations = observations;
+        this.hits = Counter.builder("festival.response.cache").tag("result", "hit").register(meters);
+        this.misses = Counter.builder("festival.response.cache").tag("result", "miss").register(meters);
+        this.shared = Counter.builder("festival.response.cache").tag("result", "shared").register(meters);
+        Gauge.builder("festival.response.cache.entries", entries, Map::size).register(meters);
+    }
+
+    static String lineupKey(Long festivalId) { return LINEUP_PREFIX + festivalId; }
+
+    public ResponseEntity<byte[]> serve(String key, Supplier<?> body, HttpHeaders requestHeaders) {
+        return serveIfPresent(key, () -> Optional.of(body.get()), requestHeaders);
+    }
+
+    /**
+     * Like {@link #serve}, for a resource that may not exist: an empty body is a 404, cached like any other
+     * answer. The body must be read inside the supplier, so it is read at the version it is cached under.
+     */
+    public ResponseEntity<byte[]> serveIfPresent(String key, Supplier<? extends Optional<?>> body,
+                                                 HttpHeaders requestHeaders) {
+        long version = engine.version();
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version) {
+            entry = render(key, version, body);
+        } else {
+            hits.increment();
+        }
+        if (entry.json == null) return ResponseEntity.notFound().build();
+
+        // Each encoding is a distinct representation and gets its own strong ETag
+        boolean gzip = entry.json.length >= gzipMinBytes && acceptsGzip(requestHeaders);
+        String etag = gzip ? entry.gzipEtag : entry.etag;
+        if (matches(requestHeaders.getIfNoneMatch(), entry)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(entry.gzip());
+        }
+        return response.body(entry.json);
+    }
+
+    // Only the first miss renders; the others at the same version wait for its entry instead of rendering again
+    private Entry render(String key, long version, Supplier<? extends Optional<?>> body) {
+        Render render = new Render(key, version);
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = rendering.putIfAbsent(render, mine);
+        if (running != null) {
+            shared.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                throw e;
+            }
+        }
+        misses.increment();
+        try {
+            // Its own span, so serialization time is not attributed to the store
+            byte[] json = Observation.createNotStarted("festival.response.render", observations)
+                    .lowCardinalityKeyValue("resource", key.startsWith(LINEUP_PREFIX) ? "lineup" : key)
+                    .observe(() -> body.get().map(mapper::writeValueAsBytes).orElse(null));
+            Entry entry = new Entry(version, json);
+            // A write that committed while rendering may or may not be in the body, so it is not kept
+            if (engine.version() == version) keep(key, entry);
+            mine.complete(entry);
+            return entry;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            rendering.remove(render, mine);
+        }
+    }
+
+    // Entries of older versions are only dropped once the cache is full, e.g. lineups of deleted festivals
+    private void keep(String key, Entry entry) {
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            entries.values().removeIf(e -> e.version != entry.version);
+            if (entries.size() >= maxEntries) return;
+        }
+        entries.put(key, entry);
+    }
+
+    private static boolean matches(List<String> ifNoneMatch, Entry entry) {
+        for (String candidate : ifNoneMatch) {
+            String tag = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if ("*".equals(tag) || entry.etag.equals(tag) || entry.gzipEtag.equals(tag)) return true;
+        }
+        return false;
+    }
+
+    // An explicit gzip (or x-gzip) coding decides, otherwise a "*" does; either only with a q-value above 0
+    static boolean acceptsGzip(HttpHeaders headers) {
+        double gzip = -1;
+        double any = -1;
+        for (String value : headers.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim().toLowerCase(Locale.ROOT);
+                double q = 1;
+                for (int i = 1; i < parts.length; i++) {
+                    String[] param = parts[i].split("=", 2);
+                    if (param.length == 2 && param[0].trim().equalsIgnoreCase("q")) q = quality(param[1].trim());
+                }
+                if (name.equals("gzip") || name.equals("x-gzip")) gzip = Math.max(gzip, q);
+                else if (name.equals("*")) any = Math.max(any, q);
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : any > 0;
+    }
+
+    // A malformed q-value counts as 0, so it never turns on an encoding the client may not handle
+    private static double quality(String value) {
+        try {
+            double q = Double.parseDouble(value);
+            return q >= 0 && q <= 1 ? q : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private record Render(String key, long version) {
+    }
+
+    private static final class Entry {
+        final long version;
+        final byte[] json;
+        final String etag;
+        final String gzipEtag;
+        private volatile byte[] gzip;
+
+        // A null json is a resource that did not exist at this version
+        Entry(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+            String hash = json == null ? "" : DigestUtils.md5DigestAsHex(json);
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + "-gzip\"";
+        }
+
+        byte[] gzip() {
+            byte[] compressed = gzip;
+            if (compressed == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+                try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                    gz.write(json);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                compressed = out.toByteArray();
+                gzip = compressed;
+            }
+            return compressed;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.Page;
+import be.ap.festival.service.data.SearchHit;
+import be.ap.festival.service.data.SearchQuery;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * Type-ahead search over festivals and artists. Hits are ranked, so {@code after} is a position rather than
+ * an id; the Link: rel="next" header carries it like on the other listings.
+ */
+@Profile("!h2")
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+
+    private final FestivalDataStore dataStore;
+
+    public SearchController(FestivalDataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<?>> search(@RequestParam String q,
+                                          @RequestParam(required = false) String type,
+                                          @RequestParam(required = false) Long after,
+                                          @RequestParam(required = false) Integer limit) {
+        if (q.isBlank()) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q must not be blank");
+        if (type != null && !type.equals(SearchHit.FESTIVAL) && !type.equals(SearchHit.ARTIST)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "type must be festival or artist");
+        }
+        if (after != null && after < 0) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "after must not be negative");
+        Page<SearchHit> page = dataStore.search(new SearchQuery(q, type, after, Paging.limit(limit)));
+        return Paging.respond(page, page.items());
+    }
+}
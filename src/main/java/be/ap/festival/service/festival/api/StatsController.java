@@ -0,0 +1,66 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.StoreStats;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalog aggregates for dashboards: festivals per place, artists per genre, price statistics and the busiest
+ * artists. The store keeps them up to date as it writes, so none of these scan the catalog.
+ */
+@Profile("!h2")
+@RestController
+@RequestMapping("/api/stats")
+public class StatsController {
+
+    static final int DEFAULT_TOP = 10;
+    static final int MAX_TOP = 1000;
+
+    private final FestivalDataStore dataStore;
+
+    public StatsController(FestivalDataStore dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    @GetMapping
+    public StoreStats stats(@RequestParam(required = false) Integer top) {
+        return dataStore.stats(top(top));
+    }
+
+    @GetMapping("/places")
+    public Map<String, Integer> places() {
+        return dataStore.stats(0).festivalsPerPlace();
+    }
+
+    @GetMapping("/genres")
+    public Map<String, Integer> genres() {
+        return dataStore.stats(0).artistsPerGenre();
+    }
+
+    @GetMapping("/prices")
+    public StoreStats.Prices prices() {
+        return dataStore.stats(0).prices();
+    }
+
+    @GetMapping("/artists")
+    public List<StoreStats.BusyArtist> busiestArtists(@RequestParam(required = false) Integer top) {
+        return dataStore.stats(top(top)).busiestArtists();
+    }
+
+    private static int top(Integer requested) {
+        if (requested == null) return DEFAULT_TOP;
+        if (requested <= 0 || requested > MAX_TOP) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "top must be between 1 and " + MAX_TOP);
+        }
+        return requested;
+    }
+}
@@ -0,0 +1,388 @@
+package be.ap.festival.service.festival.asset;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Local copies of catalog photos and their scaled-down variants, keyed by URL. Files live in one directory,
+ * bounded by {@code max-disk-size} with the least recently used evicted first; small files (thumbnails,
+ * mostly) are also kept in memory, bounded by {@code max-memory-size}. On startup the directory is indexed
+ * again, so the cache survives restarts.
+ * <p>
+ * Misses are filled by a small worker pool: originals are fetched from the {@link AssetOrigin} and variants
+ * scaled from them, and concurrent requests for the same file share one job. Fetching an original also queues
+ * its other variants, so they are usually on disk before anyone asks.
+ */
+@Component
+@ConditionalOnProperty(name = "festival.assets.enabled", havingValue = "true")
+public class AssetCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AssetCache.class);
+    private static final String PARTIAL = ".part";
+    // A file is kept in memory if it takes at most this share of the memory budget
+    private static final int MEMORY_ENTRY_SHARE = 16;
+
+    /**
+     * A cached file: either its bytes, when held in memory, or its path on disk. The key names the URL and
+     * variant and doubles as a strong ETag.
+     */
+    public record Asset(String key, String contentType, long size, byte[] bytes, Path file) {
+    }
+
+    private final AssetOrigin origin;
+    private final Path directory;
+    private final long maxDiskBytes;
+    private final long maxMemoryBytes;
+    private final Duration maxAge;
+    private final ExecutorService workers;
+
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Long> onDisk = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, byte[]> inMemory = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+    private long memoryBytes;
+
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    @Autowired
+    public AssetCache(@Value("${festival.assets.origin-directory:}") String originDirectory,
+                      @Value("${festival.assets.origin-timeout:10s}") Duration originTimeout,
+                      @Value("${festival.assets.directory:assets}") Path directory,
+                      @Value("${festival.assets.max-disk-size:1GB}") DataSize maxDiskSize,
+                      @Value("${festival.assets.max-memory-size:64MB}") DataSize maxMemorySize,
+                      @Value("${festival.assets.max-age:7d}") Duration maxAge,
+                      @Value("${festival.assets.workers:2}") int workers,
+                      MeterRegistry meters) throws IOException {
+        this(originDirectory.isBlank() ? new HttpAssetOrigin(originTimeout) : new DirectoryAssetOrigin(Path.of(originDirectory)),
+                directory, maxDiskSize.toBytes(), maxMemorySize.toBytes(), maxAge, workers, meters);
+    }
+
+    public AssetCache(AssetOrigin origin, Path directory, long maxDiskBytes, long maxMemoryBytes, Duration maxAge,
+                      int workers, MeterRegistry meters) throws IOException {
+        this.origin = origin;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxAge = maxAge;
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "asset-worker-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.memoryHits = Counter.builder("festival.assets.requests").tag("result", "memory").register(meters);
+        this.diskHits = Counter.builder("festival.assets.requests").tag("result", "disk").register(meters);
+        this.misses = Counter.builder("festival.assets.requests").tag("result", "miss").register(meters);
+        Gauge.builder("festival.assets.disk.bytes", this, c -> c.diskBytes).register(meters);
+        Gauge.builder("festival.assets.memory.bytes", this, c -> c.memoryBytes).register(meters);
+        index();
+    }
+
+    // How long clients may reuse a served file without asking again
+    public Duration maxAge() { return maxAge; }
+
+    /**
+     * The variant of the photo at the given URL, fetched or generated first if it is not cached. Throws
+     * {@link java.io.FileNotFoundException} when the origin has no such photo, and an {@link IOException} when it
+     * cannot be fetched or is not an image that can be scaled.
+     */
+    public Asset get(String url, AssetVariant variant) throws IOException {
+        String key = key(url, variant);
+        String contentType = contentType(url, variant);
+        lock.lock();
+        try {
+            byte[] bytes = inMemory.get(key);
+            if (bytes != null) {
+                memoryHits.increment();
+                return new Asset(key, contentType, bytes.length, bytes, null);
+            }
+        } finally {
+            lock.unlock();
+        }
+        Path file = cached(key);
+        if (file != null) {
+            diskHits.increment();
+        } else {
+            misses.increment();
+            file = await(load(url, variant));
+        }
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (NoSuchFileException e) {
+            // Evicted in the meantime; fetched or generated once more
+            forget(key);
+            file = await(load(url, variant));
+            size = Files.size(file);
+        }
+        if (size <= maxMemoryBytes / MEMORY_ENTRY_SHARE) {
+            byte[] bytes = Files.readAllBytes(file);
+            remember(key, bytes);
+            return new Asset(key, contentType, size, bytes, null);
+        }
+        return new Asset(key, contentType, size, null, file);
+    }
+
+    @PreDestroy
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    private CompletableFuture<Path> load(String url, AssetVariant variant) {
+        String key = key(url, variant);
+        Path file = cached(key);
+        if (file != null) return CompletableFuture.completedFuture(file);
+        CompletableFuture<Path> mine = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) return running;
+
+        CompletableFuture<Path> work = variant == AssetVariant.ORIGINAL
+                ? CompletableFuture.supplyAsync(() -> fetch(url, key), workers)
+                : load(url, AssetVariant.ORIGINAL).thenApplyAsync(original -> scale(original, variant, key), workers);
+        work.whenComplete((path, failure) -> {
+            // Out of the way first, so whoever is woken up next finds the file through the index
+            inFlight.remove(key, mine);
+            if (failure != null) {
+                mine.completeExceptionally(failure);
+                return;
+            }
+            mine.complete(path);
+            if (variant == AssetVariant.ORIGINAL && contentType(url, variant).startsWith("image/")) {
+                for (AssetVariant other : AssetVariant.values()) {
+                    if (other != AssetVariant.ORIGINAL) load(url, other);
+                }
+            }
+        });
+        return mine;
+    }
+
+    private Path fetch(String url, String key) {
+        try (InputStream in = origin.open(url)) {
+            Path partial = directory.resolve(key + PARTIAL);
+            Files.copy(in, partial, StandardCopyOption.REPLACE_EXISTING);
+            return store(key, partial);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path scale(Path original, AssetVariant variant, String key) {
+        try {
+            BufferedImage source = ImageIO.read(original.toFile());
+            if (source == null) throw new IOException("Not an image that can be scaled: " + original.getFileName());
+            Path partial = directory.resolve(key + PARTIAL);
+            ImageIO.write(resize(source, variant.width()), "jpg", partial.toFile());
+            return store(key, partial);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Halves the image until the last step is at most a factor of two, which bilinear scaling handles without
+    // the aliasing of one big step; drawn onto an opaque RGB image, as JPEG has no alpha
+    static BufferedImage resize(BufferedImage source, int width) {
+        int targetWidth = Math.min(width, source.getWidth());
+        int targetHeight = Math.max(1, (int) Math.round((double) source.getHeight() * targetWidth / source.getWidth()));
+        BufferedImage current = source;
+        do {
+            int w = Math.max(targetWidth, current.getWidth() / 2);
+            int h = w == targetWidth ? targetHeight : Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.drawImage(current, 0, 0, w, h, Color.WHITE, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (current.getWidth() != targetWidth);
+        return current;
+    }
+
+    // Moves a finished file into place and into the index, evicting what no longer fits
+    private Path store(String key, Path partial) throws IOException {
+        Path file = directory.resolve(key);
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long size = Files.size(file);
+        lock.lock();
+        try {
+            Long previous = onDisk.put(key, size);
+            diskBytes += size - (previous == null ? 0 : previous);
+            evictFromDisk(key);
+        } finally {
+            lock.unlock();
+        }
+        return file;
+    }
+
+    private Path cached(String key) {
+        lock.lock();
+        try {
+            return onDisk.get(key) == null ? null : directory.resolve(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void forget(String key) {
+        lock.lock();
+        try {
+            Long size = onDisk.remove(key);
+            if (size != null) diskBytes -= size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remember(String key, byte[] bytes) {
+        lock.lock();
+        try {
+            byte[] previous = inMemory.put(key, bytes);
+            memoryBytes += bytes.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<String, byte[]>> it = inMemory.entrySet().iterator();
+            while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+                Map.Entry<String, byte[]> eldest = it.next();
+                if (eldest.getKey().equals(key)) continue;
+                memoryBytes -= eldest.getValue().length;
+                it.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Least recently used first, but never the file that was just stored; caller holds the lock
+    private void evictFromDisk(String keep) {
+        Iterator<Map.Entry<String, Long>> it = onDisk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep)) continue;
+            diskBytes -= eldest.getValue();
+            it.remove();
+            byte[] held = inMemory.remove(eldest.getKey());
+            if (held != null) memoryBytes -= held.length;
+            try {
+                // A request still streaming it keeps its open handle
+                Files.deleteIfExists(directory.resolve(eldest.getKey()));
+            } catch (IOException e) {
+                log.warn("Could not delete evicted asset {}", eldest.getKey(), e);
+            }
+        }
+    }
+
+    // Rebuilds the index from the directory, oldest files first, and drops leftovers of interrupted jobs
+    private void index() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(Files::isRegularFile).toList();
+        }
+        lock.lock();
+        try {
+            files.stream()
+                    .sorted(Comparator.comparing(AssetCache::modified))
+                    .forEach(file -> {
+                        String name = file.getFileName().toString();
+                        try {
+                            if (name.endsWith(PARTIAL)) {
+                                Files.delete(file);
+                            } else {
+                                long size = Files.size(file);
+                                onDisk.put(name, size);
+                                diskBytes += size;
+                            }
+                        } catch (NoSuchFileException e) {
+                            // Removed since the listing
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+            evictFromDisk(null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static FileTime modified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            throw new IOException(cause);
+        }
+    }
+
+    static String key(String url, AssetVariant variant) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16) + "-" + variant.name().toLowerCase(Locale.ROOT);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String contentType(String url, AssetVariant variant) {
+        if (variant != AssetVariant.ORIGINAL) return MediaType.IMAGE_JPEG_VALUE;
+        String path = url.split("[?#]", 2)[0];
+        return MediaTypeFactory.getMediaType(path).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+}
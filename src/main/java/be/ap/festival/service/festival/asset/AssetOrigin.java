@@ -0,0 +1,14 @@
+package be.ap.festival.service.festival.asset;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Where the originals behind catalog photo URLs come from: the bucket itself ({@link HttpAssetOrigin}) or, for
+ * tests and offline use, a local directory standing in for it ({@link DirectoryAssetOrigin}).
+ */
+public interface AssetOrigin {
+
+    // The original behind a catalog URL; FileNotFoundException when the origin has nothing there
+    InputStream open(String url) throws IOException;
+}
@@ -0,0 +1,31 @@
+package be.ap.festival.service.festival.asset;
+
+import java.util.Locale;
+
+/**
+ * The renditions served for a photo: the original as the origin has it, and JPEG copies scaled down to a
+ * fixed width (never up), keeping the aspect ratio.
+ */
+public enum AssetVariant {
+    ORIGINAL(0),
+    THUMB(160),
+    MEDIUM(640);
+
+    private final int width;
+
+    AssetVariant(int width) {
+        this.width = width;
+    }
+
+    int width() { return width; }
+
+    // The ?size= parameter; absent means the original
+    public static AssetVariant parse(String size) {
+        if (size == null || size.isBlank()) return ORIGINAL;
+        try {
+            return valueOf(size.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("size must be original, thumb or medium");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package be.ap.festival.service.festival.asset;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A local directory standing in for the bucket: the URL's path, whatever its host, is looked up below the
+ * directory, so https://bucket.example.com/photos/a.jpg is {@code <directory>/photos/a.jpg}. Paths that would
+ * leave the directory are not found.
+ */
+public class DirectoryAssetOrigin implements AssetOrigin {
+
+    private final Path root;
+
+    public DirectoryAssetOrigin(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public InputStream open(String url) throws IOException {
+        String path = uri(url).getPath();
+        if (path == null || path.length() < 2) throw new FileNotFoundException(url);
+        Path file = root.resolve(path.substring(1)).normalize();
+        if (!file.startsWith(root) || !Files.isRegularFile(file)) throw new FileNotFoundException(url);
+        return Files.newInputStream(file);
+    }
+
+    static URI uri(String url) throws FileNotFoundException {
+        try {
+            return URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new FileNotFoundException(url);
+        }
+    }
+}
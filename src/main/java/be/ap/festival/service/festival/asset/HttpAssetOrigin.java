@@ -0,0 +1,48 @@
+package be.ap.festival.service.festival.asset;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Fetches originals over HTTP(S), following redirects. Only http and https URLs are fetched.
+ */
+public class HttpAssetOrigin implements AssetOrigin {
+
+    private final HttpClient client;
+    private final Duration timeout;
+
+    public HttpAssetOrigin(Duration timeout) {
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.timeout = timeout;
+    }
+
+    @Override
+    public InputStream open(String url) throws IOException {
+        URI uri = DirectoryAssetOrigin.uri(url);
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+            throw new FileNotFoundException(url);
+        }
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(HttpRequest.newBuilder(uri).timeout(timeout).GET().build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted fetching " + url, e);
+        }
+        int status = response.statusCode();
+        if (status / 100 == 2) return response.body();
+        response.body().close();
+        if (status == 404 || status == 410) throw new FileNotFoundException(url);
+        throw new IOException("Origin answered " + status + " for " + url);
+    }
+}
@@ -1,6 +1,31 @@
 package be.ap.festival.service.festival.repo;
 
-// SQL/JPA removed: this repository is no longer used.
-// Kept only to avoid breaking imports in older code; not referenced anymore.
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.data.ArtistQuery;
+import be.ap.festival.service.data.Page;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Artist half of the storage SPI (see {@link StorageEngine}). Updating or deleting an artist also updates or
+ * removes it in every lineup, in the same write.
+ */
 public interface ArtistRepository {
-}
\ No newline at end of file
+
+    List<Artist> getArtists();
+
+    Page<Artist> findArtists(ArtistQuery query);
+
+    Optional<Artist> getArtist(Long id);
+
+    Artist createArtist(Artist artist);
+
+    Optional<Artist> updateArtist(Long id, Artist updated);
+
+    void deleteArtist(Long id);
+
+    // Festivals whose lineup contains the artist, in id order; empty if the artist does not exist
+    Optional<List<Festival>> getFestivalsOfArtist(Long artistId);
+}
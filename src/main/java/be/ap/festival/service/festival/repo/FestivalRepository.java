@@ -1,6 +1,53 @@
 package be.ap.festival.service.festival.repo;
 
-// SQL/JPA removed: this repository is no longer used.
-// Kept only to avoid breaking imports in older code; not referenced anymore.
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.Lineup;
+import be.ap.festival.service.data.BulkResult;
+import be.ap.festival.service.data.FestivalQuery;
+import be.ap.festival.service.data.Mutation;
+import be.ap.festival.service.data.Page;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Festival half of the storage SPI (see {@link StorageEngine}). Writes to unknown festivals come back empty
+ * and change nothing; lineups are ordered by artist id and only ever hold existing artists.
+ */
 public interface FestivalRepository {
-}
\ No newline at end of file
+
+    List<Festival> getFestivals();
+
+    Page<Festival> findFestivals(FestivalQuery query);
+
+    Optional<Festival> getFestival(Long id);
+
+    // Empty for an unknown festival
+    Lineup getLineup(Long festivalId);
+
+    // Ids are allocated by the engine; lineup artists are referenced by id and unknown ones are dropped
+    Festival createFestival(Festival festival);
+
+    // Replaces the fields and photos; the lineup is left alone
+    Optional<Festival> updateFestival(Long id, Festival updated);
+
+    void deleteFestival(Long id);
+
+    Optional<Festival> addPhoto(Long festivalId, String url);
+
+    Optional<Festival> removePhoto(Long festivalId, String url);
+
+    Optional<Festival> addArtistToFestival(Long festivalId, Long artistId);
+
+    Optional<Festival> removeArtistFromFestival(Long festivalId, Long artistId);
+
+    // Empty when the festival or one of the artists does not exist; the lineup is then left alone. Lineups are
+    // sets ordered by artist id, so the order of the given ids is not kept
+    Optional<Festival> replaceLineup(Long festivalId, List<Long> artistIds);
+
+    /**
+     * Applies festival and artist mutations in order as one atomic write, with one result per mutation.
+     * Ids in create mutations are ignored and allocated by the engine.
+     */
+    BulkResult bulk(List<Mutation> mutations);
+}
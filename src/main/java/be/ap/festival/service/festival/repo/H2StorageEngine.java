@@ -0,0 +1,841 @@
+package be.ap.festival.service.festival.repo;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.Lineup;
+import be.ap.festival.service.data.ArtistQuery;
+import be.ap.festival.service.data.BulkResult;
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.FestivalQuery;
+import be.ap.festival.service.data.Mutation;
+import be.ap.festival.service.data.Page;
+import be.ap.festival.service.data.StoreSnapshot;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import jakarta.annotation.PreDestroy;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Embedded on-disk {@link StorageEngine} on H2 in file mode, active with profile {@code h2}. Every filter of a
+ * query has a composite (key, id) index, so a keyset page is one index range scan, and lineups are indexed in
+ * both directions. Writes run one at a time, each in a transaction that also bumps the catalog version; reads
+ * run concurrently on pooled connections. On first start the database is seeded from the catalog location.
+ */
+@Component
+@Profile("h2")
+@Primary
+public class H2StorageEngine implements StorageEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(H2StorageEngine.class);
+
+    // Rows per executeBatch() when importing a catalog
+    private static final int BATCH_SIZE = 1_000;
+
+    private static final JsonFactory JSON = JsonFactory.builder().disable(StreamWriteFeature.AUTO_CLOSE_TARGET).build();
+
+    // Place and genre keys are folded like the in-memory indexes do, so filters stay case-insensitive and
+    // still use an index; prices are kept twice, as a number for ranges and as text for their exact scale
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS catalog_state (id INT PRIMARY KEY, version BIGINT NOT NULL,"
+                    + " next_festival_id BIGINT NOT NULL, next_artist_id BIGINT NOT NULL)",
+            "INSERT INTO catalog_state SELECT 1, 0, 1, 1 WHERE NOT EXISTS (SELECT 1 FROM catalog_state)",
+            "CREATE TABLE IF NOT EXISTS artist (id BIGINT PRIMARY KEY, name VARCHAR, photo_url VARCHAR,"
+                    + " genre VARCHAR, genre_key VARCHAR)",
+            "CREATE INDEX IF NOT EXISTS artist_genre ON artist (genre_key, id)",
+            "CREATE INDEX IF NOT EXISTS artist_name ON artist (name, id)",
+            "CREATE TABLE IF NOT EXISTS festival (id BIGINT PRIMARY KEY, name VARCHAR, place VARCHAR,"
+                    + " place_key VARCHAR, festival_date DATE, price DECFLOAT, price_text VARCHAR)",
+            "CREATE INDEX IF NOT EXISTS festival_place ON festival (place_key, id)",
+            "CREATE INDEX IF NOT EXISTS festival_date ON festival (festival_date, id)",
+            "CREATE INDEX IF NOT EXISTS festival_price ON festival (price, id)",
+            "CREATE TABLE IF NOT EXISTS festival_photo (festival_id BIGINT NOT NULL, ordinal INT NOT NULL,"
+                    + " url VARCHAR, PRIMARY KEY (festival_id, ordinal))",
+            "CREATE TABLE IF NOT EXISTS lineup (festival_id BIGINT NOT NULL, artist_id BIGINT NOT NULL,"
+                    + " PRIMARY KEY (festival_id, artist_id))",
+            // Festivals of an artist, the genre filter and the deleteArtist cascade all start from the artist
+            "CREATE INDEX IF NOT EXISTS lineup_artist ON lineup (artist_id, festival_id)"
+    };
+
+    private static final String FESTIVAL_COLUMNS = "SELECT f.id, f.name, f.place, f.festival_date, f.price_text FROM festival f";
+    private static final String ARTIST_COLUMNS = "SELECT a.id, a.name, a.photo_url, a.genre FROM artist a";
+
+    private final JdbcConnectionPool pool;
+    // One writer at a time keeps id allocation and version bumps simple; H2 would serialize them anyway
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final String catalogLocation;
+
+    // The write-ahead log and replication follow the in-memory store, which stays empty under this engine;
+    // rather than persist or replicate nothing, the combination is refused at startup
+    @Autowired
+    public H2StorageEngine(@Value("${festival.storage.h2.url:jdbc:h2:file:./data/festival-h2}") String url,
+                           @Value("${festival.storage.h2.max-connections:16}") int maxConnections,
+                           @Value("${festival.catalog.location:classpath:festivals.json}") String catalogLocation,
+                           @Value("${festival.persistence.enabled:false}") boolean persistence,
+                           @Value("${festival.replication.role:none}") String replicationRole) {
+        this(url, maxConnections, catalogLocation);
+        if (persistence || !"none".equals(replicationRole)) {
+            close();
+            throw new IllegalStateException("festival.persistence and festival.replication only work with the in-memory"
+                    + " engine; turn them off for profile h2 (H2 keeps its data on disk itself)");
+        }
+    }
+
+    private H2StorageEngine(String url, int maxConnections, String catalogLocation) {
+        this.pool = JdbcConnectionPool.create(url, "sa", "");
+        this.pool.setMaxConnections(maxConnections);
+        this.catalogLocation = catalogLocation;
+        try (Connection c = pool.getConnection(); Statement st = c.createStatement()) {
+            for (String ddl : SCHEMA) st.execute(ddl);
+        } catch (SQLException e) {
+            pool.dispose();
+            throw new IllegalStateException("Could not open H2 storage at " + url, e);
+        }
+    }
+
+    public H2StorageEngine(String url) {
+        this(url, 16, (String) null);
+    }
+
+    // The catalog is only seeded into an empty database, never over data from an earlier run
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedOnStartup() throws IOException {
+        if (version() != 0 || catalogLocation == null) return;
+        FestivalDataStore staging = new FestivalDataStore(catalogLocation);
+        staging.load();
+        if (staging.version() > 0) importCatalog(staging, catalogLocation);
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.dispose();
+    }
+
+    // ===== Snapshot operations =====
+
+    @Override
+    public long version() {
+        return read(c -> catalogState(c)[0]);
+    }
+
+    // Parsing and id bookkeeping are the in-memory engine's, so both engines accept exactly the same files
+    @Override
+    public void load(Path catalog) throws IOException {
+        FestivalDataStore staging = new FestivalDataStore();
+        staging.load(catalog);
+        importCatalog(staging, catalog.toString());
+    }
+
+    @Override
+    public void writeSnapshot(OutputStream out) throws IOException {
+        List<Object> catalog = read(c -> List.of(catalogState(c), queryArtists(c, "", List.of(), 0),
+                queryFestivals(c, "", List.of(), 0)));
+        long[] state = (long[]) catalog.get(0);
+        @SuppressWarnings("unchecked") List<Artist> artists = (List<Artist>) catalog.get(1);
+        @SuppressWarnings("unchecked") List<Festival> festivals = (List<Festival>) catalog.get(2);
+        try (JsonGenerator gen = JSON.createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeNumberField("version", state[0]);
+            gen.writeNumberField("nextFestivalId", state[1]);
+            gen.writeNumberField("nextArtistId", state[2]);
+            gen.writeArrayFieldStart("artists");
+            for (Artist a : artists) {
+                gen.writeStartObject();
+                gen.writeNumberField("id", a.getId());
+                writeString(gen, "name", a.getName());
+                writeString(gen, "photoUrl", a.getPhotoUrl());
+                writeString(gen, "genre", a.getGenre());
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("festivals");
+            for (Festival f : festivals) {
+                gen.writeStartObject();
+                gen.writeNumberField("id", f.getId());
+                writeString(gen, "name", f.getName());
+                writeString(gen, "place", f.getPlace());
+                if (f.getDate() != null) gen.writeStringField("date", f.getDate().toString());
+                if (f.getPrice() != null) gen.writeNumberField("price", f.getPrice());
+                gen.writeArrayFieldStart("photos");
+                for (String photo : f.getPhotos()) gen.writeString(photo);
+                gen.writeEndArray();
+                gen.writeArrayFieldStart("lineup");
+                for (Artist a : f.getLineup()) {
+                    gen.writeStartObject();
+                    gen.writeNumberField("id", a.getId());
+                    gen.writeEndObject();
+                }
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+    }
+
+    private void importCatalog(FestivalDataStore staging, String source) {
+        long started = System.nanoTime();
+        StoreSnapshot snap = staging.snapshot();
+        write(tx -> {
+            try (Statement st = tx.c.createStatement()) {
+                st.execute("DELETE FROM lineup");
+                st.execute("DELETE FROM festival_photo");
+                st.execute("DELETE FROM festival");
+                st.execute("DELETE FROM artist");
+            }
+            try (PreparedStatement artists = tx.c.prepareStatement("INSERT INTO artist VALUES (?, ?, ?, ?, ?)")) {
+                int pending = 0;
+                for (Artist a : snap.artists().asList()) {
+                    bindArtist(artists, a.getId(), a);
+                    artists.addBatch();
+                    if (++pending % BATCH_SIZE == 0) artists.executeBatch();
+                }
+                artists.executeBatch();
+            }
+            try (PreparedStatement festivals = tx.c.prepareStatement("INSERT INTO festival VALUES (?, ?, ?, ?, ?, ?, ?)");
+                 PreparedStatement photos = tx.c.prepareStatement("INSERT INTO festival_photo VALUES (?, ?, ?)");
+                 PreparedStatement lineups = tx.c.prepareStatement("INSERT INTO lineup VALUES (?, ?)")) {
+                int pending = 0;
+                for (Festival f : snap.festivals().asList()) {
+                    bindFestival(festivals, f.getId(), f);
+                    festivals.addBatch();
+                    addPhotos(photos, f.getId(), 0, f.getPhotos());
+                    Lineup lineup = f.getLineup();
+                    for (int i = 0; i < lineup.size(); i++) {
+                        lineups.setLong(1, f.getId());
+                        lineups.setLong(2, lineup.idAt(i));
+                        lineups.addBatch();
+                    }
+                    if (++pending % BATCH_SIZE == 0) {
+                        festivals.executeBatch();
+                        photos.executeBatch();
+                        lineups.executeBatch();
+                    }
+                }
+                festivals.executeBatch();
+                photos.executeBatch();
+                lineups.executeBatch();
+            }
+            // Like the in-memory engine: the version never goes backwards and the id sequences are restored
+            try (PreparedStatement st = tx.c.prepareStatement("UPDATE catalog_state SET version = GREATEST(version + 1, ?),"
+                    + " next_festival_id = ?, next_artist_id = ?")) {
+                st.setLong(1, snap.version());
+                st.setLong(2, staging.nextFestivalId());
+                st.setLong(3, staging.nextArtistId());
+                st.executeUpdate();
+            }
+            return null;
+        });
+        log.info("Imported {} festivals and {} artists from {} in {} ms", snap.festivals().size(), snap.artists().size(),
+                source, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // ===== Reads =====
+
+    @Override
+    public List<Festival> getFestivals() {
+        return read(c -> queryFestivals(c, "", List.of(), 0));
+    }
+
+    @Override
+    public Page<Festival> findFestivals(FestivalQuery q) {
+        StringBuilder where = new StringBuilder(" WHERE f.id > ?");
+        List<Object> params = new ArrayList<>();
+        params.add(q.after() == null ? 0L : q.after());
+        if (q.place() != null) {
+            where.append(" AND f.place_key = ?");
+            params.add(fold(q.place()));
+        }
+        if (q.from() != null) {
+            where.append(" AND f.festival_date >= ?");
+            params.add(Date.valueOf(q.from()));
+        }
+        if (q.to() != null) {
+            where.append(" AND f.festival_date <= ?");
+            params.add(Date.valueOf(q.to()));
+        }
+        if (q.minPrice() != null) {
+            where.append(" AND f.price >= ?");
+            params.add(q.minPrice());
+        }
+        if (q.maxPrice() != null) {
+            where.append(" AND f.price <= ?");
+            params.add(q.maxPrice());
+        }
+        if (q.genre() != null) {
+            // The artists of the genre are an uncorrelated subquery, evaluated once; each candidate festival
+            // then only probes its own few lineup rows
+            where.append(" AND EXISTS (SELECT 1 FROM lineup l WHERE l.festival_id = f.id"
+                    + " AND l.artist_id IN (SELECT id FROM artist WHERE genre_key = ?))");
+            params.add(fold(q.genre()));
+        }
+        List<Festival> rows = read(c -> queryFestivals(c, where.toString(), params, q.limit() + 1));
+        return page(rows, q.limit(), Festival::getId);
+    }
+
+    @Override
+    public Optional<Festival> getFestival(Long id) {
+        if (id == null) return Optional.empty();
+        return read(c -> findFestival(c, id));
+    }
+
+    @Override
+    public Lineup getLineup(Long festivalId) {
+        return getFestival(festivalId).map(Festival::getLineup).orElse(Lineup.empty());
+    }
+
+    @Override
+    public List<Artist> getArtists() {
+        return read(c -> queryArtists(c, "", List.of(), 0));
+    }
+
+    @Override
+    public Page<Artist> findArtists(ArtistQuery q) {
+        StringBuilder where = new StringBuilder(" WHERE a.id > ?");
+        List<Object> params = new ArrayList<>();
+        params.add(q.after() == null ? 0L : q.after());
+        if (q.genre() != null) {
+            where.append(" AND a.genre_key = ?");
+            params.add(fold(q.genre()));
+        }
+        if (q.name() != null) {
+            where.append(" AND a.name = ?");
+            params.add(q.name());
+        }
+        List<Artist> rows = read(c -> queryArtists(c, where.toString(), params, q.limit() + 1));
+        return page(rows, q.limit(), Artist::getId);
+    }
+
+    @Override
+    public Optional<Artist> getArtist(Long id) {
+        if (id == null) return Optional.empty();
+        return read(c -> findArtist(c, id));
+    }
+
+    @Override
+    public Optional<List<Festival>> getFestivalsOfArtist(Long artistId) {
+        if (artistId == null) return Optional.empty();
+        return read(c -> {
+            if (findArtist(c, artistId).isEmpty()) return Optional.empty();
+            return Optional.of(queryFestivals(c, " WHERE f.id IN (SELECT festival_id FROM lineup WHERE artist_id = ?)",
+                    List.of(artistId), 0));
+        });
+    }
+
+    // ===== Writes =====
+
+    @Override
+    public Festival createFestival(Festival f) {
+        return write(tx -> insertFestival(tx, allocate(tx, "next_festival_id"), f));
+    }
+
+    @Override
+    public Optional<Festival> updateFestival(Long id, Festival updated) {
+        return write(tx -> updateFestival(tx, id, updated));
+    }
+
+    @Override
+    public void deleteFestival(Long id) {
+        write(tx -> deleteFestival(tx, id));
+    }
+
+    @Override
+    public Optional<Festival> addPhoto(Long festivalId, String url) {
+        if (url == null) throw new IllegalArgumentException("Missing photo url");
+        return write(tx -> addPhoto(tx, festivalId, url));
+    }
+
+    @Override
+    public Optional<Festival> removePhoto(Long festivalId, String url) {
+        return write(tx -> removePhoto(tx, festivalId, url));
+    }
+
+    @Override
+    public Optional<Festival> addArtistToFestival(Long festivalId, Long artistId) {
+        return write(tx -> addArtist(tx, festivalId, artistId));
+    }
+
+    @Override
+    public Optional<Festival> removeArtistFromFestival(Long festivalId, Long artistId) {
+        return write(tx -> removeArtist(tx, festivalId, artistId));
+    }
+
+    @Override
+    public Optional<Festival> replaceLineup(Long festivalId, List<Long> artistIds) {
+        return write(tx -> replaceLineup(tx, festivalId, artistIds));
+    }
+
+    @Override
+    public Artist createArtist(Artist a) {
+        return write(tx -> insertArtist(tx, allocate(tx, "next_artist_id"), a));
+    }
+
+    @Override
+    public Optional<Artist> updateArtist(Long id, Artist updated) {
+        return write(tx -> updateArtist(tx, id, updated));
+    }
+
+    @Override
+    public void deleteArtist(Long id) {
+        write(tx -> deleteArtist(tx, id));
+    }
+
+    @Override
+    public BulkResult bulk(List<Mutation> mutations) {
+        return write(tx -> {
+            List<BulkResult.Item> items = new ArrayList<>(mutations.size());
+            for (Mutation m : mutations) {
+                String error = Mutation.validate(m);
+                items.add(error != null ? new BulkResult.Item(BulkResult.Status.INVALID, null, error) : applyItem(tx, m));
+            }
+            // The version the batch is committed as; write() bumps it after this returns
+            long version = catalogState(tx.c)[0] + (tx.changed ? 1 : 0);
+            return new BulkResult(version, items);
+        });
+    }
+
+    private BulkResult.Item applyItem(Tx tx, Mutation m) throws SQLException {
+        if (m instanceof Mutation.CreateFestival c) return created(insertFestival(tx, allocate(tx, "next_festival_id"), c.festival()));
+        if (m instanceof Mutation.CreateArtist c) return created(insertArtist(tx, allocate(tx, "next_artist_id"), c.artist()));
+        if (m instanceof Mutation.DeleteFestival d) return deleted(deleteFestival(tx, d.id()));
+        if (m instanceof Mutation.DeleteArtist d) return deleted(deleteArtist(tx, d.id()));
+        if (m instanceof Mutation.UpdateFestival u) return updated(updateFestival(tx, u.id(), u.festival()));
+        if (m instanceof Mutation.UpdateArtist u) return updated(updateArtist(tx, u.id(), u.artist()));
+        if (m instanceof Mutation.AddPhoto p) return updated(addPhoto(tx, p.festivalId(), p.url()));
+        if (m instanceof Mutation.RemovePhoto p) return updated(removePhoto(tx, p.festivalId(), p.url()));
+        if (m instanceof Mutation.AddArtistToFestival a) return updated(addArtist(tx, a.festivalId(), a.artistId()));
+        if (m instanceof Mutation.RemoveArtistFromFestival r) return updated(removeArtist(tx, r.festivalId(), r.artistId()));
+        if (m instanceof Mutation.ReplaceLineup r) return updated(replaceLineup(tx, r.festivalId(), r.artistIds()));
+        throw new IllegalArgumentException("Unsupported mutation " + m);
+    }
+
+    private static BulkResult.Item created(Object entity) {
+        return new BulkResult.Item(BulkResult.Status.CREATED, entity, null);
+    }
+
+    private static BulkResult.Item deleted(boolean deleted) {
+        return new BulkResult.Item(deleted ? BulkResult.Status.DELETED : BulkResult.Status.NOT_FOUND, null, null);
+    }
+
+    private static BulkResult.Item updated(Optional<?> entity) {
+        return entity.isPresent()
+                ? new BulkResult.Item(BulkResult.Status.UPDATED, entity.get(), null)
+                : new BulkResult.Item(BulkResult.Status.NOT_FOUND, null, null);
+    }
+
+    private Festival insertFestival(Tx tx, long id, Festival f) throws SQLException {
+        try (PreparedStatement st = tx.c.prepareStatement("INSERT INTO festival VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            bindFestival(st, id, f);
+            st.executeUpdate();
+        }
+        insertPhotos(tx, id, 0, f.getPhotos());
+        Lineup lineup = f.getLineup();
+        // Only existing artists make it into the lineup, whatever else the payload held
+        try (PreparedStatement st = tx.c.prepareStatement("INSERT INTO lineup SELECT ?, id FROM artist WHERE id = ?")) {
+            for (int i = 0; i < lineup.size(); i++) {
+                st.setLong(1, id);
+                st.setLong(2, lineup.idAt(i));
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+        tx.changed = true;
+        return findFestival(tx.c, id).orElseThrow();
+    }
+
+    private Optional<Festival> updateFestival(Tx tx, Long id, Festival updated) throws SQLException {
+        if (id == null) return Optional.empty();
+        try (PreparedStatement st = tx.c.prepareStatement("UPDATE festival SET name = ?, place = ?, place_key = ?,"
+                + " festival_date = ?, price = ?, price_text = ? WHERE id = ?")) {
+            st.setString(1, updated.getName());
+            st.setString(2, updated.getPlace());
+            st.setString(3, fold(updated.getPlace()));
+            st.setDate(4, updated.getDate() == null ? null : Date.valueOf(updated.getDate()));
+            st.setBigDecimal(5, updated.getPrice());
+            st.setString(6, updated.getPrice() == null ? null : updated.getPrice().toString());
+            st.setLong(7, id);
+            if (st.executeUpdate() == 0) return Optional.empty();
+        }
+        update(tx, "DELETE FROM festival_photo WHERE festival_id = ?", id);
+        insertPhotos(tx, id, 0, updated.getPhotos());
+        tx.changed = true;
+        return findFestival(tx.c, id);
+    }
+
+    private boolean deleteFestival(Tx tx, Long id) throws SQLException {
+        if (id == null) return false;
+        update(tx, "DELETE FROM lineup WHERE festival_id = ?", id);
+        update(tx, "DELETE FROM festival_photo WHERE festival_id = ?", id);
+        boolean deleted = update(tx, "DELETE FROM festival WHERE id = ?", id) > 0;
+        tx.changed |= deleted;
+        return deleted;
+    }
+
+    private Optional<Festival> addPhoto(Tx tx, Long festivalId, String url) throws SQLException {
+        if (!exists(tx.c, "festival", festivalId)) return Optional.empty();
+        int next;
+        try (PreparedStatement st = tx.c.prepareStatement("SELECT COALESCE(MAX(ordinal) + 1, 0) FROM festival_photo WHERE festival_id = ?")) {
+            st.setLong(1, festivalId);
+            try (ResultSet rs = st.executeQuery()) {
+                rs.next();
+                next = rs.getInt(1);
+            }
+        }
+        insertPhotos(tx, festivalId, next, List.of(url));
+        tx.changed = true;
+        return findFestival(tx.c, festivalId);
+    }
+
+    private Optional<Festival> removePhoto(Tx tx, Long festivalId, String url) throws SQLException {
+        if (!exists(tx.c, "festival", festivalId)) return Optional.empty();
+        try (PreparedStatement st = tx.c.prepareStatement("DELETE FROM festival_photo WHERE festival_id = ? AND url IS NOT DISTINCT FROM ?")) {
+            st.setLong(1, festivalId);
+            st.setString(2, url);
+            tx.changed |= st.executeUpdate() > 0;
+        }
+        return findFestival(tx.c, festivalId);
+    }
+
+    private Optional<Festival> addArtist(Tx tx, Long festivalId, Long artistId) throws SQLException {
+        if (!exists(tx.c, "festival", festivalId) || !exists(tx.c, "artist", artistId)) return Optional.empty();
+        try (PreparedStatement st = tx.c.prepareStatement("INSERT INTO lineup SELECT ?1, ?2"
+                + " WHERE NOT EXISTS (SELECT 1 FROM lineup WHERE festival_id = ?1 AND artist_id = ?2)")) {
+            st.setLong(1, festivalId);
+            st.setLong(2, artistId);
+            tx.changed |= st.executeUpdate() > 0;
+        }
+        return findFestival(tx.c, festivalId);
+    }
+
+    private Optional<Festival> removeArtist(Tx tx, Long festivalId, Long artistId) throws SQLException {
+        if (!exists(tx.c, "festival", festivalId)) return Optional.empty();
+        if (artistId != null) {
+            try (PreparedStatement st = tx.c.prepareStatement("DELETE FROM lineup WHERE festival_id = ? AND artist_id = ?")) {
+                st.setLong(1, festivalId);
+                st.setLong(2, artistId);
+                tx.changed |= st.executeUpdate() > 0;
+            }
+        }
+        return findFestival(tx.c, festivalId);
+    }
+
+    private Optional<Festival> replaceLineup(Tx tx, Long festivalId, List<Long> artistIds) throws SQLException {
+        if (!exists(tx.c, "festival", festivalId)) return Optional.empty();
+        long[] ids = artistIds.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        for (long artistId : ids) {
+            if (!exists(tx.c, "artist", artistId)) return Optional.empty();
+        }
+        update(tx, "DELETE FROM lineup WHERE festival_id = ?", festivalId);
+        try (PreparedStatement st = tx.c.prepareStatement("INSERT INTO lineup VALUES (?, ?)")) {
+            for (long artistId : ids) {
+                st.setLong(1, festivalId);
+                st.setLong(2, artistId);
+                st.addBatch();
+            }
+            st.executeBatch();
+        }
+        tx.changed = true;
+        return findFestival(tx.c, festivalId);
+    }
+
+    private Artist insertArtist(Tx tx, long id, Artist a) throws SQLException {
+        try (PreparedStatement st = tx.c.prepareStatement("INSERT INTO artist VALUES (?, ?, ?, ?, ?)")) {
+            bindArtist(st, id, a);
+            st.executeUpdate();
+        }
+        tx.changed = true;
+        return findArtist(tx.c, id).orElseThrow();
+    }
+
+    private Optional<Artist> updateArtist(Tx tx, Long id, Artist updated) throws SQLException {
+        if (id == null) return Optional.empty();
+        try (PreparedStatement st = tx.c.prepareStatement("UPDATE artist SET name = ?, photo_url = ?, genre = ?, genre_key = ? WHERE id = ?")) {
+            st.setString(1, updated.getName());
+            st.setString(2, updated.getPhotoUrl());
+            st.setString(3, updated.getGenre());
+            st.setString(4, fold(updated.getGenre()));
+            st.setLong(5, id);
+            if (st.executeUpdate() == 0) return Optional.empty();
+        }
+        tx.changed = true;
+        return findArtist(tx.c, id);
+    }
+
+    private boolean deleteArtist(Tx tx, Long id) throws SQLException {
+        if (id == null) return false;
+        update(tx, "DELETE FROM lineup WHERE artist_id = ?", id);
+        boolean deleted = update(tx, "DELETE FROM artist WHERE id = ?", id) > 0;
+        tx.changed |= deleted;
+        return deleted;
+    }
+
+    // ===== Plumbing =====
+
+    private List<Festival> queryFestivals(Connection c, String where, List<Object> params, int limit) throws SQLException {
+        Map<Long, Festival> festivals = new LinkedHashMap<>();
+        String sql = FESTIVAL_COLUMNS + where + " ORDER BY f.id" + (limit > 0 ? " LIMIT " + limit : "");
+        try (PreparedStatement st = c.prepareStatement(sql)) {
+            bind(st, params);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Date date = rs.getDate(4);
+                    String price = rs.getString(5);
+                    Festival f = new Festival(rs.getString(2), rs.getString(3), date == null ? null : date.toLocalDate(),
+                            price == null ? null : new BigDecimal(price));
+                    f.setId(rs.getLong(1));
+                    festivals.put(f.getId(), f);
+                }
+            }
+        }
+        if (!festivals.isEmpty()) hydrate(c, festivals, limit == 0 && where.isEmpty());
+        return new ArrayList<>(festivals.values());
+    }
+
+    // Loads photos and lineups of all the given festivals in two queries; artists are shared between lineups
+    private void hydrate(Connection c, Map<Long, Festival> festivals, boolean all) throws SQLException {
+        // An IN list of parameters is looked up in the primary key, one probe per festival
+        String filter = all ? "" : " WHERE %s IN (" + "?, ".repeat(festivals.size() - 1) + "?)";
+        List<Object> ids = all ? List.of() : new ArrayList<>(festivals.keySet());
+        Map<Long, List<String>> photos = new HashMap<>();
+        try (PreparedStatement st = c.prepareStatement("SELECT festival_id, url FROM festival_photo"
+                + filter.formatted("festival_id") + " ORDER BY festival_id, ordinal")) {
+            bind(st, ids);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) photos.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getString(2));
+            }
+        }
+        Map<Long, List<Artist>> lineups = new HashMap<>();
+        Map<Long, Artist> artists = new HashMap<>();
+        try (PreparedStatement st = c.prepareStatement("SELECT l.festival_id, a.id, a.name, a.photo_url, a.genre"
+                + " FROM lineup l JOIN artist a ON a.id = l.artist_id" + filter.formatted("l.festival_id")
+                + " ORDER BY l.festival_id, a.id")) {
+            bind(st, ids);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    Artist a = artists.get(rs.getLong(2));
+                    if (a == null) {
+                        a = artist(rs, 2);
+                        artists.put(a.getId(), a);
+                    }
+                    lineups.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(a);
+                }
+            }
+        }
+        for (Festival f : festivals.values()) {
+            f.setPhotos(photos.getOrDefault(f.getId(), List.of()));
+            f.setLineup(lineups.getOrDefault(f.getId(), List.of()));
+        }
+    }
+
+    private Optional<Festival> findFestival(Connection c, long id) throws SQLException {
+        List<Festival> found = queryFestivals(c, " WHERE f.id = ?", List.of(id), 0);
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    private List<Artist> queryArtists(Connection c, String where, List<Object> params, int limit) throws SQLException {
+        List<Artist> artists = new ArrayList<>();
+        String sql = ARTIST_COLUMNS + where + " ORDER BY a.id" + (limit > 0 ? " LIMIT " + limit : "");
+        try (PreparedStatement st = c.prepareStatement(sql)) {
+            bind(st, params);
+            try (ResultSet rs = st.executeQuery()) {
+                while (rs.next()) artists.add(artist(rs, 1));
+            }
+        }
+        return artists;
+    }
+
+    private Optional<Artist> findArtist(Connection c, long id) throws SQLException {
+        List<Artist> found = queryArtists(c, " WHERE a.id = ?", List.of(id), 0);
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    private static Artist artist(ResultSet rs, int column) throws SQLException {
+        Artist a = new Artist(rs.getString(column + 1), rs.getString(column + 2), rs.getString(column + 3));
+        a.setId(rs.getLong(column));
+        return a;
+    }
+
+    // Queries fetch one row past the limit to know whether another page follows
+    private static <T> Page<T> page(List<T> rows, int limit, Function<T, Long> id) {
+        if (rows.size() <= limit) return new Page<>(rows, null);
+        List<T> items = rows.subList(0, limit);
+        return new Page<>(new ArrayList<>(items), id.apply(items.get(limit - 1)));
+    }
+
+    private static boolean exists(Connection c, String table, Long id) throws SQLException {
+        if (id == null) return false;
+        try (PreparedStatement st = c.prepareStatement("SELECT 1 FROM " + table + " WHERE id = ?")) {
+            st.setLong(1, id);
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static long allocate(Tx tx, String sequence) throws SQLException {
+        long id = catalogState(tx.c)["next_festival_id".equals(sequence) ? 1 : 2];
+        try (Statement st = tx.c.createStatement()) {
+            st.executeUpdate("UPDATE catalog_state SET " + sequence + " = " + sequence + " + 1");
+        }
+        return id;
+    }
+
+    // version, next festival id, next artist id
+    private static long[] catalogState(Connection c) throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, next_festival_id, next_artist_id FROM catalog_state")) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)};
+        }
+    }
+
+    private static int update(Tx tx, String sql, long id) throws SQLException {
+        try (PreparedStatement st = tx.c.prepareStatement(sql)) {
+            st.setLong(1, id);
+            return st.executeUpdate();
+        }
+    }
+
+    private static void insertPhotos(Tx tx, long festivalId, int firstOrdinal, List<String> urls) throws SQLException {
+        if (urls == null || urls.isEmpty()) return;
+        try (PreparedStatement st = tx.c.prepareStatement("INSERT INTO festival_photo VALUES (?, ?, ?)")) {
+            addPhotos(st, festivalId, firstOrdinal, urls);
+            st.executeBatch();
+        }
+    }
+
+    private static void addPhotos(PreparedStatement st, long festivalId, int firstOrdinal, List<String> urls) throws SQLException {
+        if (urls == null) return;
+        for (int i = 0; i < urls.size(); i++) {
+            st.setLong(1, festivalId);
+            st.setInt(2, firstOrdinal + i);
+            st.setString(3, urls.get(i));
+            st.addBatch();
+        }
+    }
+
+    private static void bindFestival(PreparedStatement st, long id, Festival f) throws SQLException {
+        st.setLong(1, id);
+        st.setString(2, f.getName());
+        st.setString(3, f.getPlace());
+        st.setString(4, fold(f.getPlace()));
+        st.setDate(5, f.getDate() == null ? null : Date.valueOf(f.getDate()));
+        st.setBigDecimal(6, f.getPrice());
+        st.setString(7, f.getPrice() == null ? null : f.getPrice().toString());
+    }
+
+    private static void bindArtist(PreparedStatement st, long id, Artist a) throws SQLException {
+        st.setLong(1, id);
+        st.setString(2, a.getName());
+        st.setString(3, a.getPhotoUrl());
+        st.setString(4, a.getGenre());
+        st.setString(5, fold(a.getGenre()));
+    }
+
+    private static void bind(PreparedStatement st, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            Object value = params.get(i);
+            if (value == null) st.setNull(i + 1, Types.NULL);
+            else st.setObject(i + 1, value);
+        }
+    }
+
+    private static void writeString(JsonGenerator gen, String field, String value) throws IOException {
+        if (value != null) gen.writeStringField(field, value);
+    }
+
+    private static String fold(String value) {
+        return value == null ? null : value.toLowerCase(Locale.ROOT);
+    }
+
+    // Runs the queries of one read in a single transaction, so a festival and its lineup and photos come from
+    // one version of the catalog; at lower levels H2 gives every statement its own snapshot
+    private <T> T read(SqlWork<Connection, T> work) {
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            c.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            try {
+                T result = work.apply(c);
+                c.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("H2 storage read failed", e);
+        }
+    }
+
+    // Runs one write transaction; the catalog version goes up by one if the write changed anything
+    private <T> T write(SqlWork<Tx, T> work) {
+        writeLock.lock();
+        try (Connection c = pool.getConnection()) {
+            c.setAutoCommit(false);
+            c.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+            try {
+                Tx tx = new Tx(c);
+                T result = work.apply(tx);
+                if (tx.changed) {
+                    try (Statement st = c.createStatement()) {
+                        st.executeUpdate("UPDATE catalog_state SET version = version + 1");
+                    }
+                }
+                c.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("H2 storage write failed", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<A, T> {
+        T apply(A arg) throws SQLException;
+    }
+
+    private static final class Tx {
+        final Connection c;
+        boolean changed;
+
+        Tx(Connection c) {
+            this.c = c;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package be.ap.festival.service.festival.repo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Storage SPI behind the REST controllers: the festival and artist repositories plus whole-catalog snapshot
+ * operations. Engines are chosen by Spring profile: the in-memory
+ * {@link be.ap.festival.service.data.FestivalDataStore} by default, {@link H2StorageEngine} with profile
+ * {@code h2}. Both pass the same conformance suite, and a snapshot written by one loads into the other.
+ */
+public interface StorageEngine extends FestivalRepository, ArtistRepository {
+
+    // Grows with every write that changed something
+    long version();
+
+    // Replaces the whole catalog with a festivals.json-style catalog or a snapshot
+    void load(Path catalog) throws IOException;
+
+    // The whole catalog as a document load() accepts, including the id sequences
+    void writeSnapshot(OutputStream out) throws IOException;
+}
@@ -0,0 +1,84 @@
+package be.ap.festival.service.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessLogFilterTest {
+
+    @Test
+    void logsStructuredLines_sampledAndFiltered_withPayloadOnlyOnError() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AccessLog accessLog = new AccessLog(16, lines::add, new SimpleMeterRegistry());
+        // Nothing successful is sampled, so only errors get through
+        AccessLogFilter filter = new AccessLogFilter(accessLog, 0.0, Set.of("/actuator/health"), Set.of(),
+                AccessLogFilter.PayloadCapture.ON_ERROR, 8);
+
+        filter.doFilter(post("/api/festivals", "{\"name\":\"ok\"}"), new MockHttpServletResponse(), (req, res) -> {
+            req.getInputStream().readAllBytes();
+            res.getWriter().write("{}");
+        });
+        filter.doFilter(post("/api/festivals", "{\"name\":\"broken\"}"), new MockHttpServletResponse(), (req, res) -> {
+            req.getInputStream().readAllBytes();
+            ((HttpServletResponse) res).setStatus(400);
+            res.getOutputStream().write(new byte[5]);
+        });
+        MockHttpServletRequest health = new MockHttpServletRequest("GET", "/actuator/health");
+        health.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/actuator/health");
+        filter.doFilter(health, new MockHttpServletResponse(), (req, res) -> ((HttpServletResponse) res).setStatus(503));
+        accessLog.close();
+
+        assertEquals(1, lines.size(), lines.toString());
+        String line = lines.get(0);
+        assertTrue(line.contains("\"route\":\"/api/festivals\""), line);
+        assertTrue(line.contains("\"status\":400"), line);
+        assertTrue(line.contains("\"bytes\":5"), line);
+        // Capped at max-payload bytes
+        assertTrue(line.contains("\"payload\":\"{\\\"name\\\":\"}"), line);
+    }
+
+    @Test
+    void asyncRequestsAreLoggedOnceTheyComplete() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AccessLog accessLog = new AccessLog(16, lines::add, new SimpleMeterRegistry());
+        AccessLogFilter filter = new AccessLogFilter(accessLog, 1.0, Set.of(), Set.of(),
+                AccessLogFilter.PayloadCapture.NONE, 8);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/changes");
+        request.setAsyncSupported(true);
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/changes");
+        ServletResponse[] stream = new ServletResponse[1];
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.startAsync();
+            res.getOutputStream().write(new byte[2]);
+            stream[0] = res;
+        });
+        // Written after the request thread returned, like events of the change feed
+        stream[0].getOutputStream().write(new byte[40]);
+        request.getAsyncContext().complete();
+        accessLog.close();
+
+        assertEquals(1, lines.size(), lines.toString());
+        assertTrue(lines.get(0).contains("\"bytes\":42"), lines.get(0));
+    }
+
+    private static MockHttpServletRequest post(String path, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        request.setContentType("application/json");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, path);
+        return request;
+    }
+}
@@ -0,0 +1,197 @@
+package be.ap.festival.service.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+
+    @Test
+    void lowerPrioritiesAndLimitedRoutesAreRefusedFirst() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        AdmissionControl admission = new AdmissionControl(4, 4, 4, 2.0, 0.75, 0.5,
+                AdmissionConfig.routeLimits(Set.of("GET /api/export=1")), meters);
+
+        List<AdmissionControl.Permit> running = new ArrayList<>();
+        running.add(admission.tryAcquire("PUT /api/festivals/{id}", AdmissionControl.Priority.WRITE).orElseThrow());
+        running.add(admission.tryAcquire("DELETE /api/artists/{id}", AdmissionControl.Priority.WRITE).orElseThrow());
+        assertTrue(admission.tryAcquire("POST /api/festivals", AdmissionControl.Priority.WRITE).isEmpty());
+        running.add(admission.tryAcquire("GET /api/export", AdmissionControl.Priority.HEAVY_READ).orElseThrow());
+        assertTrue(admission.tryAcquire("GET /api/festivals", AdmissionControl.Priority.HEAVY_READ).isEmpty());
+        running.add(admission.tryAcquire("GET /api/festivals/{id}", AdmissionControl.Priority.CHEAP_READ).orElseThrow());
+        assertTrue(admission.tryAcquire("GET /api/festivals/{id}", AdmissionControl.Priority.CHEAP_READ).isEmpty());
+
+        running.forEach(admission::release);
+        assertEquals(0, admission.inFlight());
+        running.clear();
+        running.add(admission.tryAcquire("GET /api/export", AdmissionControl.Priority.HEAVY_READ).orElseThrow());
+        assertTrue(admission.tryAcquire("GET /api/export", AdmissionControl.Priority.HEAVY_READ).isEmpty());
+        assertEquals(1.0, meters.get("festival.admission.requests").tag("priority", "heavy_read").tag("outcome", "route_limited").counter().count());
+        assertEquals(1.0, meters.get("festival.admission.requests").tag("priority", "write").tag("outcome", "shed").counter().count());
+    }
+
+    @Test
+    void overload_shedsEnoughToKeepTheTailLatencyOfAdmittedRequestsBounded() {
+        // A simulated service that does two 20ms requests at a time, first come first served, offered 24 clients
+        // that each send their next request as soon as the last one is answered; unguarded, every request waits
+        // behind the others for about 24 / 2 * 20ms = 240ms
+        Simulation simulation = new Simulation(24, 2, TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(5));
+        simulation.run(TimeUnit.SECONDS.toNanos(3));
+
+        assertEquals(64, simulation.limitAt(0));
+        // Below the number of clients within half a second, then settled around 8 (two running, six queued)
+        assertTrue(simulation.limitAt(TimeUnit.MILLISECONDS.toNanos(500)) < 24, "limits " + simulation.limits);
+        for (long at = TimeUnit.SECONDS.toNanos(1); at < TimeUnit.SECONDS.toNanos(3); at += TimeUnit.MILLISECONDS.toNanos(100)) {
+            int limit = simulation.limitAt(at);
+            assertTrue(limit >= 4 && limit <= 12, "limit " + limit + " at " + at / 1_000_000 + "ms");
+        }
+        assertTrue(simulation.shed > 0);
+        // Shedding does not starve the service: the two workers are busy for nearly all of the three seconds
+        assertTrue(simulation.admitted >= 290, "admitted " + simulation.admitted);
+        // Skip the first second, in which the limit comes down from its initial value
+        List<Long> settled = new ArrayList<>();
+        for (long[] sample : simulation.latencies) {
+            if (sample[0] >= TimeUnit.SECONDS.toNanos(1)) settled.add(sample[1]);
+        }
+        Collections.sort(settled);
+        long p99 = settled.get((int) (settled.size() * 0.99)) / 1_000_000;
+        // Half the unguarded wait
+        assertTrue(p99 < 120, "p99 " + p99 + "ms with limits " + simulation.limits);
+    }
+
+    @Test
+    void asyncRequestsHoldTheirPermitUntilTheyComplete() throws Exception {
+        AdmissionControl admission = new AdmissionControl(4, 4, 4, 2.0, 0.75, 0.5, Map.of(), new SimpleMeterRegistry());
+        AdmissionControlFilter filter = new AdmissionControlFilter(admission, Set.of(), Set.of(), 1);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/export");
+        request.setAsyncSupported(true);
+
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+        assertEquals(1, admission.inFlight());
+        request.getAsyncContext().complete();
+        assertEquals(0, admission.inFlight());
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/export"), new MockHttpServletResponse(), (req, res) -> {
+        });
+        assertEquals(0, admission.inFlight());
+    }
+
+    @Test
+    void onlySingleEntityReadsAreCheap() throws Exception {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        AdmissionControl admission = new AdmissionControl(4, 4, 4, 2.0, 0.75, 0.5, Map.of(), meters);
+        AdmissionControlFilter filter = new AdmissionControlFilter(admission, Set.of(),
+                Set.of("/api/festivals/{id}", "/api/festivals/{id}/lineup", "/api/artists/{id}"), 1);
+
+        for (String path : List.of("/api/festivals/1", "/api/festivals/1/lineup", "/api/artists/3")) {
+            filter.doFilter(new MockHttpServletRequest("GET", path), new MockHttpServletResponse(), (req, res) -> {
+            });
+        }
+        // Collections under an entity and photos from the origin have an id in the path, but are not cheap
+        for (String path : List.of("/api/artists/3/festivals", "/api/artists/3/photo", "/api/festivals/1/photos/0",
+                "/api/festivals")) {
+            filter.doFilter(new MockHttpServletRequest("GET", path), new MockHttpServletResponse(), (req, res) -> {
+            });
+        }
+        filter.doFilter(new MockHttpServletRequest("DELETE", "/api/artists/3"), new MockHttpServletResponse(), (req, res) -> {
+        });
+
+        assertEquals(3.0, admitted(meters, "cheap_read"));
+        assertEquals(4.0, admitted(meters, "heavy_read"));
+        assertEquals(1.0, admitted(meters, "write"));
+    }
+
+    private static double admitted(SimpleMeterRegistry meters, String priority) {
+        return meters.get("festival.admission.requests").tag("priority", priority).tag("outcome", "admitted").counter().count();
+    }
+
+    // Closed-loop clients against a fixed number of workers, on a simulated clock the admission control reads
+    private static final class Simulation {
+        private record Event(long time, long sequence, AdmissionControl.Permit done) {
+        }
+
+        private final int clients;
+        private final int workers;
+        private final long service;
+        private final long backoff;
+        private final AdmissionControl admission;
+        private final PriorityQueue<Event> events = new PriorityQueue<>(
+                Comparator.comparingLong(Event::time).thenComparingLong(Event::sequence));
+        private final Deque<AdmissionControl.Permit> waiting = new ArrayDeque<>();
+        // The limit after each release by time, and {completion time, latency} of each admitted request
+        final TreeMap<Long, Integer> limits = new TreeMap<>();
+        final List<long[]> latencies = new ArrayList<>();
+        int admitted;
+        int shed;
+        private long now;
+        private long sequence;
+
+        Simulation(int clients, int workers, long service, long backoff) {
+            this.clients = clients;
+            this.workers = workers;
+            this.service = service;
+            this.backoff = backoff;
+            this.admission = new AdmissionControl(64, 2, 64, 2.0, 0.75, 0.5, Map.of(), new SimpleMeterRegistry(),
+                    () -> now);
+        }
+
+        void run(long duration) {
+            limits.put(0L, admission.limit());
+            for (int c = 0; c < clients; c++) schedule(0, null);
+            int idle = workers;
+            while (!events.isEmpty() && events.peek().time() < duration) {
+                Event event = events.poll();
+                now = event.time();
+                if (event.done() == null) {
+                    Optional<AdmissionControl.Permit> permit = admission.tryAcquire("GET /api/festivals/{id}",
+                            AdmissionControl.Priority.CHEAP_READ);
+                    if (permit.isEmpty()) {
+                        shed++;
+                        // Clients back off a little, as Retry-After asks
+                        schedule(now + backoff, null);
+                    } else if (idle > 0) {
+                        idle--;
+                        schedule(now + service, permit.get());
+                    } else {
+                        waiting.add(permit.get());
+                    }
+                    continue;
+                }
+                admission.release(event.done());
+                admitted++;
+                latencies.add(new long[]{now, now - event.done().started()});
+                limits.put(now, admission.limit());
+                AdmissionControl.Permit next = waiting.poll();
+                if (next == null) idle++;
+                else schedule(now + service, next);
+                // The client that was answered asks again right away
+                schedule(now, null);
+            }
+        }
+
+        int limitAt(long time) {
+            return limits.floorEntry(time).getValue();
+        }
+
+        private void schedule(long time, AdmissionControl.Permit done) {
+            events.add(new Event(time, sequence++, done));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package be.ap.festival.service.config;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import brave.sampler.Sampler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TailSamplingSpanHandlerTest {
+
+    @Test
+    void keepsWholeTracesWithErrorsOrSlowRoots_dropsTheRest() {
+        List<String> reported = new CopyOnWriteArrayList<>();
+        SpanHandler reporter = new SpanHandler() {
+            @Override
+            public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+                reported.add(span.name());
+                return true;
+            }
+        };
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("reporter", reporter);
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        // Nothing is kept by chance, so only errors and slow requests are reported
+        TailSamplingSpanHandler tail = new TailSamplingSpanHandler(beans.getBeanProvider(SpanHandler.class), 0.0,
+                Duration.ofMillis(500), 2, meters);
+        beans.addBean("tail", tail);
+
+        try (Tracing tracing = Tracing.newBuilder().sampler(Sampler.ALWAYS_SAMPLE)
+                .addSpanHandler(tail).addSpanHandler(reporter).build()) {
+            Tracer tracer = tracing.tracer();
+            trace(tracer, "fast", 10_000, null);
+            trace(tracer, "slow", 600_000, null);
+            trace(tracer, "failed", 10_000, "500");
+            trace(tracer, "client-error", 10_000, "404");
+        }
+
+        assertEquals(List.of("slow-child", "slow", "failed-child", "failed"), reported);
+        assertEquals(1.0, meters.get("festival.tracing.traces").tag("decision", "kept").tag("reason", "slow").counter().count());
+        assertEquals(1.0, meters.get("festival.tracing.traces").tag("decision", "kept").tag("reason", "error").counter().count());
+        assertEquals(2.0, meters.get("festival.tracing.traces").tag("decision", "dropped").tag("reason", "sampled").counter().count());
+    }
+
+    @Test
+    void dropsTheOldestTraceWhenTooManyArePending() {
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        TailSamplingSpanHandler tail = new TailSamplingSpanHandler(new StaticListableBeanFactory().getBeanProvider(SpanHandler.class),
+                1.0, Duration.ofMillis(500), 2, meters);
+        try (Tracing tracing = Tracing.newBuilder().sampler(Sampler.ALWAYS_SAMPLE).addSpanHandler(tail).build()) {
+            Tracer tracer = tracing.tracer();
+            List<Span> roots = List.of(tracer.newTrace().start(), tracer.newTrace().start(), tracer.newTrace().start());
+            for (Span root : roots) tracer.newChild(root.context()).start().finish();
+            for (Span root : roots) root.finish();
+        }
+        assertEquals(1.0, meters.get("festival.tracing.traces").tag("decision", "dropped").tag("reason", "overflow").counter().count());
+        assertEquals(2.0, meters.get("festival.tracing.traces").tag("decision", "kept").tag("reason", "sampled").counter().count());
+    }
+
+    // A server span with one child, lasting the given number of microseconds
+    private static void trace(Tracer tracer, String name, long micros, String status) {
+        long start = 1_000_000;
+        Span root = tracer.newTrace().name(name).kind(Span.Kind.SERVER).start(start);
+        tracer.newChild(root.context()).name(name + "-child").start(start + 1).finish(start + 2);
+        if (status != null) root.tag("http.status_code", status);
+        root.finish(start + micros);
+    }
+}
@@ -0,0 +1,77 @@
+package be.ap.festival.service.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EntityTableTest {
+
+    @Test
+    void writesAcrossManyChunksMatchASortedMap() {
+        Random random = new Random(7);
+        TreeMap<Long, String> expected = new TreeMap<>();
+        EntityTable<String> table = EntityTable.empty();
+        for (int step = 0; step < 20_000; step++) {
+            long id = random.nextInt(3_000);
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    table = table.without(id);
+                    expected.remove(id);
+                }
+                case 1 -> {
+                    table = table.replace(new long[] {id, id + 1}, value -> value + "'");
+                    expected.computeIfPresent(id, (k, value) -> value + "'");
+                    expected.computeIfPresent(id + 1, (k, value) -> value + "'");
+                }
+                default -> {
+                    table = table.with(id, "v" + step);
+                    expected.put(id, "v" + step);
+                }
+            }
+        }
+        assertMatches(expected, table);
+    }
+
+    @Test
+    void writesLeaveThePreviousVersionIntact() {
+        long[] ids = new long[1_000];
+        Object[] values = new Object[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 2L * i;
+            values[i] = "v" + i;
+        }
+        EntityTable<String> before = EntityTable.of(ids, values);
+        EntityTable<String> after = before.with(501L, "new").with(500L, "changed").without(0L);
+
+        assertEquals(1_000, before.size());
+        assertEquals("v250", before.get(500L));
+        assertEquals(null, before.get(501L));
+        assertEquals(1_000, after.size());
+        assertEquals("changed", after.get(500L));
+        assertEquals(249, after.indexAfter(499L));
+        assertSame(before.get(1_998L), after.get(1_998L));
+        assertSame(after, after.with(500L, after.get(500L)));
+    }
+
+    private static void assertMatches(TreeMap<Long, String> expected, EntityTable<String> table) {
+        assertEquals(expected.size(), table.size());
+        assertEquals(new ArrayList<>(expected.values()), new ArrayList<>(table.asList()));
+        List<Long> keys = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(keys.get(i), table.idAt(i));
+            assertEquals(expected.get(keys.get(i)), table.asList().get(i));
+            assertEquals(expected.get(keys.get(i)), table.peekAt(i));
+        }
+        for (long id = -1; id <= 3_001; id++) {
+            assertEquals(expected.get(id), table.get(id));
+            assertEquals(expected.headMap(id, true).size(), table.indexAfter(id));
+        }
+        assertEquals(keys.isEmpty() ? 0L : keys.get(keys.size() - 1), table.maxId());
+    }
+}
@@ -0,0 +1,136 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FestivalDataStoreConcurrencyTest {
+
+    private static final int WRITERS = 8;
+    private static final int OPS_PER_WRITER = 500;
+
+    @Test
+    void concurrentLineupAndPhotoWrites_loseNoUpdates() throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        Festival festival = store.createFestival(new Festival("Stress Fest", "Boom", LocalDate.of(2026, 7, 1), BigDecimal.TEN));
+        List<Long> artistIds = new ArrayList<>();
+        for (int i = 0; i < WRITERS * OPS_PER_WRITER; i++) {
+            artistIds.add(store.createArtist(new Artist("Artist " + i, null, "Pop")).getId());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int offset = w * OPS_PER_WRITER;
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < OPS_PER_WRITER; i++) {
+                        store.addArtistToFestival(festival.getId(), artistIds.get(offset + i));
+                        store.addPhoto(festival.getId(), "photo-" + (offset + i));
+                    }
+                    return null;
+                }));
+            }
+            // Readers keep walking the live catalog the way Jackson would while the writers run
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 2; r++) {
+                readers.add(pool.submit(() -> {
+                    start.await();
+                    while (writing.get()) {
+                        for (Festival f : store.getFestivals()) {
+                            f.getLineup().forEach(Artist::getName);
+                            f.getPhotos().forEach(String::length);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> writer : writers) writer.get(60, TimeUnit.SECONDS);
+            writing.set(false);
+            for (Future<?> reader : readers) reader.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Festival result = store.getFestival(festival.getId()).orElseThrow();
+        assertEquals(WRITERS * OPS_PER_WRITER, result.getLineup().size());
+        assertEquals(WRITERS * OPS_PER_WRITER, result.getPhotos().size());
+    }
+
+    @Test
+    void deleteArtistRacingLineupAdds_neverLeavesDanglingArtists() throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        List<Long> festivalIds = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            festivalIds.add(store.createFestival(new Festival("Fest " + i, "Dessel", LocalDate.of(2026, 6, 19), BigDecimal.ONE)).getId());
+        }
+        Long artistId = store.createArtist(new Artist("Doomed", null, "Metal")).getId();
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> adders = new ArrayList<>();
+            for (int w = 0; w < WRITERS - 1; w++) {
+                adders.add(pool.submit(() -> {
+                    start.await();
+                    for (Long festivalId : festivalIds) store.addArtistToFestival(festivalId, artistId);
+                    return null;
+                }));
+            }
+            Future<?> deleter = pool.submit(() -> {
+                start.await();
+                store.deleteArtist(artistId);
+                return null;
+            });
+            start.countDown();
+            for (Future<?> adder : adders) adder.get(60, TimeUnit.SECONDS);
+            deleter.get(60, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(store.getArtist(artistId).isEmpty());
+        for (Festival f : store.getFestivals()) {
+            assertFalse(f.getLineup().stream().anyMatch(a -> artistId.equals(a.getId())), f.getName());
+        }
+    }
+
+    @Test
+    void snapshotTakenBeforeCascade_keepsConsistentView() {
+        FestivalDataStore store = new FestivalDataStore();
+        Long artistId = store.createArtist(new Artist("Headliner", null, "Rock")).getId();
+        for (int i = 0; i < 10; i++) {
+            Festival f = store.createFestival(new Festival("Fest " + i, "Werchter", LocalDate.of(2026, 7, 3), BigDecimal.ONE));
+            store.addArtistToFestival(f.getId(), artistId);
+        }
+
+        StoreSnapshot before = store.snapshot();
+        store.deleteArtist(artistId);
+        StoreSnapshot after = store.snapshot();
+
+        assertTrue(after.version() > before.version());
+        assertTrue(before.artists().contains(artistId));
+        before.festivals().asList().forEach(f -> assertEquals(1, f.getLineup().size()));
+        after.festivals().asList().forEach(f -> assertTrue(f.getLineup().isEmpty()));
+    }
+}
@@ -0,0 +1,266 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FestivalDataStoreTest {
+
+    private FestivalDataStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new FestivalDataStore();
+        store.load();
+    }
+
+    @Test
+    void indexes_followLineupAndFieldChanges() {
+        Long garrix = store.getArtists().get(0).getId();
+        assertEquals(List.of(1L), ids(store.getFestivalsOfArtist(garrix).orElseThrow()));
+
+        store.addArtistToFestival(3L, garrix);
+        store.removeArtistFromFestival(1L, garrix);
+        assertEquals(List.of(3L), ids(store.getFestivalsOfArtist(garrix).orElseThrow()));
+
+        Festival moved = store.getFestival(2L).orElseThrow();
+        Festival update = new Festival(moved.getName(), "Boom", LocalDate.of(2026, 12, 31), new BigDecimal("110.00"));
+        store.updateFestival(2L, update);
+        assertEquals(List.of(1L, 2L), ids(store.findFestivals(query("boom", null, null, null, null, null)).items()));
+        assertEquals(List.of(2L), ids(store.findFestivals(query(null, LocalDate.of(2026, 12, 1), null, null, null, null)).items()));
+        assertEquals(List.of(2L), ids(store.findFestivals(query(null, null, null, new BigDecimal("110"), new BigDecimal("110.0"), null)).items()));
+
+        store.deleteArtist(garrix);
+        assertTrue(store.getFestivalsOfArtist(garrix).isEmpty());
+        assertTrue(store.snapshot().indexes().festivalsByArtist().idsFor(garrix).length == 0);
+    }
+
+    @Test
+    void genreFilter_pagesThroughIndexCandidatesInIdOrder() {
+        Page<Festival> first = store.findFestivals(new FestivalQuery(null, 1, null, null, null, null, null, "metal"));
+        assertEquals(List.of(4L), ids(first.items()));
+        assertEquals(null, first.nextAfter());
+
+        Page<Festival> pop = store.findFestivals(new FestivalQuery(null, 1, null, null, null, null, null, "POP"));
+        assertEquals(List.of(2L), ids(pop.items()));
+        Page<Festival> popNext = store.findFestivals(new FestivalQuery(pop.nextAfter(), 1, null, null, null, null, null, "pop"));
+        assertEquals(List.of(3L), ids(popNext.items()));
+
+        // Two EDM artists play Tomorrowland, which still comes up once
+        Page<Festival> edm = store.findFestivals(new FestivalQuery(null, 10, null, null, null, null, null, "edm"));
+        assertEquals(List.of(1L), ids(edm.items()));
+
+        Page<Artist> byName = store.findArtists(new ArtistQuery(null, 10, null, "Dua Lipa"));
+        assertEquals("Pop", byName.items().get(0).getGenre());
+    }
+
+    @Test
+    void loadFromPath_streamsRecordsAndDedupesArtistsWithoutIds(@TempDir Path dir) throws Exception {
+        Path catalog = dir.resolve("catalog.json");
+        Files.writeString(catalog, """
+                {"meta": {"ignored": [1, 2]}, "festivals": [
+                  {"name": "No Id Fest", "place": "Gent", "date": "2026-08-01", "price": 10,
+                   "lineup": [{"name": "Solo"}, {"id": 7, "name": "Seven"}]},
+                  {"id": 5, "name": "Five", "place": "Gent", "date": "2026-08-02", "price": 20,
+                   "lineup": [{"name": "Solo"}, {"id": 7, "name": "Seven (again)"}]}
+                ]}
+                """);
+
+        store.load(catalog);
+
+        assertEquals(List.of(5L, 6L), ids(store.getFestivals()));
+        assertEquals(2, store.getArtists().size());
+        Artist solo = store.findArtists(new ArtistQuery(null, 10, null, "Solo")).items().get(0);
+        assertEquals(8L, solo.getId());
+        assertEquals("Seven", store.getArtist(7L).orElseThrow().getName());
+        assertEquals(List.of(5L, 6L), ids(store.getFestivalsOfArtist(8L).orElseThrow()));
+        assertEquals(7L, store.createFestival(new Festival()).getId());
+    }
+
+    @Test
+    void loadFromPath_matchesArtistsWithoutIdsToOnesWithAnIdLaterInTheStream(@TempDir Path dir) throws Exception {
+        Path catalog = dir.resolve("catalog.json");
+        Files.writeString(catalog, """
+                {"festivals": [
+                  {"id": 1, "name": "Early", "place": "Gent", "date": "2026-08-01", "price": 10,
+                   "lineup": [{"name": "Seven"}, {"name": "Solo"}]},
+                  {"id": 2, "name": "Late", "place": "Gent", "date": "2026-08-02", "price": 20,
+                   "lineup": [{"id": 7, "name": "Seven"}, {"name": "Seven"}]}
+                ]}
+                """);
+
+        store.load(catalog);
+
+        assertEquals(2, store.getArtists().size());
+        assertEquals(List.of(7L, 8L), store.getFestival(1L).orElseThrow().getLineup().stream().map(Artist::getId).toList());
+        assertEquals(List.of(7L), store.getFestival(2L).orElseThrow().getLineup().stream().map(Artist::getId).toList());
+        assertEquals(List.of(1L, 2L), ids(store.getFestivalsOfArtist(7L).orElseThrow()));
+    }
+
+    @Test
+    void bulk_appliesAllItemsAsOneVersionWithPerItemResults() {
+        long version = store.snapshot().version();
+        List<StoreChange> changes = new ArrayList<>();
+        store.addListener((change, snapshot) -> changes.add(change));
+
+        BulkResult result = store.bulk(List.of(
+                new Mutation.CreateArtist(0, new Artist("Fresh", null, "Jazz")),
+                new Mutation.UpdateFestival(999L, new Festival("Ghost", null, null, null)),
+                new Mutation.AddPhoto(1L, "https://example.com/bulk.jpg"),
+                new Mutation.ReplaceLineup(2L, List.of(1L, 2L)),
+                new Mutation.Batch(List.of()),
+                new Mutation.DeleteFestival(4L)));
+
+        assertEquals(version + 1, result.version());
+        assertEquals(1, changes.size());
+        assertEquals(StoreChange.Type.BATCH_APPLIED, changes.get(0).type());
+        assertEquals(List.of(BulkResult.Status.CREATED, BulkResult.Status.NOT_FOUND, BulkResult.Status.UPDATED,
+                BulkResult.Status.UPDATED, BulkResult.Status.INVALID, BulkResult.Status.DELETED),
+                result.items().stream().map(BulkResult.Item::status).toList());
+        Artist fresh = (Artist) result.items().get(0).entity();
+
+        // Later items see earlier ones: the new artist goes into a lineup and is then renamed in the same batch
+        store.bulk(List.of(
+                new Mutation.AddArtistToFestival(3L, fresh.getId()),
+                new Mutation.UpdateArtist(fresh.getId(), new Artist("Renamed", null, "Jazz"))));
+        assertEquals(List.of(3L), ids(store.getFestivalsOfArtist(fresh.getId()).orElseThrow()));
+        assertTrue(store.getLineup(3L).stream().anyMatch(a -> a.getName().equals("Renamed")));
+        assertEquals(List.of(1L, 2L), store.getLineup(2L).stream().map(Artist::getId).toList());
+        assertTrue(store.getFestival(4L).isEmpty());
+    }
+
+    @Test
+    void lineups_areSortedByIdAndDedupeArtistsFromPayloads() {
+        Artist first = store.getArtist(1L).orElseThrow();
+        Festival payload = new Festival("Dedup", "Gent", LocalDate.of(2026, 8, 1), BigDecimal.TEN);
+        // Separately deserialized copies of one artist, plus an unknown one, as a request body would bring them
+        Artist copy = new Artist("Martin Garrix", null, "EDM");
+        copy.setId(1L);
+        Artist unknown = new Artist("Nobody", null, null);
+        unknown.setId(999L);
+        payload.setLineup(List.of(store.getArtist(5L).orElseThrow(), copy, first, unknown));
+
+        Festival created = store.createFestival(payload);
+        assertEquals(List.of(1L, 5L), created.getLineup().stream().map(Artist::getId).toList());
+        assertTrue(created.getLineup().artistAt(0) == first);
+        assertEquals(List.of(2L, created.getId()), ids(store.getFestivalsOfArtist(5L).orElseThrow()));
+
+        store.addArtistToFestival(created.getId(), 3L);
+        store.addArtistToFestival(created.getId(), 1L);
+        assertEquals(List.of(1L, 3L, 5L), store.getLineup(created.getId()).stream().map(Artist::getId).toList());
+        assertTrue(store.getLineup(created.getId()).contains(copy));
+    }
+
+    @Test
+    void repeatedValues_areSharedAcrossLoadedAndCreatedEntities() {
+        Festival loaded = store.getFestival(1L).orElseThrow();
+        Festival payload = new Festival("Copy", new String(loaded.getPlace()), null, null);
+        List<String> urls = List.of(loaded.getPhotos().get(0).replace("tomorrowland", "copy"), "no-slash.jpg", "https://example.org/dir/");
+        payload.setPhotos(urls);
+
+        Festival created = store.createFestival(payload);
+        assertSame(loaded.getPlace(), created.getPlace());
+        assertEquals(urls, created.getPhotos());
+        Artist artist = store.createArtist(new Artist("New", null, new String("EDM")));
+        assertSame(store.getArtist(1L).orElseThrow().getGenre(), artist.getGenre());
+
+        Festival withPhoto = store.addPhoto(created.getId(), "https://example.org/dir/more.jpg").orElseThrow();
+        assertEquals(4, withPhoto.getPhotos().size());
+        assertEquals("https://example.org/dir/more.jpg", withPhoto.getPhotos().get(3));
+    }
+
+    @Test
+    void search_foldsPrefixesRanksAndFollowsWrites() {
+        assertEquals(List.of("festival:2", "artist:4", "artist:5", "artist:9"), hits(store.search(new SearchQuery("ROCK", null, null, 10))));
+        // Diacritics fold away, and a word matches the start of any word of the name or detail field
+        assertEquals(List.of("festival:4", "artist:10", "artist:11", "artist:12"), hits(store.search(new SearchQuery("mét", null, null, 10))));
+        assertEquals(List.of("artist:10", "artist:11", "artist:12"), hits(store.search(new SearchQuery("met", SearchHit.ARTIST, null, 10))));
+
+        Page<SearchHit> first = store.search(new SearchQuery("rock", null, null, 2));
+        assertEquals(2L, first.nextAfter());
+        Page<SearchHit> rest = store.search(new SearchQuery("rock", null, first.nextAfter(), 2));
+        assertEquals(List.of("artist:5", "artist:9"), hits(rest));
+        assertEquals(null, rest.nextAfter());
+
+        Festival renamed = store.getFestival(3L).orElseThrow();
+        store.updateFestival(3L, new Festival("Pükkelpop Rocks", renamed.getPlace(), renamed.getDate(), renamed.getPrice()));
+        store.deleteArtist(4L);
+        Artist created = store.createArtist(new Artist("Rockabilly Riot", null, null));
+        assertEquals(List.of("festival:2", "festival:3", "artist:5", "artist:9", "artist:" + created.getId()),
+                hits(store.search(new SearchQuery("rock", null, null, 10))));
+        assertEquals(List.of("festival:3"), hits(store.search(new SearchQuery("pukkel roc", null, null, 10))));
+        assertTrue(store.search(new SearchQuery("foo", null, null, 10)).items().isEmpty());
+    }
+
+    @Test
+    void stats_followWritesIncludingTheDeleteArtistCascade() {
+        StoreStats seed = store.stats(3);
+        assertEquals(Map.of("Boom", 1, "Werchter", 1, "Kiewit", 1, "Dessel", 1), seed.festivalsPerPlace());
+        assertEquals(List.of("EDM", "Metal", "Pop"), List.copyOf(seed.artistsPerGenre().keySet()).subList(0, 3));
+        assertEquals(new BigDecimal("99"), seed.prices().min());
+        assertEquals(new BigDecimal("329.21"), seed.prices().max());
+        assertEquals(new BigDecimal("160.80"), seed.prices().avg());
+        assertEquals(List.of(0L, 1L, 2L, 0L, 0L, 1L, 0L), seed.prices().histogram().stream().map(StoreStats.Bucket::festivals).toList());
+        assertEquals(12, seed.bookings());
+        assertEquals(List.of(1L, 2L, 3L), seed.busiestArtists().stream().map(StoreStats.BusyArtist::id).toList());
+
+        store.addArtistToFestival(2L, 9L);
+        store.addArtistToFestival(4L, 9L);
+        store.createFestival(new Festival("Extra", "Boom", null, new BigDecimal("600")));
+        store.updateArtist(10L, new Artist("Metallica", null, "Thrash"));
+        StoreStats.BusyArtist busiest = store.stats(1).busiestArtists().get(0);
+        assertEquals(new StoreStats.BusyArtist(9L, "Tame Impala", 3), busiest);
+        assertEquals(2, store.stats(1).festivalsPerPlace().get("Boom"));
+        assertEquals(1, store.stats(1).artistsPerGenre().get("Metal"));
+
+        // Writes that leave the lineup alone keep the bookings as they are
+        store.addPhoto(2L, "https://example.org/stats.jpg");
+        Festival dessel = store.getFestival(4L).orElseThrow();
+        store.updateFestival(4L, new Festival(dessel.getName(), dessel.getPlace(), dessel.getDate(), new BigDecimal("120")));
+        assertEquals(14, store.stats(1).bookings());
+        assertEquals(List.of(busiest), store.stats(1).busiestArtists());
+        assertEquals(new BigDecimal("600"), store.stats(1).prices().max());
+
+        // Deleting an artist also takes its bookings out, through the festivals the cascade rewrote
+        store.deleteArtist(9L);
+        store.deleteFestival(1L);
+        StoreStats after = store.stats(100);
+        assertEquals(8, after.bookings());
+        assertTrue(after.busiestArtists().stream().allMatch(a -> a.festivals() == 1));
+        assertEquals(new BigDecimal("600"), after.prices().max());
+        assertEquals(1, after.festivalsPerPlace().get("Boom"));
+        assertEquals(rebuilt(100), after);
+    }
+
+    private StoreStats rebuilt(int top) {
+        CatalogStats fresh = new CatalogStats();
+        fresh.rebuild(store.snapshot());
+        return fresh.view(store.snapshot(), top);
+    }
+
+    private static List<String> hits(Page<SearchHit> page) {
+        return page.items().stream().map(h -> h.type() + ":" + h.id()).toList();
+    }
+
+    private static FestivalQuery query(String place, LocalDate from, LocalDate to, BigDecimal min, BigDecimal max, String genre) {
+        return new FestivalQuery(null, 100, place, from, to, min, max, genre);
+    }
+
+    private static List<Long> ids(List<Festival> festivals) {
+        return festivals.stream().map(Festival::getId).toList();
+    }
+}
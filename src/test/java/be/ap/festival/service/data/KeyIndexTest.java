@@ -0,0 +1,74 @@
+package be.ap.festival.service.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeyIndexTest {
+
+    private static final Comparator<KeyIndex.Entry<Integer>> ORDER =
+            Comparator.<KeyIndex.Entry<Integer>, Integer>comparing(KeyIndex.Entry::key).thenComparingLong(KeyIndex.Entry::id);
+
+    @Test
+    void batchedUpdatesAcrossManyChunksMatchASortedSet() {
+        Random random = new Random(11);
+        TreeSet<KeyIndex.Entry<Integer>> expected = new TreeSet<>(ORDER);
+        List<KeyIndex.Entry<Integer>> initial = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) initial.add(entry(random));
+        KeyIndex<Integer> index = KeyIndex.of(initial);
+        expected.addAll(initial);
+        assertMatches(expected, index);
+
+        for (int step = 0; step < 2_000; step++) {
+            List<KeyIndex.Entry<Integer>> removed = new ArrayList<>();
+            List<KeyIndex.Entry<Integer>> added = new ArrayList<>();
+            // Mostly single writes, now and then a large batch such as a deleted artist's lineups
+            int changes = random.nextInt(50) == 0 ? 400 : 1 + random.nextInt(3);
+            for (int i = 0; i < changes; i++) {
+                if (random.nextBoolean() && !expected.isEmpty()) removed.add(random.nextBoolean() ? expected.first() : entry(random));
+                else added.add(entry(random));
+            }
+            index = index.update(removed, added);
+            removed.forEach(expected::remove);
+            expected.addAll(added);
+        }
+        assertMatches(expected, index);
+    }
+
+    @Test
+    void emptiedIndexHasNoKeys() {
+        List<KeyIndex.Entry<Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) entries.add(new KeyIndex.Entry<>(i % 10, i));
+        KeyIndex<Integer> index = KeyIndex.of(entries).update(entries, List.of());
+        assertEquals(0, index.size());
+        assertEquals(null, index.firstKey());
+        assertArrayEquals(new long[0], index.idsBetween(null, null));
+    }
+
+    private static KeyIndex.Entry<Integer> entry(Random random) {
+        return new KeyIndex.Entry<>(random.nextInt(100), random.nextInt(500));
+    }
+
+    private static void assertMatches(TreeSet<KeyIndex.Entry<Integer>> expected, KeyIndex<Integer> index) {
+        assertEquals(expected.size(), index.size());
+        assertEquals(expected.first().key(), index.firstKey());
+        assertEquals(expected.last().key(), index.lastKey());
+        for (int key = -1; key <= 100; key++) {
+            int k = key;
+            assertArrayEquals(expected.stream().filter(e -> e.key() == k).mapToLong(KeyIndex.Entry::id).toArray(), index.idsFor(key));
+            assertEquals(expected.stream().filter(e -> e.key() >= k && e.key() <= k + 7).count(), index.countBetween(key, key + 7));
+            assertArrayEquals(expected.stream().filter(e -> e.key() >= k).mapToLong(KeyIndex.Entry::id).toArray(), index.idsBetween(key, null));
+        }
+        List<KeyIndex.Entry<Integer>> visited = new ArrayList<>();
+        index.forEachBetween(10, 60, (key, id) -> visited.add(new KeyIndex.Entry<>(key, id)));
+        assertEquals(new ArrayList<>(expected.subSet(new KeyIndex.Entry<>(10, Long.MIN_VALUE), true,
+                new KeyIndex.Entry<>(60, Long.MAX_VALUE), true)), visited);
+    }
+}
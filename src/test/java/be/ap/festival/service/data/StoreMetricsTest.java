@@ -0,0 +1,39 @@
+package be.ap.festival.service.data;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StoreMetricsTest {
+
+    @Test
+    void storeOperations_areTimedAndCatalogIsGauged() throws Exception {
+        MeterRegistry meters = new SimpleMeterRegistry();
+        ObservationRegistry observations = ObservationRegistry.create();
+        observations.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("observations", observations);
+        FestivalDataStore store = new FestivalDataStore("classpath:festivals.json", true, beans.getBeanProvider(ObservationRegistry.class));
+        new StoreMetrics(store).bindTo(meters);
+
+        store.load();
+        store.getFestival(1L);
+        store.getFestival(2L);
+        store.deleteArtist(1L);
+
+        assertEquals(2, meters.get("festival.store").tag("operation", "getFestival").timer().count());
+        assertEquals(1, meters.get("festival.store").tag("operation", "deleteArtist").timer().count());
+        assertEquals(4, meters.get("festival.store.festivals").gauge().value());
+        assertEquals(11, meters.get("festival.store.artists").gauge().value());
+
+        int bookings = store.snapshot().indexes().festivalsByArtist().size();
+        assertEquals((double) bookings / 4, meters.get("festival.store.lineup.size").tag("statistic", "mean").gauge().value());
+        double festivals = meters.get("festival.store.lineup.festivals").gauges().stream().mapToDouble(g -> g.value()).sum();
+        assertEquals(4, festivals);
+    }
+}
@@ -0,0 +1,149 @@
+package be.ap.festival.service.data;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorePersistenceTest {
+
+    @Test
+    void recovery_replaysLogTailOnTopOfSnapshot(@TempDir Path dir) throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        StorePersistence persistence = start(store, dir, 1000);
+        store.load();
+        Festival created = store.createFestival(new Festival("Crash Fest", "Gent", LocalDate.of(2026, 9, 1), new BigDecimal("42.50")));
+        store.addPhoto(created.getId(), "https://example.com/crash.jpg");
+        store.addArtistToFestival(created.getId(), 2L);
+        store.updateArtist(2L, new Artist("Renamed", null, "Pop"));
+        store.bulk(List.of(new Mutation.CreateArtist(0, new Artist("Batch", null, "Folk")), new Mutation.ReplaceLineup(1L, List.of(3L, 1L))));
+        Artist added = store.createArtist(new Artist("New", null, "Jazz"));
+        store.deleteArtist(added.getId());
+        store.deleteFestival(4L);
+        persistence.halt();
+
+        // A record that was cut off mid-write must not prevent recovery
+        try (Stream<Path> files = Files.list(dir)) {
+            Path segment = files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().reduce((a, b) -> b).orElseThrow();
+            Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        FestivalDataStore recovered = new FestivalDataStore();
+        StorePersistence second = start(recovered, dir, 1000);
+        assertEquals(store.snapshot().version(), recovered.snapshot().version());
+        assertEquals(ids(store.getFestivals()), ids(recovered.getFestivals()));
+        Festival restored = recovered.getFestival(created.getId()).orElseThrow();
+        assertEquals(List.of("https://example.com/crash.jpg"), restored.getPhotos());
+        assertEquals("Renamed", restored.getLineup().iterator().next().getName());
+        assertEquals(new BigDecimal("42.50"), restored.getPrice());
+        assertEquals(ids(store.getFestivalsOfArtist(2L).orElseThrow()), ids(recovered.getFestivalsOfArtist(2L).orElseThrow()));
+        assertEquals(List.of(1L, 3L), recovered.getLineup(1L).stream().map(Artist::getId).toList());
+        // Deleted ids stay used
+        assertEquals(added.getId() + 1, recovered.createArtist(new Artist("Next", null, null)).getId());
+        second.stop();
+    }
+
+    @Test
+    void checkpoints_compactLogIntoOneSnapshot(@TempDir Path dir) throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        StorePersistence persistence = start(store, dir, 3);
+        store.load();
+        for (int i = 0; i < 10; i++) {
+            store.addPhoto(1L, "photo-" + i);
+        }
+        persistence.halt();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            List<String> names = files.map(p -> p.getFileName().toString()).sorted().toList();
+            assertEquals(1, names.stream().filter(n -> n.startsWith("snapshot-")).count(), names.toString());
+            assertTrue(names.stream().filter(n -> n.startsWith("wal-")).count() <= 1, names.toString());
+        }
+
+        FestivalDataStore recovered = new FestivalDataStore();
+        start(recovered, dir, 3).stop();
+        assertEquals(store.snapshot().version(), recovered.snapshot().version());
+        assertEquals(store.getFestival(1L).orElseThrow().getPhotos(), recovered.getFestival(1L).orElseThrow().getPhotos());
+    }
+
+    @Test
+    void recovery_refusesToSkipSegmentsAfterACorruptRecord(@TempDir Path dir) throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        StorePersistence persistence = start(store, dir, 1000);
+        store.load();
+        store.addPhoto(1L, "https://example.com/kept.jpg");
+        persistence.halt();
+
+        // Damage that is not a torn tail: a later segment follows it
+        try (Stream<Path> files = Files.list(dir)) {
+            Path segment = files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().reduce((a, b) -> b).orElseThrow();
+            Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+            Files.createFile(dir.resolve(String.format("wal-%019d.log", store.snapshot().version() + 1)));
+        }
+
+        IOException e = assertThrows(IOException.class, () -> start(new FestivalDataStore(), dir, 1000));
+        assertTrue(e.getMessage().contains("Corrupt record"), e.getMessage());
+    }
+
+    @Test
+    void binarySnapshot_isMappedAndMaterializedOnDemand(@TempDir Path dir) throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        StorePersistence persistence = start(store, dir, 1000, StorePersistence.SnapshotFormat.BINARY);
+        store.load();
+        store.createFestival(new Festival("No Date", null, null, null));
+        store.addPhoto(2L, "https://example.com/ünïcode.jpg");
+        persistence.stop();
+
+        FestivalDataStore recovered = new FestivalDataStore();
+        StorePersistence second = start(recovered, dir, 1000, StorePersistence.SnapshotFormat.BINARY);
+        assertEquals(store.snapshot().version(), recovered.snapshot().version());
+        // Index lookups work before any entity has been built
+        assertEquals(ids(store.findFestivals(new FestivalQuery(null, 10, null, null, null, null, null, "pop")).items()),
+                ids(recovered.findFestivals(new FestivalQuery(null, 10, null, null, null, null, null, "pop")).items()));
+        for (Festival expected : store.getFestivals()) {
+            Festival actual = recovered.getFestival(expected.getId()).orElseThrow();
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getPlace(), actual.getPlace());
+            assertEquals(expected.getDate(), actual.getDate());
+            assertEquals(expected.getPrice(), actual.getPrice());
+            assertEquals(expected.getPhotos(), actual.getPhotos());
+            assertEquals(expected.getLineup().stream().map(Artist::getId).toList(),
+                    actual.getLineup().stream().map(Artist::getId).toList());
+            // Lineups share the artist instances of the artist table
+            actual.getLineup().forEach(a -> assertTrue(a == recovered.getArtist(a.getId()).orElseThrow()));
+        }
+
+        Long artistId = store.getArtists().get(0).getId();
+        recovered.updateArtist(artistId, new Artist("Renamed", null, "House"));
+        assertEquals(ids(store.getFestivalsOfArtist(artistId).orElseThrow()),
+                ids(recovered.findFestivals(new FestivalQuery(null, 10, null, null, null, null, null, "house")).items()));
+        second.stop();
+    }
+
+    private static StorePersistence start(FestivalDataStore store, Path dir, int snapshotEvery) throws Exception {
+        return start(store, dir, snapshotEvery, StorePersistence.SnapshotFormat.JSON);
+    }
+
+    private static StorePersistence start(FestivalDataStore store, Path dir, int snapshotEvery,
+                                          StorePersistence.SnapshotFormat format) throws Exception {
+        StorePersistence persistence = new StorePersistence(store, dir, StorePersistence.SyncMode.GROUP, snapshotEvery, format, 1000);
+        persistence.start();
+        return persistence;
+    }
+
+    private static List<Long> ids(List<Festival> festivals) {
+        return festivals.stream().map(Festival::getId).toList();
+    }
+}
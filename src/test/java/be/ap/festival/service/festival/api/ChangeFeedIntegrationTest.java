@@ -0,0 +1,113 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.FestivalService;
+import be.ap.festival.service.data.FestivalDataStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Over real HTTP: the feed writes with non-blocking servlet IO, which MockMvc does not offer (see ChangeFeedTest)
+class ChangeFeedIntegrationTest {
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final List<InputStream> streams = new ArrayList<>();
+    private ConfigurableApplicationContext context;
+    private FestivalDataStore store;
+    private String url;
+
+    @AfterEach
+    void stop() throws IOException {
+        for (InputStream stream : streams) stream.close();
+        context.close();
+    }
+
+    @Test
+    void streamsVersionedEventsAndResumesFromLastEventId() throws Exception {
+        start();
+        long version = store.snapshot().version();
+
+        StringBuffer live = open(url, null);
+        await(live, "event:ready");
+        store.addPhoto(2L, "https://example.org/feed.jpg");
+        store.deleteFestival(3L);
+        String events = await(live, "\"festivalIds\":[3]");
+        assertTrue(events.contains("event:ready\nid:" + version + "\ndata:{\"version\":" + version + "}"), events);
+        assertTrue(events.contains("event:change\nid:" + (version + 1) + "\ndata:{\"version\":" + (version + 1)
+                + ",\"type\":\"PHOTO_ADDED\",\"festivalIds\":[2],\"artistIds\":[]}"), events);
+        assertTrue(events.contains("\"type\":\"FESTIVAL_DELETED\",\"festivalIds\":[3]"), events);
+
+        // A reconnect replays only what came after the last event it saw
+        StringBuffer resumed = open(url, Long.toString(version + 1));
+        String replay = await(resumed, "id:" + (version + 2));
+        assertFalse(replay.contains("event:ready"), replay);
+        assertFalse(replay.contains("PHOTO_ADDED"), replay);
+    }
+
+    @Test
+    void resumesFromStaleIdsInsteadOfDisconnectingThem() throws Exception {
+        start("--festival.change-feed.max-lag=5");
+        long version = store.snapshot().version();
+        for (int i = 0; i < 20; i++) store.addPhoto(1L, "https://example.org/stale-" + i + ".jpg");
+
+        // Far more than max-lag behind, but still retained: replayed in full, then followed live
+        StringBuffer resumed = open(url, Long.toString(version));
+        await(resumed, "id:" + (version + 20) + "\n");
+        store.addPhoto(1L, "https://example.org/after.jpg");
+        String replay = await(resumed, "id:" + (version + 21) + "\n");
+        assertTrue(replay.contains("id:" + (version + 1) + "\n"), replay);
+
+        // Lost to a catalog load: told to start over, and then followed live as well
+        store.load();
+        StringBuffer reset = open(url, Long.toString(version + 21));
+        await(reset, "event:reset");
+        store.addPhoto(1L, "https://example.org/after-reset.jpg");
+        await(reset, "id:" + store.snapshot().version() + "\n");
+    }
+
+    private void start(String... args) {
+        List<String> all = new ArrayList<>(List.of("--server.port=0", "--server.shutdown=immediate",
+                "--festival.access-log.enabled=false"));
+        all.addAll(List.of(args));
+        context = new SpringApplicationBuilder(FestivalService.class).run(all.toArray(String[]::new));
+        store = context.getBean(FestivalDataStore.class);
+        url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/changes";
+    }
+
+    private StringBuffer open(String url, String lastEventId) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url));
+        if (lastEventId != null) request.header("Last-Event-ID", lastEventId);
+        StringBuffer content = new StringBuffer();
+        http.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream()).thenAccept(response -> {
+            InputStream body = response.body();
+            streams.add(body);
+            byte[] buffer = new byte[8192];
+            try {
+                for (int n; (n = body.read(buffer)) > 0; ) content.append(new String(buffer, 0, n, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // Closed at the end of the test
+            }
+        });
+        return content;
+    }
+
+    private static String await(StringBuffer content, String expected) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (content.indexOf(expected) < 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertTrue(content.indexOf(expected) >= 0, content.toString());
+        return content.toString();
+    }
+}
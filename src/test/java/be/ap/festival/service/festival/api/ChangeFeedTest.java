@@ -0,0 +1,134 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.data.ChangeLog;
+import be.ap.festival.service.data.FestivalDataStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeFeedTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private ChangeFeed feed;
+
+    @AfterEach
+    void stop() {
+        if (feed != null) feed.stop();
+    }
+
+    @Test
+    void stalledSubscribersAreDisconnectedAfterTheWriteTimeout() throws Exception {
+        FestivalDataStore store = start(Duration.ofMillis(300));
+        Connection live = subscribe(true);
+        Connection stuck = subscribe(false);
+        // A few changes fit in the buffer, but the connection takes nothing for longer than the write timeout
+        for (int i = 0; i < 3; i++) store.addPhoto(1L, "https://example.org/" + i + ".jpg");
+        await(() -> disconnected("write_timeout") == 1);
+        await(() -> live.content().contains("id:" + store.snapshot().version() + "\n"));
+        assertTrue(stuck.completed());
+        assertEquals(0.0, disconnected("slow"));
+    }
+
+    @Test
+    void subscribersThatFillTheirBufferAreDisconnectedWithoutHoldingUpTheOthers() throws Exception {
+        // A write timeout the test never reaches, so only the buffer can fill up
+        FestivalDataStore store = start(Duration.ofMinutes(1));
+        Connection live = subscribe(true);
+        Connection full = subscribe(false);
+        // Many more changes than the buffer holds, while the other subscriber keeps up
+        for (int i = 0; i < 100; i++) store.addPhoto(1L, "https://example.org/burst-" + i + ".jpg");
+        await(() -> disconnected("buffer_full") == 1);
+        await(() -> live.content().contains("id:" + store.snapshot().version() + "\n"));
+        assertTrue(full.completed());
+        assertEquals(0.0, disconnected("write_timeout"));
+        assertEquals(0.0, disconnected("slow"));
+    }
+
+    private FestivalDataStore start(Duration writeTimeout) throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        store.load();
+        feed = new ChangeFeed(store, new ChangeLog(store, 10_000), JsonMapper.builder().build(), meters,
+                Duration.ofMinutes(1), 1000, DataSize.ofKilobytes(1), writeTimeout, Duration.ofSeconds(15), 1);
+        return store;
+    }
+
+    private Connection subscribe(boolean reading) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/changes");
+        request.setAsyncSupported(true);
+        FakeOutput out = new FakeOutput();
+        feed.subscribe(null, request, new HttpServletResponseWrapper(new MockHttpServletResponse()) {
+            @Override
+            public ServletOutputStream getOutputStream() {
+                return out;
+            }
+        });
+        // What the container does once the request thread returns; the "ready" event goes out
+        out.listener.onWritePossible();
+        out.ready = reading;
+        return new Connection(request, out);
+    }
+
+    private double disconnected(String reason) {
+        return meters.get("festival.changes.disconnected").tag("reason", reason).counter().count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) Thread.sleep(10);
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private record Connection(MockHttpServletRequest request, FakeOutput out) {
+        String content() {
+            synchronized (out) {
+                return out.bytes.toString(StandardCharsets.UTF_8);
+            }
+        }
+
+        boolean completed() {
+            return request.getAsyncContext() != null && !request.isAsyncStarted();
+        }
+    }
+
+    // A non-blocking connection that takes everything while ready and nothing after
+    private static final class FakeOutput extends ServletOutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        volatile boolean ready = true;
+        WriteListener listener;
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            bytes.write(b, off, len);
+        }
+    }
+}
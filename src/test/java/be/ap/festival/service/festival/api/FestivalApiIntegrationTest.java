@@ -7,15 +7,29 @@ import org.skyscreamer.jsonassert.JSONAssert;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 import be.ap.festival.service.data.FestivalDataStore;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -48,6 +62,192 @@ class FestivalApiIntegrationTest {
         JSONAssert.assertEquals(expectedArrayJson, actualBody, true);
     }
 
+    @Test
+    void getFestivals_answersConditionalRequestsWithEtags() throws Exception {
+        dataStore.load();
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+
+        String etag = mockMvc.perform(get("/api/festivals"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/festivals").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        // Any mutation must invalidate the cached body and its ETag
+        Long festivalId = dataStore.getFestivals().get(0).getId();
+        dataStore.addPhoto(festivalId, "https://example.org/extra.jpg");
+
+        String newEtag = mockMvc.perform(get("/api/festivals").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, newEtag);
+
+        dataStore.load();
+    }
+
+    @Test
+    void getFestivals_pagesFiltersAndProjectsInsideTheStore() throws Exception {
+        dataStore.load();
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+
+        mockMvc.perform(get("/api/festivals").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("after=2")));
+
+        mockMvc.perform(get("/api/festivals").param("after", "2").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(3))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+
+        mockMvc.perform(get("/api/festivals")
+                        .param("from", "2026-07-01").param("to", "2026-07-31")
+                        .param("genre", "pop")
+                        .param("fields", "id,name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].name").value("Rock Werchter"))
+                .andExpect(jsonPath("$[0].place").doesNotExist());
+
+        mockMvc.perform(get("/api/festivals").param("fields", "nope"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void bulkAndLineupEndpoints_applyBatchesWithPerItemResults() throws Exception {
+        dataStore.load();
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        long version = dataStore.snapshot().version();
+
+        mockMvc.perform(post("/api/festivals/_bulk").contentType("application/x-ndjson").content("""
+                        {"op":"addPhoto","festivalId":1,"url":"https://example.org/a.jpg"}
+                        {"op":"createArtist","artist":{"name":"Bulk","genre":"Folk"}}
+
+                        {"op":"deleteArtist","id":999}
+                        {"op":"createFestival","festival":{"name":"Dup","lineup":[{"id":2},{"id":1,"name":"Copy"},{"id":2}]}}
+                        """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(version + 1))
+                .andExpect(jsonPath("$.items[0].status").value("UPDATED"))
+                .andExpect(jsonPath("$.items[1].status").value("CREATED"))
+                .andExpect(jsonPath("$.items[1].entity.name").value("Bulk"))
+                .andExpect(jsonPath("$.items[2].status").value("NOT_FOUND"))
+                .andExpect(jsonPath("$.items[3].entity.lineup[*].id").value(contains(1, 2)))
+                .andExpect(jsonPath("$.items[3].entity.lineup[0].name").value("Martin Garrix"));
+
+        mockMvc.perform(post("/api/festivals/_bulk").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"op\":\"removePhoto\",\"festivalId\":1,\"url\":\"https://example.org/a.jpg\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].status").value("UPDATED"));
+
+        mockMvc.perform(post("/api/festivals/_bulk").contentType("application/x-ndjson").content("{\"op\":\"nope\"}"))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(put("/api/festivals/1/lineup").contentType(MediaType.APPLICATION_JSON).content("[3, 1]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lineup[*].id").value(contains(1, 3)));
+        mockMvc.perform(put("/api/festivals/1/lineup").contentType(MediaType.APPLICATION_JSON).content("[3, 999]"))
+                .andExpect(status().isNotFound());
+
+        dataStore.load();
+    }
+
+    @Test
+    void export_streamsNdjsonAndChangesSinceAVersion() throws Exception {
+        dataStore.load();
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        long version = dataStore.snapshot().version();
+
+        String full = mockMvc.perform(get("/api/export"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        String[] lines = full.split("\n");
+        assertEquals("{\"type\":\"version\",\"version\":" + version + "}", lines[0]);
+        assertEquals(1 + dataStore.getArtists().size() + dataStore.getFestivals().size(), lines.length);
+        assertTrue(lines[lines.length - 1].startsWith("{\"type\":\"festival\",\"id\":4,\"data\":{"), lines[lines.length - 1]);
+
+        dataStore.addPhoto(2L, "https://example.org/since.jpg");
+        dataStore.deleteFestival(3L);
+        byte[] gzipped = mockMvc.perform(get("/api/export").param("since", Long.toString(version))
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+        String[] changed = new String(new GZIPInputStream(new ByteArrayInputStream(gzipped)).readAllBytes(),
+                StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, changed.length);
+        assertTrue(changed[0].contains("\"since\":" + version), changed[0]);
+        assertTrue(changed[1].startsWith("{\"type\":\"festival\",\"id\":2,\"data\":"), changed[1]);
+        assertEquals("{\"type\":\"festival\",\"id\":3,\"deleted\":true}", changed[2]);
+
+        // A catalog load drops the history
+        dataStore.load();
+        mockMvc.perform(get("/api/export").param("since", Long.toString(version)))
+                .andExpect(status().isGone());
+    }
+
+    @Test
+    void search_ranksHitsAndPagesByPosition() throws Exception {
+        dataStore.load();
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+
+        mockMvc.perform(get("/api/search").param("q", "rock").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].type", contains("festival", "artist")))
+                .andExpect(jsonPath("$[0].name").value("Rock Werchter"))
+                .andExpect(header().string(HttpHeaders.LINK, containsString("after=2")));
+        mockMvc.perform(get("/api/search").param("q", "pukkel").param("type", "artist"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[]"));
+        mockMvc.perform(get("/api/search").param("q", " ")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/search").param("q", "rock").param("type", "venue")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void stats_reportAggregatesAndValidateTop() throws Exception {
+        dataStore.load();
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+
+        mockMvc.perform(get("/api/stats").param("top", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.festivals").value(4))
+                .andExpect(jsonPath("$.festivalsPerPlace.Werchter").value(1))
+                .andExpect(jsonPath("$.artistsPerGenre.EDM").value(2))
+                .andExpect(jsonPath("$.prices.max").value(329.21))
+                .andExpect(jsonPath("$.busiestArtists[*].id", contains(1, 2)));
+        dataStore.addArtistToFestival(1L, 6L);
+        mockMvc.perform(get("/api/stats/artists").param("top", "1"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":6,\"name\":\"Dua Lipa\",\"festivals\":2}]"));
+        mockMvc.perform(get("/api/stats/prices"))
+                .andExpect(jsonPath("$.festivals").value(4))
+                .andExpect(jsonPath("$.histogram[2].festivals").value(2));
+        mockMvc.perform(get("/api/stats").param("top", "0")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void photos_redirectToTheBucketWithoutTheAssetCache() throws Exception {
+        dataStore.load();
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+
+        mockMvc.perform(get("/api/artists/1/photo").param("size", "thumb"))
+                .andExpect(status().isSeeOther())
+                .andExpect(header().string(HttpHeaders.LOCATION, "https://festival-demo-bucket.s3.eu-central-1.amazonaws.com/Martin-Garrix.jpg"));
+        mockMvc.perform(get("/api/festivals/1/photos/1"))
+                .andExpect(status().isSeeOther())
+                .andExpect(header().string(HttpHeaders.LOCATION, "https://festival-demo-bucket.s3.eu-central-1.amazonaws.com/tomorrowland-2.jpg"));
+        mockMvc.perform(get("/api/festivals/1/photos/2")).andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/artists/1/photo").param("size", "huge")).andExpect(status().isBadRequest());
+    }
+
     private String loadExpectedFestivalsArrayJson() throws IOException {
         ClassPathResource resource = new ClassPathResource("festivals-test.json");
         ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
@@ -0,0 +1,75 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.FestivalService;
+import be.ap.festival.service.festival.repo.StorageEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// The API on the H2 engine: the same cached listings and ETags as in memory, and no half-working extras
+@SpringBootTest(properties = "festival.storage.h2.url=jdbc:h2:mem:api-test;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("h2")
+class H2ApiIntegrationTest {
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private StorageEngine engine;
+
+    @Test
+    void listings_answerConditionalRequestsWithEtags() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        for (String listing : new String[] {"/api/festivals", "/api/artists", "/api/festivals/1/lineup"}) {
+            String etag = mockMvc.perform(get(listing))
+                    .andExpect(status().isOk())
+                    .andExpect(header().exists(HttpHeaders.ETAG))
+                    .andReturn()
+                    .getResponse()
+                    .getHeader(HttpHeaders.ETAG);
+            mockMvc.perform(get(listing).header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isNotModified());
+
+            // Changes all three: a new artist, booked for festival 1
+            engine.addArtistToFestival(1L, engine.createArtist(new Artist("Etag", null, "pop")).getId());
+            String newEtag = mockMvc.perform(get(listing).header(HttpHeaders.IF_NONE_MATCH, etag))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getHeader(HttpHeaders.ETAG);
+            assertNotEquals(etag, newEtag, listing);
+        }
+    }
+
+    @Test
+    void persistenceAndReplication_areRefused(@TempDir Path dir) {
+        for (String setting : new String[] {"--festival.persistence.enabled=true", "--festival.replication.role=leader"}) {
+            SpringApplicationBuilder app = new SpringApplicationBuilder(FestivalService.class).profiles("h2");
+            Exception e = assertThrows(Exception.class, () -> app.run("--server.port=0", setting,
+                    "--festival.persistence.directory=" + dir, "--festival.storage.h2.url=jdbc:h2:mem:refused;DB_CLOSE_DELAY=-1"));
+            assertTrue(rootCause(e).getMessage().contains("only work with the in-memory engine"), setting);
+        }
+    }
+
+    private static Throwable rootCause(Throwable e) {
+        while (e.getCause() != null) e = e.getCause();
+        return e;
+    }
+}
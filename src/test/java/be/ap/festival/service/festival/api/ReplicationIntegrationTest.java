@@ -0,0 +1,101 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.FestivalService;
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.FestivalQuery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A leader and two followers in one JVM, each on its own port, talking over real HTTP
+class ReplicationIntegrationTest {
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    @AfterEach
+    void stopNodes() {
+        for (int i = nodes.size() - 1; i >= 0; i--) nodes.get(i).close();
+    }
+
+    @Test
+    void followers_copyTheLeaderApplyItsLogAndRedirectWrites() throws Exception {
+        ConfigurableApplicationContext leader = start("--festival.replication.role=leader");
+        String leaderUrl = "http://localhost:" + port(leader);
+        ConfigurableApplicationContext first = start("--festival.replication.role=follower", "--festival.replication.leader-url=" + leaderUrl);
+        ConfigurableApplicationContext second = start("--festival.replication.role=follower", "--festival.replication.leader-url=" + leaderUrl);
+        FestivalDataStore leaderStore = leader.getBean(FestivalDataStore.class);
+        awaitInSync(leaderStore, first, second);
+        assertEquals(4, first.getBean(FestivalDataStore.class).getFestivals().size());
+
+        HttpResponse<String> created = send(HttpRequest.newBuilder(URI.create(leaderUrl + "/api/festivals"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"name\": \"Replicated\", \"place\": \"Gent\"}")));
+        assertEquals(201, created.statusCode());
+        long id = leaderStore.findFestivals(new FestivalQuery(null, 10, "gent", null, null, null, null, null))
+                .items().get(0).getId();
+        awaitInSync(leaderStore, first, second);
+        HttpResponse<String> read = send(HttpRequest.newBuilder(URI.create("http://localhost:" + port(second) + "/api/festivals/" + id)));
+        assertEquals(200, read.statusCode());
+        assertTrue(read.body().contains("Replicated"), read.body());
+
+        // Writes to a follower go to the leader; the follower itself never allocates an id
+        HttpResponse<String> redirected = send(HttpRequest.newBuilder(URI.create("http://localhost:" + port(first) + "/api/artists?x=1"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"name\": \"Elsewhere\"}")));
+        assertEquals(307, redirected.statusCode());
+        assertEquals(leaderUrl + "/api/artists?x=1", redirected.headers().firstValue("Location").orElseThrow());
+        assertThrows(IllegalStateException.class,
+                () -> first.getBean(FestivalDataStore.class).createArtist(new Artist("Local", null, null)));
+
+        // A catalog load cannot be followed from the log: followers copy a fresh snapshot
+        leaderStore.load();
+        awaitInSync(leaderStore, first, second);
+        assertTrue(second.getBean(FestivalDataStore.class).getFestival(id).isEmpty());
+    }
+
+    private ConfigurableApplicationContext start(String... args) {
+        List<String> all = new ArrayList<>(List.of("--server.port=0", "--festival.replication.heartbeat=200ms",
+                "--festival.replication.retry=100ms", "--festival.replication.stream-duration=2s"));
+        all.addAll(List.of(args));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FestivalService.class).run(all.toArray(String[]::new));
+        nodes.add(context);
+        return context;
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+        return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void awaitInSync(FestivalDataStore leader, ConfigurableApplicationContext... followers) throws InterruptedException {
+        for (ConfigurableApplicationContext follower : followers) {
+            FestivalDataStore store = follower.getBean(FestivalDataStore.class);
+            await(() -> store.snapshot().version() == leader.snapshot().version()
+                    && store.getFestivals().size() == leader.getFestivals().size());
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) Thread.sleep(20);
+        assertTrue(condition.getAsBoolean(), "Followers did not catch up with the leader");
+    }
+}
@@ -0,0 +1,138 @@
+package be.ap.festival.service.festival.api;
+
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.festival.asset.AssetCache;
+import be.ap.festival.service.festival.repo.FestivalRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseCacheTest {
+
+    @Test
+    void acceptsGzip_onlyWithAPositiveQValue() {
+        assertTrue(ResponseCache.acceptsGzip(acceptEncoding("gzip, deflate, br")));
+        assertTrue(ResponseCache.acceptsGzip(acceptEncoding("br;q=1.0, GZIP;q=0.5")));
+        assertTrue(ResponseCache.acceptsGzip(acceptEncoding("*")));
+        assertFalse(ResponseCache.acceptsGzip(new HttpHeaders()));
+        assertFalse(ResponseCache.acceptsGzip(acceptEncoding("gzip;q=0")));
+        assertFalse(ResponseCache.acceptsGzip(acceptEncoding("gzip;q=0.0")));
+        assertFalse(ResponseCache.acceptsGzip(acceptEncoding("gzip; q=0")));
+        assertFalse(ResponseCache.acceptsGzip(acceptEncoding("gzip ; Q = 0.000")));
+        assertFalse(ResponseCache.acceptsGzip(acceptEncoding("gzip;q=nope")));
+        assertFalse(ResponseCache.acceptsGzip(acceptEncoding("gzipped, deflate")));
+        // An explicit coding overrides the wildcard either way
+        assertFalse(ResponseCache.acceptsGzip(acceptEncoding("*, gzip;q=0")));
+        assertTrue(ResponseCache.acceptsGzip(acceptEncoding("*;q=0, gzip")));
+    }
+
+    @Test
+    void concurrentMisses_renderOnce() throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        store.load();
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        ResponseCache cache = new ResponseCache(store, JsonMapper.builder().build(), 1024, 100, meters,
+                ObservationRegistry.NOOP);
+        AtomicInteger renders = new AtomicInteger();
+        CountDownLatch rendering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        List<Future<ResponseEntity<byte[]>>> responses = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                responses.add(clients.submit(() -> cache.serve(ResponseCache.FESTIVALS, () -> {
+                    renders.incrementAndGet();
+                    rendering.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return store.getFestivals();
+                }, new HttpHeaders())));
+            }
+            assertTrue(rendering.await(5, TimeUnit.SECONDS));
+            // Let the other three reach the render in progress before it finishes
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (shared(meters) < 3 && System.nanoTime() < deadline) Thread.sleep(10);
+            release.countDown();
+
+            byte[] first = responses.get(0).get(5, TimeUnit.SECONDS).getBody();
+            for (Future<ResponseEntity<byte[]>> response : responses) {
+                assertArrayEquals(first, response.get(5, TimeUnit.SECONDS).getBody());
+            }
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+        assertEquals(1, renders.get());
+        assertEquals(3.0, shared(meters));
+
+        // Served from the cache afterwards, until the next write
+        cache.serve(ResponseCache.FESTIVALS, () -> {
+            renders.incrementAndGet();
+            return store.getFestivals();
+        }, new HttpHeaders());
+        assertEquals(1, renders.get());
+    }
+
+    @Test
+    void lineup_isReadAtTheVersionItIsCachedUnder() throws Exception {
+        FestivalDataStore store = new FestivalDataStore();
+        store.load();
+        ResponseCache cache = new ResponseCache(store, JsonMapper.builder().build(), 1024, 100,
+                new SimpleMeterRegistry(), ObservationRegistry.NOOP);
+        // A write that commits right after the festival was looked up, before anything is rendered
+        AtomicBoolean interfere = new AtomicBoolean(true);
+        FestivalRepository racing = (FestivalRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FestivalRepository.class}, (proxy, method, args) -> {
+                    Object result = method.invoke(store, args);
+                    if (method.getName().equals("getFestival") && interfere.getAndSet(false)) {
+                        store.replaceLineup(1L, List.of(4L));
+                    }
+                    return result;
+                });
+        FestivalController controller = new FestivalController(racing, cache, JsonMapper.builder().build(), 100,
+                new StaticListableBeanFactory().getBeanProvider(AssetCache.class));
+
+        controller.getLineup(1L, new HttpHeaders());
+        ResponseEntity<byte[]> next = controller.getLineup(1L, new HttpHeaders());
+
+        String lineup = new String(next.getBody(), StandardCharsets.UTF_8);
+        assertTrue(lineup.contains("\"id\":4") && !lineup.contains("\"id\":1,"), lineup);
+        assertEquals(HttpStatus.NOT_FOUND, controller.getLineup(999L, new HttpHeaders()).getStatusCode());
+    }
+
+    private static HttpHeaders acceptEncoding(String value) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, value);
+        return headers;
+    }
+
+    private static double shared(SimpleMeterRegistry meters) {
+        return meters.get("festival.response.cache").tag("result", "shared").counter().count();
+    }
+}
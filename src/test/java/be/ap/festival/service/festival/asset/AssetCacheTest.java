@@ -0,0 +1,97 @@
+package be.ap.festival.service.festival.asset;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AssetCacheTest {
+
+    private static final String URL = "https://bucket.example.com/photos/stage.png";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void servesOriginalsAndScaledVariantsFromDiskAndMemory() throws Exception {
+        Path origin = dir.resolve("origin");
+        Files.createDirectories(origin.resolve("photos"));
+        ImageIO.write(new BufferedImage(800, 400, BufferedImage.TYPE_INT_ARGB), "png", origin.resolve("photos/stage.png").toFile());
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        // Room in memory for thumbnails only
+        AssetCache cache = new AssetCache(new DirectoryAssetOrigin(origin), dir.resolve("cache"), 10_000_000, 16 * 8_000,
+                Duration.ofDays(7), 2, meters);
+
+        AssetCache.Asset original = cache.get(URL, AssetVariant.ORIGINAL);
+        assertEquals("image/png", original.contentType());
+        byte[] originalBytes = original.bytes() != null ? original.bytes() : Files.readAllBytes(original.file());
+        assertArrayEquals(Files.readAllBytes(origin.resolve("photos/stage.png")), originalBytes);
+
+        AssetCache.Asset thumb = cache.get(URL, AssetVariant.THUMB);
+        assertEquals("image/jpeg", thumb.contentType());
+        assertNotNull(thumb.bytes());
+        BufferedImage scaled = ImageIO.read(new ByteArrayInputStream(thumb.bytes()));
+        assertEquals(160, scaled.getWidth());
+        assertEquals(80, scaled.getHeight());
+        assertEquals(thumb.key(), cache.get(URL, AssetVariant.THUMB).key());
+        assertEquals(1.0, meters.get("festival.assets.requests").tag("result", "memory").counter().count());
+
+        // Queued in the background when the original came in
+        AssetCache.Asset medium = cache.get(URL, AssetVariant.MEDIUM);
+        BufferedImage mediumImage = medium.bytes() != null
+                ? ImageIO.read(new ByteArrayInputStream(medium.bytes())) : ImageIO.read(medium.file().toFile());
+        assertEquals(640, mediumImage.getWidth());
+
+        assertThrows(FileNotFoundException.class, () -> cache.get("https://bucket.example.com/photos/missing.png", AssetVariant.THUMB));
+        assertThrows(FileNotFoundException.class, () -> cache.get("https://bucket.example.com/../../secret.png", AssetVariant.ORIGINAL));
+        Files.writeString(origin.resolve("photos/notes.jpg"), "not an image");
+        IOException notAnImage = assertThrows(IOException.class, () -> cache.get("https://bucket.example.com/photos/notes.jpg", AssetVariant.THUMB));
+        assertFalse(notAnImage instanceof FileNotFoundException);
+        cache.close();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedFilesAndReindexesOnRestart() throws Exception {
+        Path origin = dir.resolve("origin");
+        Files.createDirectories(origin);
+        for (String name : new String[]{"a.bin", "b.bin", "c.bin"}) Files.write(origin.resolve(name), new byte[1000]);
+        Path cacheDir = dir.resolve("cache");
+        AssetCache cache = new AssetCache(new DirectoryAssetOrigin(origin), cacheDir, 2500, 0, Duration.ofDays(1), 1,
+                new SimpleMeterRegistry());
+
+        cache.get("https://x/a.bin", AssetVariant.ORIGINAL);
+        cache.get("https://x/b.bin", AssetVariant.ORIGINAL);
+        cache.get("https://x/a.bin", AssetVariant.ORIGINAL);
+        AssetCache.Asset c = cache.get("https://x/c.bin", AssetVariant.ORIGINAL);
+        assertNull(c.bytes());
+        assertEquals("application/octet-stream", c.contentType());
+        cache.close();
+
+        // b was the least recently used when c came in
+        assertTrue(Files.exists(cacheDir.resolve(AssetCache.key("https://x/a.bin", AssetVariant.ORIGINAL))));
+        assertFalse(Files.exists(cacheDir.resolve(AssetCache.key("https://x/b.bin", AssetVariant.ORIGINAL))));
+
+        SimpleMeterRegistry meters = new SimpleMeterRegistry();
+        AssetCache reopened = new AssetCache(new DirectoryAssetOrigin(origin), cacheDir, 2500, 0, Duration.ofDays(1), 1, meters);
+        reopened.get("https://x/c.bin", AssetVariant.ORIGINAL);
+        assertEquals(1.0, meters.get("festival.assets.requests").tag("result", "disk").counter().count());
+        assertEquals(2000.0, meters.get("festival.assets.disk.bytes").gauge().value());
+        reopened.close();
+    }
+}
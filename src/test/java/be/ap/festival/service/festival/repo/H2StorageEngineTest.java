@@ -0,0 +1,48 @@
+package be.ap.festival.service.festival.repo;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class H2StorageEngineTest extends StorageEngineConformanceTest {
+
+    private final List<H2StorageEngine> opened = new ArrayList<>();
+
+    @Override
+    StorageEngine create(Path dir) {
+        return open(dir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(H2StorageEngine::close);
+    }
+
+    @Test
+    void reopen_keepsCatalogVersionAndIdSequences() {
+        engine.createFestival(new Festival("Durable", "Gent", null, null));
+        engine.deleteArtist(12L);
+        List<String> before = render(engine.getFestivals());
+        long version = engine.version();
+        ((H2StorageEngine) engine).close();
+
+        StorageEngine reopened = open(dir.resolve("engine"));
+        assertEquals(before, render(reopened.getFestivals()));
+        assertEquals(version, reopened.version());
+        assertEquals(6L, reopened.createFestival(new Festival()).getId());
+        assertEquals(13L, reopened.createArtist(new Artist()).getId());
+    }
+
+    private H2StorageEngine open(Path dir) {
+        H2StorageEngine engine = new H2StorageEngine("jdbc:h2:file:" + dir.resolve("festival").toAbsolutePath());
+        opened.add(engine);
+        return engine;
+    }
+}
@@ -0,0 +1,13 @@
+package be.ap.festival.service.festival.repo;
+
+import be.ap.festival.service.data.FestivalDataStore;
+
+import java.nio.file.Path;
+
+class InMemoryStorageEngineTest extends StorageEngineConformanceTest {
+
+    @Override
+    StorageEngine create(Path dir) {
+        return new FestivalDataStore();
+    }
+}
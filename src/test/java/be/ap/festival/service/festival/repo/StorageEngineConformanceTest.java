@@ -0,0 +1,247 @@
+package be.ap.festival.service.festival.repo;
+
+import be.ap.festival.service.Artist;
+import be.ap.festival.service.Festival;
+import be.ap.festival.service.data.ArtistQuery;
+import be.ap.festival.service.data.BulkResult;
+import be.ap.festival.service.data.FestivalDataStore;
+import be.ap.festival.service.data.FestivalQuery;
+import be.ap.festival.service.data.Mutation;
+import be.ap.festival.service.data.Page;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Behaviour every {@link StorageEngine} must share, run once per engine by the subclasses. Each test starts
+ * from the seed catalog loaded through {@link StorageEngine#load}.
+ */
+abstract class StorageEngineConformanceTest {
+
+    @TempDir
+    Path dir;
+
+    StorageEngine engine;
+
+    // A fresh, empty engine keeping any files it needs under the given directory
+    abstract StorageEngine create(Path dir) throws Exception;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        engine = create(dir.resolve("engine"));
+        Path seed = dir.resolve("festivals.json");
+        try (InputStream is = getClass().getResourceAsStream("/festivals.json")) {
+            Files.copy(is, seed);
+        }
+        engine.load(seed);
+    }
+
+    @Test
+    void load_servesTheSeedCatalog() {
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(engine.getFestivals()));
+        assertEquals(12, engine.getArtists().size());
+        Festival tomorrowland = engine.getFestival(1L).orElseThrow();
+        assertEquals("Boom", tomorrowland.getPlace());
+        assertEquals(LocalDate.of(2026, 7, 24), tomorrowland.getDate());
+        assertEquals(new BigDecimal("329.21"), tomorrowland.getPrice());
+        assertEquals(2, tomorrowland.getPhotos().size());
+        assertEquals(List.of(1L, 2L, 3L), artistIds(engine.getLineup(1L)));
+        assertEquals(List.of(2L), ids(engine.getFestivalsOfArtist(5L).orElseThrow()));
+        assertTrue(engine.getFestivalsOfArtist(999L).isEmpty());
+        assertTrue(engine.getFestival(999L).isEmpty());
+        assertTrue(engine.getLineup(999L).isEmpty());
+        assertTrue(engine.version() > 0);
+    }
+
+    @Test
+    void queries_filterCaseInsensitivelyAndPageInIdOrder() {
+        assertEquals(List.of(1L), ids(find(new FestivalQuery(null, 10, "BOOM", null, null, null, null, null))));
+        assertEquals(List.of(2L, 3L), ids(find(new FestivalQuery(null, 10, null, null, null, null, null, "pop"))));
+        assertEquals(List.of(1L, 3L), ids(find(new FestivalQuery(null, 10, null, LocalDate.of(2026, 7, 24), null, null, null, null))));
+        assertEquals(List.of(2L, 4L), ids(find(new FestivalQuery(null, 10, null, null, LocalDate.of(2026, 7, 23), new BigDecimal("100"), null, null))));
+        assertEquals(List.of(2L), ids(find(new FestivalQuery(null, 10, null, null, null, new BigDecimal("110"), new BigDecimal("110.00"), null))));
+
+        List<Long> paged = new ArrayList<>();
+        Long after = null;
+        do {
+            Page<Festival> page = engine.findFestivals(new FestivalQuery(after, 3, null, null, null, null, null, null));
+            paged.addAll(ids(page.items()));
+            after = page.nextAfter();
+        } while (after != null);
+        assertEquals(List.of(1L, 2L, 3L, 4L), paged);
+
+        Page<Artist> metal = engine.findArtists(new ArtistQuery(null, 1, "METAL", null));
+        assertEquals(List.of(10L), metal.items().stream().map(Artist::getId).toList());
+        assertEquals(List.of(12L), engine.findArtists(new ArtistQuery(metal.nextAfter(), 1, "metal", null)).items().stream().map(Artist::getId).toList());
+        assertEquals("Pop", engine.findArtists(new ArtistQuery(null, 10, null, "Dua Lipa")).items().get(0).getGenre());
+    }
+
+    @Test
+    void writes_keepLineupsConsistent() {
+        long version = engine.version();
+        Festival payload = new Festival("Dedup", "Gent", LocalDate.of(2026, 8, 1), new BigDecimal("10.50"));
+        payload.setPhotos(List.of("https://example.com/a.jpg"));
+        Artist copy = new Artist("Martin Garrix", null, "EDM");
+        copy.setId(1L);
+        Artist unknown = new Artist("Nobody", null, null);
+        unknown.setId(999L);
+        payload.setLineup(List.of(engine.getArtist(5L).orElseThrow(), copy, unknown));
+
+        Festival created = engine.createFestival(payload);
+        long id = created.getId();
+        assertEquals(5L, id);
+        assertEquals(List.of(1L, 5L), artistIds(created.getLineup()));
+        assertEquals(new BigDecimal("10.50"), created.getPrice());
+        assertTrue(engine.version() > version);
+
+        // Updates replace fields and photos but leave the lineup alone
+        Festival update = new Festival("Renamed", "Antwerpen", null, null);
+        assertEquals("Renamed", engine.updateFestival(id, update).orElseThrow().getName());
+        assertEquals(List.of(1L, 5L), artistIds(engine.getLineup(id)));
+        assertTrue(engine.getFestival(id).orElseThrow().getPhotos().isEmpty());
+        assertTrue(engine.updateFestival(999L, update).isEmpty());
+
+        engine.addPhoto(id, "https://example.com/b.jpg");
+        engine.addPhoto(id, "https://example.com/c.jpg");
+        assertEquals(List.of("https://example.com/c.jpg"), engine.removePhoto(id, "https://example.com/b.jpg").orElseThrow().getPhotos());
+        assertTrue(engine.addPhoto(999L, "x").isEmpty());
+
+        engine.addArtistToFestival(id, 3L);
+        engine.addArtistToFestival(id, 3L);
+        assertEquals(List.of(1L, 3L, 5L), artistIds(engine.getLineup(id)));
+        assertTrue(engine.addArtistToFestival(id, 999L).isEmpty());
+        assertEquals(List.of(1L, 5L), artistIds(engine.removeArtistFromFestival(id, 3L).orElseThrow().getLineup()));
+
+        assertTrue(engine.replaceLineup(id, List.of(2L, 999L)).isEmpty());
+        assertEquals(List.of(1L, 5L), artistIds(engine.getLineup(id)));
+        assertEquals(List.of(2L, 7L), artistIds(engine.replaceLineup(id, List.of(7L, 2L, 7L)).orElseThrow().getLineup()));
+
+        // Artist changes show in every lineup, and deleting an artist removes it from all of them
+        engine.updateArtist(7L, new Artist("Renamed Artist", null, "Pop"));
+        assertEquals("Renamed Artist", engine.getFestival(3L).orElseThrow().getLineup().artistAt(0).getName());
+        engine.deleteArtist(2L);
+        assertEquals(List.of(7L), artistIds(engine.getLineup(id)));
+        assertEquals(List.of(1L, 3L), artistIds(engine.getLineup(1L)));
+        assertTrue(engine.getArtist(2L).isEmpty());
+
+        Artist artist = engine.createArtist(new Artist("Fresh", null, "Jazz"));
+        assertEquals(13L, artist.getId());
+        assertTrue(engine.getFestivalsOfArtist(artist.getId()).orElseThrow().isEmpty());
+
+        engine.deleteFestival(id);
+        assertTrue(engine.getFestival(id).isEmpty());
+        assertEquals(List.of(3L), ids(engine.getFestivalsOfArtist(7L).orElseThrow()));
+        long afterDelete = engine.version();
+        engine.deleteFestival(id);
+        assertEquals(afterDelete, engine.version());
+    }
+
+    @Test
+    void writesThatChangeNothing_keepTheVersion() {
+        engine.addArtistToFestival(1L, 1L);
+        engine.removeArtistFromFestival(1L, 4L);
+        engine.removePhoto(1L, "https://example.com/missing.jpg");
+        long version = engine.version();
+
+        assertEquals(List.of(1L, 2L, 3L), artistIds(engine.addArtistToFestival(1L, 1L).orElseThrow().getLineup()));
+        assertEquals(List.of(1L, 2L, 3L), artistIds(engine.removeArtistFromFestival(1L, 4L).orElseThrow().getLineup()));
+        assertEquals(2, engine.removePhoto(1L, "https://example.com/missing.jpg").orElseThrow().getPhotos().size());
+        assertEquals(version, engine.version());
+    }
+
+    @Test
+    void nullPhotoUrls_areRejected() {
+        long version = engine.version();
+        assertThrows(IllegalArgumentException.class, () -> engine.addPhoto(1L, null));
+        BulkResult result = engine.bulk(List.of(new Mutation.AddPhoto(1L, null)));
+        assertEquals(BulkResult.Status.INVALID, result.items().get(0).status());
+        assertEquals(2, engine.getFestival(1L).orElseThrow().getPhotos().size());
+        assertEquals(version, engine.version());
+    }
+
+    @Test
+    void bulk_appliesAllItemsAsOneVersionWithPerItemResults() {
+        long version = engine.version();
+
+        BulkResult result = engine.bulk(List.of(
+                new Mutation.CreateArtist(0, new Artist("Fresh", null, "Jazz")),
+                new Mutation.UpdateFestival(999L, new Festival("Ghost", null, null, null)),
+                new Mutation.AddPhoto(1L, "https://example.com/bulk.jpg"),
+                new Mutation.ReplaceLineup(2L, List.of(1L, 2L)),
+                new Mutation.Batch(List.of()),
+                new Mutation.DeleteFestival(4L)));
+
+        assertEquals(version + 1, result.version());
+        assertEquals(version + 1, engine.version());
+        assertEquals(List.of(BulkResult.Status.CREATED, BulkResult.Status.NOT_FOUND, BulkResult.Status.UPDATED,
+                BulkResult.Status.UPDATED, BulkResult.Status.INVALID, BulkResult.Status.DELETED),
+                result.items().stream().map(BulkResult.Item::status).toList());
+        Artist fresh = (Artist) result.items().get(0).entity();
+
+        engine.bulk(List.of(
+                new Mutation.AddArtistToFestival(3L, fresh.getId()),
+                new Mutation.UpdateArtist(fresh.getId(), new Artist("Renamed", null, "Jazz"))));
+        assertEquals(List.of(3L), ids(engine.getFestivalsOfArtist(fresh.getId()).orElseThrow()));
+        assertTrue(engine.getLineup(3L).stream().anyMatch(a -> a.getName().equals("Renamed")));
+        assertEquals(List.of(1L, 2L), artistIds(engine.getLineup(2L)));
+        assertTrue(engine.getFestival(4L).isEmpty());
+    }
+
+    @Test
+    void snapshot_loadsIntoEitherEngineWithIdSequences() throws Exception {
+        engine.addPhoto(2L, "https://example.com/extra.jpg");
+        engine.createFestival(new Festival("Deleted", null, null, null));
+        engine.deleteFestival(5L);
+        Path snapshot = dir.resolve("snapshot.json");
+        try (OutputStream out = Files.newOutputStream(snapshot)) {
+            engine.writeSnapshot(out);
+        }
+
+        for (StorageEngine other : List.of(new FestivalDataStore(), new H2StorageEngine("jdbc:h2:mem:conformance-" + System.nanoTime()))) {
+            other.load(snapshot);
+            assertEquals(render(engine.getFestivals()), render(other.getFestivals()));
+            assertEquals(engine.getArtists().size(), other.getArtists().size());
+            assertTrue(other.version() >= engine.version());
+            // The deleted festival's id is not handed out again
+            assertEquals(6L, other.createFestival(new Festival()).getId());
+        }
+    }
+
+    private Page<Festival> find(FestivalQuery query) {
+        return engine.findFestivals(query);
+    }
+
+    private static List<Long> ids(Page<Festival> page) {
+        return ids(page.items());
+    }
+
+    static List<Long> ids(List<Festival> festivals) {
+        return festivals.stream().map(Festival::getId).toList();
+    }
+
+    private static List<Long> artistIds(Iterable<Artist> lineup) {
+        List<Long> ids = new ArrayList<>();
+        lineup.forEach(a -> ids.add(a.getId()));
+        return ids;
+    }
+
+    static List<String> render(List<Festival> festivals) {
+        return festivals.stream()
+                .map(f -> f.getId() + "|" + f.getName() + "|" + f.getPlace() + "|" + f.getDate() + "|" + f.getPrice()
+                        + "|" + f.getPhotos() + "|" + artistIds(f.getLineup()))
+                .toList();
+    }
+}